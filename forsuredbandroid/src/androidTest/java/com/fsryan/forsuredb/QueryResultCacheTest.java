@@ -0,0 +1,184 @@
+package com.fsryan.forsuredb;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.OperationCanceledException;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.cursor.FSCursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static android.support.test.InstrumentationRegistry.getTargetContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class QueryResultCacheTest {
+
+    private static final String DB_NAME = "query_result_cache_test.db";
+    private static final String SQL = "SELECT _id, name FROM profile WHERE _id > ?;";
+
+    private SQLiteDatabase db;
+    private TableVersions tableVersions;
+    private QueryResultCache cacheUnderTest;
+    private int sourceQueryCount;
+
+    @Before
+    public void setUp() {
+        // a file database in WAL mode so that other threads can read during a transaction
+        getTargetContext().deleteDatabase(DB_NAME);
+        db = getTargetContext().openOrCreateDatabase(DB_NAME, Context.MODE_ENABLE_WRITE_AHEAD_LOGGING, null);
+        db.execSQL("CREATE TABLE profile(_id INTEGER PRIMARY KEY, name TEXT);");
+        db.execSQL("INSERT INTO profile(name) VALUES('first');");
+        tableVersions = new TableVersions();
+        cacheUnderTest = new QueryResultCache(tableVersions, 10, 2);
+        sourceQueryCount = 0;
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        getTargetContext().deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void shouldServeRepeatedQueryFromCache() {
+        assertEquals(1, countOf(query(0L)));
+        assertEquals(1, countOf(query(0L)));
+        assertEquals(1, sourceQueryCount);
+        assertEquals(1L, cacheUnderTest.hitCount());
+        assertEquals(1L, cacheUnderTest.missCount());
+    }
+
+    @Test
+    public void shouldNotShareEntriesAmongDifferentReplacements() {
+        query(0L).close();
+        assertEquals(0, countOf(query(1L)));
+        assertEquals(2, sourceQueryCount);
+    }
+
+    @Test
+    public void shouldRequeryAfterTableIsInvalidated() {
+        query(0L).close();
+        db.execSQL("INSERT INTO profile(name) VALUES('second');");
+        tableVersions.written(db, "profile");
+
+        assertEquals(2, countOf(query(0L)));
+        assertEquals(2, sourceQueryCount);
+    }
+
+    @Test
+    public void shouldNotServeResultReadDuringTransactionAfterItEnds() {
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT INTO profile(name) VALUES('second');");
+            tableVersions.written(db, "profile");
+            query(0L).close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            tableVersions.onTransactionEnd(db);
+        }
+
+        query(0L).close();
+        assertEquals(2, sourceQueryCount);
+    }
+
+    @Test
+    public void shouldNotServeUncommittedRowsToOtherThreads() throws Exception {
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT INTO profile(name) VALUES('rolled back');");
+            tableVersions.written(db, "profile");
+            assertEquals(2, countOf(query(0L)));
+            assertEquals(1, countOnOtherThread(0L));
+        } finally {
+            db.endTransaction();    // <-- rolls back
+            tableVersions.onTransactionEnd(db);
+        }
+
+        assertEquals(1, countOnOtherThread(0L));
+        assertEquals(1, countOf(query(0L)));
+    }
+
+    @Test
+    public void shouldCloseResultWhenQueryIsCanceled() {
+        final Cursor canceled = new CursorWrapper(db.rawQuery(SQL, new String[] {"0"})) {
+            @Override
+            public int getCount() {
+                throw new OperationCanceledException();
+            }
+        };
+        try {
+            cacheUnderTest.query(db, SQL, new Object[] {0L}, Collections.singleton("profile"), new QueryResultCache.Source() {
+                @Override
+                public Cursor query() {
+                    return canceled;
+                }
+            });
+            fail("Expected OperationCanceledException");
+        } catch (OperationCanceledException expected) {
+            assertTrue(canceled.isClosed());
+        }
+    }
+
+    @Test
+    public void shouldNotCacheResultWithMoreThanMaxRows() {
+        db.execSQL("INSERT INTO profile(name) VALUES('second');");
+        db.execSQL("INSERT INTO profile(name) VALUES('third');");
+
+        assertEquals(3, countOf(query(0L)));
+        assertEquals(3, countOf(query(0L)));
+        assertEquals(2, sourceQueryCount);
+    }
+
+    @Test
+    public void shouldAlwaysQuerySourceWhenDisabled() {
+        cacheUnderTest = new QueryResultCache(tableVersions, 0, 2);
+        query(0L).close();
+        query(0L).close();
+        assertEquals(2, sourceQueryCount);
+        assertEquals(0D, cacheUnderTest.hitRate(), 0D);
+    }
+
+    private FSCursor query(final long afterId) {
+        return cacheUnderTest.query(db, SQL, new Object[] {afterId}, Collections.singleton("profile"), new QueryResultCache.Source() {
+            @Override
+            public Cursor query() {
+                sourceQueryCount++;
+                return db.rawQuery(SQL, new String[] {String.valueOf(afterId)});
+            }
+        });
+    }
+
+    private int countOnOtherThread(final long afterId) throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger(-1);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                count.set(countOf(query(afterId)));
+            }
+        });
+        reader.start();
+        reader.join();
+        return count.get();
+    }
+
+    private static int countOf(Cursor c) {
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+}
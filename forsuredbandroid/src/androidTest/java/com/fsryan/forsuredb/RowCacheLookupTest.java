@@ -0,0 +1,175 @@
+package com.fsryan.forsuredb;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.api.FSProjection;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RowCacheLookupTest {
+
+    private SQLiteDatabase db;
+    private TableVersions tableVersions;
+    private RowCache cacheUnderTest;
+    private int loadCount;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE profile(_id INTEGER PRIMARY KEY, name TEXT, age INTEGER);");
+        db.execSQL("INSERT INTO profile(name, age) VALUES('first', 30);");
+        tableVersions = new TableVersions();
+        cacheUnderTest = new RowCache(tableVersions, 10);
+        loadCount = 0;
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void shouldServeAnyProjectionOfCachedRowWithoutReloading() {
+        Cursor c = lookUp(1L, "name");
+        assertTrue(c.moveToFirst());
+        assertEquals("first", c.getString(0));
+        c.close();
+
+        c = lookUp(1L, "profile.age", "_id");
+        assertTrue(c.moveToFirst());
+        assertEquals(30, c.getInt(c.getColumnIndex("age")));
+        assertEquals(1L, c.getLong(c.getColumnIndex("_id")));
+        c.close();
+
+        assertEquals(1, loadCount);
+        assertEquals(1L, cacheUnderTest.hitCount());
+    }
+
+    @Test
+    public void shouldReloadRowAfterTableIsWritten() {
+        lookUp(1L, "name").close();
+        db.execSQL("UPDATE profile SET name = 'changed' WHERE _id = 1;");
+        tableVersions.written(db, "profile");
+
+        Cursor c = lookUp(1L, "name");
+        assertTrue(c.moveToFirst());
+        assertEquals("changed", c.getString(0));
+        c.close();
+        assertEquals(2, loadCount);
+    }
+
+    @Test
+    public void shouldReloadOnlyRowsOfRecordsWritten() {
+        db.execSQL("INSERT INTO profile(name, age) VALUES('second', 40);");
+        lookUp(1L, "name").close();
+        lookUp(2L, "name").close();
+        db.execSQL("UPDATE profile SET name = 'changed' WHERE _id = 2;");
+        tableVersions.written(db, "profile", Collections.singletonList(2L));
+
+        Cursor c = lookUp(2L, "name");
+        assertTrue(c.moveToFirst());
+        assertEquals("changed", c.getString(0));
+        c.close();
+        lookUp(1L, "name").close();
+        assertEquals(3, loadCount);
+    }
+
+    @Test
+    public void shouldKeepCachedRowsAcrossInsert() {
+        lookUp(1L, "name").close();
+        db.execSQL("INSERT INTO profile(name, age) VALUES('second', 40);");
+        tableVersions.written(db, "profile", Collections.<Long>emptyList());
+
+        lookUp(1L, "name").close();
+        assertEquals(1, loadCount);
+    }
+
+    @Test
+    public void shouldNotCacheRowReadWithinTransaction() {
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE profile SET name = 'rolled back' WHERE _id = 1;");
+            tableVersions.written(db, "profile");
+            assertNull(lookUp(1L, "name"));
+        } finally {
+            db.endTransaction();    // <-- rolls back
+            tableVersions.onTransactionEnd(db);
+        }
+
+        Cursor c = lookUp(1L, "name");
+        assertTrue(c.moveToFirst());
+        assertEquals("first", c.getString(0));
+        c.close();
+        assertEquals(1, loadCount);
+    }
+
+    @Test
+    public void shouldNotCacheMissingRow() {
+        Cursor c = lookUp(2L, "name");
+        assertFalse(c.moveToFirst());
+        c.close();
+        lookUp(2L, "name").close();
+        assertEquals(2, loadCount);
+    }
+
+    @Test
+    public void shouldNotHandleLookupWhenDisabled() {
+        cacheUnderTest = new RowCache(tableVersions, 0);
+        assertNull(lookUp(1L, "name"));
+    }
+
+    private Cursor lookUp(final long id, final String... columns) {
+        return cacheUnderTest.query(db, "profile", new FSProjection() {
+            @Override
+            public String tableName() {
+                return "profile";
+            }
+
+            @Override
+            public String[] columns() {
+                return columns;
+            }
+
+            @Override
+            public boolean isDistinct() {
+                return false;
+            }
+        }, new FSSelection() {
+            @Override
+            public String where() {
+                return "_id = ?";
+            }
+
+            @Override
+            public Object[] replacements() {
+                return new Object[] {id};
+            }
+
+            @Override
+            public Limits limits() {
+                return null;
+            }
+        }, new RowCache.Loader() {
+            @Override
+            public Cursor load(String sql, Object[] replacements) {
+                loadCount++;
+                return db.rawQuery(sql, new String[] {String.valueOf(replacements[0])});
+            }
+        });
+    }
+}
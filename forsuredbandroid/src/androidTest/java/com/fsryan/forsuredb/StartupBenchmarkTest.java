@@ -0,0 +1,95 @@
+package com.fsryan.forsuredb;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.api.FSGetApi;
+import com.fsryan.forsuredb.api.FSTableCreator;
+import com.fsryan.forsuredb.benchmark.Benchmark;
+import com.fsryan.forsuredb.gsonserialization.FSDbInfoGsonSerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static android.support.test.InstrumentationRegistry.getTargetContext;
+import static com.fsryan.forsuredb.queryable.BaseQueryableTest.AUTHORITY;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ *     Times {@link FSDBHelper#init(Context, String, List, com.fsryan.forsuredb.serialization.FSDbInfoSerializer)}
+ *     and the opening of an up-to-date database when the {@link SchemaFingerprint} is stale, so
+ *     the migration assets are parsed to identify the database version, against when it is
+ *     current, so parsing is skipped. See {@link Benchmark} for how to enable and read it.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmarkTest {
+
+    private static final String DB_NAME = "startup_benchmark.db";
+
+    private final List<FSTableCreator> tables = new LinkedList<>();
+    private boolean initialized;
+
+    @Before
+    public void setUp() {
+        Benchmark.assumeEnabled();
+        tables.add(new FSTableCreator(AUTHORITY, "additional_data", FSGetApi.class));
+        tables.add(new FSTableCreator(AUTHORITY, "doc_store_test", FSGetApi.class));
+        tables.add(new FSTableCreator(AUTHORITY, "profile_info", FSGetApi.class));
+        tables.add(new FSTableCreator(AUTHORITY, "user", FSGetApi.class));
+    }
+
+    @After
+    public void deleteDatabase() {
+        if (initialized) {
+            FSDBHelper.reset();     // <-- so that other tests initialize their own database
+            getTargetContext().deleteDatabase(DB_NAME);
+        }
+    }
+
+    @Test
+    public void initWithCurrentSchemaFingerprint() {
+        FSDBHelper.reset();
+        getTargetContext().deleteDatabase(DB_NAME);
+        initialized = true;
+        final int dbVersion = openDatabase(false);   // <-- creates the database and stores the fingerprint
+        assertEquals(dbVersion, openDatabase(true));
+        assertEquals(dbVersion, openDatabase(false));
+
+        long baseline = Benchmark.medianNanosPerOp(1, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                openDatabase(true);
+            }
+        });
+        long optimized = Benchmark.medianNanosPerOp(1, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                openDatabase(false);
+            }
+        });
+        Benchmark.report("initWithCurrentSchemaFingerprint", baseline, optimized);
+    }
+
+    /**
+     * @param staleFingerprint whether to forget the stored {@link SchemaFingerprint} first
+     * @return the version of the opened database
+     */
+    private int openDatabase(boolean staleFingerprint) {
+        FSDBHelper.reset();
+        if (staleFingerprint) {
+            getTargetContext().getSharedPreferences(SchemaFingerprint.PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit()
+                    .clear()
+                    .apply();
+        }
+        FSDBHelper.init(getTargetContext(), DB_NAME, tables, new FSDbInfoGsonSerializer());
+        return FSDBHelper.inst().getWritableDatabase().getVersion();
+    }
+}
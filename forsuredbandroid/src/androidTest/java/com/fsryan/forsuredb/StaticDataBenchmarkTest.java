@@ -0,0 +1,169 @@
+package com.fsryan.forsuredb;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.api.RecordContainer;
+import com.fsryan.forsuredb.api.sqlgeneration.Sql;
+import com.fsryan.forsuredb.api.staticdata.OnRecordRetrievedListener;
+import com.fsryan.forsuredb.api.staticdata.StaticDataRetrieverFactory;
+import com.fsryan.forsuredb.benchmark.Benchmark;
+import com.fsryan.forsuredb.gsonserialization.FSDbInfoGsonSerializer;
+import com.fsryan.forsuredb.queryable.BaseQueryableTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static android.support.test.InstrumentationRegistry.getTargetContext;
+import static com.fsryan.forsuredb.SqlBinder.bindObjects;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ *     Times the insertion of the records of the profile_info.xml static data asset with
+ *     {@link BatchInserter} against the one statement per record loop that inserted static data
+ *     before. Each op inserts every record of the asset in a transaction that is rolled back, so
+ *     each op inserts into the same table. The throughput of both is reported in rows/sec. See
+ *     {@link Benchmark} for how to enable and read them.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class StaticDataBenchmarkTest extends BaseQueryableTest {
+
+    private static final String TABLE_NAME = "profile_info";
+    private static final String STATIC_DATA_ASSET = "profile_info.xml";
+    private static final int LOADS_PER_RUN = 50;
+
+    private SQLiteDatabase db;
+    private List<RecordContainer> records;
+
+    @Before
+    public void setUpStaticData() throws Exception {
+        Benchmark.assumeEnabled();
+        db = FSDBHelper.inst().getWritableDatabase();
+        records = readStaticData();
+
+        // each profile_info record references a user
+        final SQLiteStatement insertUser = db.compileStatement("INSERT INTO user(_id, global_id, login_count, app_rating) VALUES(?, ?, 0, 0);");
+        db.beginTransaction();
+        try {
+            for (RecordContainer record : records) {
+                final long userId = Long.parseLong(String.valueOf(record.get("user_id")));
+                insertUser.bindLong(1, userId);
+                insertUser.bindLong(2, userId);
+                insertUser.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertUser.close();
+        }
+    }
+
+    @Test
+    public void insertStaticData() {
+        assertEquals(records.size(), countInserted(perRecordLoad()));
+        assertEquals(records.size(), countInserted(batchedLoad()));
+
+        long baseline = Benchmark.medianNanosPerOp(LOADS_PER_RUN, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                rollBack(perRecordLoad());
+            }
+        });
+        long optimized = Benchmark.medianNanosPerOp(LOADS_PER_RUN, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                rollBack(batchedLoad());
+            }
+        });
+        Benchmark.report("insertStaticData", baseline, optimized);
+        Benchmark.report("insertStaticData.throughput", String.format(Locale.US, "records=%d; baseline=%drows/sec; optimized=%drows/sec",
+                records.size(),
+                rowsPerSecond(baseline),
+                rowsPerSecond(optimized)));
+    }
+
+    private interface Load {
+        void insertInto(SQLiteDatabase db);
+    }
+
+    private Load perRecordLoad() {
+        return new Load() {
+            @Override
+            public void insertInto(SQLiteDatabase db) {
+                for (RecordContainer record : records) {
+                    final List<String> columns = new ArrayList<>(record.keySet());
+                    SQLiteStatement statement = db.compileStatement(Sql.generator().newSingleRowInsertionSql(TABLE_NAME, columns));
+                    bindObjects(statement, columns, record);
+                    statement.executeInsert();
+                    statement.close();
+                }
+            }
+        };
+    }
+
+    private Load batchedLoad() {
+        return new Load() {
+            @Override
+            public void insertInto(SQLiteDatabase db) {
+                BatchInserter inserter = new BatchInserter(db, TABLE_NAME);
+                for (RecordContainer record : records) {
+                    inserter.add(record);
+                }
+                inserter.finish();
+            }
+        };
+    }
+
+    private void rollBack(Load load) {
+        db.beginTransaction();
+        try {
+            load.insertInto(db);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long countInserted(Load load) {
+        db.beginTransaction();
+        try {
+            load.insertInto(db);
+            return DatabaseUtils.queryNumEntries(db, TABLE_NAME);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long rowsPerSecond(long nanosPerLoad) {
+        return records.size() * 1000000000L / Math.max(1L, nanosPerLoad);
+    }
+
+    private static List<RecordContainer> readStaticData() throws Exception {
+        final List<RecordContainer> ret = new ArrayList<>();
+        InputStream xmlStream = getTargetContext().getAssets().open(STATIC_DATA_ASSET);
+        try {
+            Migrator migrator = new Migrator(getTargetContext(), new FSDbInfoGsonSerializer());
+            StaticDataRetrieverFactory.createFor(TABLE_NAME, migrator.getMigrationSets(), xmlStream).retrieve(new OnRecordRetrievedListener() {
+                @Override
+                public void onRecord(Map<Integer, List<RecordContainer>> versionRecordMap) {
+                    for (List<RecordContainer> versionRecords : versionRecordMap.values()) {
+                        ret.addAll(versionRecords);
+                    }
+                }
+            });
+        } finally {
+            xmlStream.close();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,84 @@
+package com.fsryan.forsuredb.benchmark;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * <p>
+ *     A minimal timing harness for comparing an optimized path against its baseline on a device.
+ *     Benchmarks are skipped unless the instrumentation is run with the argument
+ *     {@code -e forsuredb.benchmark true}, and their results are logged with the tag
+ *     {@value #TAG} and reported as instrumentation status.
+ * </p>
+ */
+public final class Benchmark {
+
+    public static final String TAG = "forsuredb-benchmark";
+    public static final String ARGUMENT = "forsuredb.benchmark";
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 15;
+
+    public interface Op {
+        void run(int iteration);
+    }
+
+    private Benchmark() {}
+
+    public static void assumeEnabled() {
+        Bundle args = InstrumentationRegistry.getArguments();
+        assumeTrue("run with -e " + ARGUMENT + " true to enable benchmarks", Boolean.parseBoolean(args.getString(ARGUMENT)));
+    }
+
+    /**
+     * @param opsPerRun the number of times the op is run per measured run
+     * @param op the operation to time
+     * @return the median nanoseconds per op over all measured runs
+     */
+    public static long medianNanosPerOp(int opsPerRun, Op op) {
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            timeRun(opsPerRun, op);
+        }
+        long[] nanosPerOp = new long[MEASURED_RUNS];
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            nanosPerOp[run] = timeRun(opsPerRun, op) / opsPerRun;
+        }
+        Arrays.sort(nanosPerOp);
+        return nanosPerOp[MEASURED_RUNS / 2];
+    }
+
+    public static void report(String name, long baselineNanosPerOp, long optimizedNanosPerOp) {
+        report(name, String.format(Locale.US, "baseline=%dns/op; optimized=%dns/op; speedup=%.2fx",
+                baselineNanosPerOp,
+                optimizedNanosPerOp,
+                (double) baselineNanosPerOp / Math.max(1L, optimizedNanosPerOp)));
+    }
+
+    /**
+     * <p>
+     *     Reports a result that is not a timing, such as a query plan
+     * </p>
+     */
+    public static void report(String name, String result) {
+        String message = name + ": " + result;
+        Log.i(TAG, message);
+
+        Bundle status = new Bundle();
+        status.putString(name, message);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    private static long timeRun(int opsPerRun, Op op) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < opsPerRun; i++) {
+            op.run(i);
+        }
+        return System.nanoTime() - start;
+    }
+}
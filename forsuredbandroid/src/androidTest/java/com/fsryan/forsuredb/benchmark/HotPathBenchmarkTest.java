@@ -0,0 +1,389 @@
+package com.fsryan.forsuredb.benchmark;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.QueryResultCache;
+import com.fsryan.forsuredb.SqlGenerationCache;
+import com.fsryan.forsuredb.TableVersions;
+import com.fsryan.forsuredb.api.FSGetApi;
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSProjection;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Retriever;
+import com.fsryan.forsuredb.api.sqlgeneration.DBMSIntegrator;
+import com.fsryan.forsuredb.api.sqlgeneration.Sql;
+import com.fsryan.forsuredb.cursor.FSCursor;
+import com.fsryan.forsuredb.queryable.BaseQueryableTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static com.fsryan.forsuredb.TestQueryUtil.idOrderingASC;
+import static com.fsryan.forsuredb.TestQueryUtil.orderings;
+import static com.fsryan.forsuredb.TestQueryUtil.selection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * <p>
+ *     Times optimized paths against the paths they replace. Each benchmark first checks
+ *     that both paths produce the same result. See {@link Benchmark} for how to enable and read
+ *     them.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class HotPathBenchmarkTest extends BaseQueryableTest {
+
+    private static final String LOGIN_COUNTS_SQL = "SELECT _id, login_count FROM user WHERE login_count >= ?;";
+    private static final String USER_COLUMNS_SQL = "SELECT _id, deleted, global_id, login_count, app_rating FROM user;";
+    private static final int UPSERT_KEY_COUNT = 1000;
+    // the statements of the query-then-write fallback and the statement NativeUpsert generates
+    private static final String DOC_EXISTS_SQL = "SELECT EXISTS(SELECT 1 FROM doc_store_test WHERE uuid = ?);";
+    private static final String DOC_UPDATE_SQL = "UPDATE doc_store_test SET class_name = ?, doc = ? WHERE uuid = ?;";
+    private static final String DOC_INSERT_SQL = "INSERT INTO doc_store_test (class_name, doc, uuid) VALUES (?, ?, ?);";
+    private static final String DOC_NATIVE_UPSERT_SQL = "INSERT INTO doc_store_test (class_name, doc, uuid) VALUES (?, ?, ?) ON CONFLICT(uuid) DO UPDATE SET class_name = excluded.class_name, doc = excluded.doc;";
+
+    private long sink;
+
+    @Before
+    public void assumeBenchmarksEnabled() {
+        Benchmark.assumeEnabled();
+    }
+
+    @Test
+    public void sqlGeneration() {
+        final DBMSIntegrator generator = Sql.generator();
+        final SqlGenerationCache cache = new SqlGenerationCache(SqlGenerationCache.DEFAULT_MAX_SIZE);
+        final FSProjection projection = userProjection();
+        final List<FSOrdering> orderings = orderings(idOrderingASC("user"));
+        assertEquals(
+                generator.createQuerySql("user", projection, loginCountAtLeast(1), orderings).getSql(),
+                cache.querySql(generator, "user", projection, loginCountAtLeast(1), orderings).getSql()
+        );
+
+        long baseline = Benchmark.medianNanosPerOp(1000, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                sink += generator.createQuerySql("user", projection, loginCountAtLeast(iteration), orderings).getSql().length();
+            }
+        });
+        long optimized = Benchmark.medianNanosPerOp(1000, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                sink += cache.querySql(generator, "user", projection, loginCountAtLeast(iteration), orderings).getSql().length();
+            }
+        });
+        Benchmark.report("sqlGeneration", baseline, optimized);
+    }
+
+    @Test
+    public void namedColumnAccess() {
+        final SQLiteDatabase db = seedUsers(100000);
+        final UserGetter api = new UserGetter();
+        final Retriever lookingUp = new LookingUpRetriever(db.rawQuery(USER_COLUMNS_SQL, null));
+        final Retriever fsCursor = new FSCursor(db.rawQuery(USER_COLUMNS_SQL, null));
+        try {
+            assertEquals(sumOfUsers(api, lookingUp), sumOfUsers(api, fsCursor));
+
+            long baseline = Benchmark.medianNanosPerOp(1, new Benchmark.Op() {
+                @Override
+                public void run(int iteration) {
+                    sink += sumOfUsers(api, lookingUp);
+                }
+            });
+            long optimized = Benchmark.medianNanosPerOp(1, new Benchmark.Op() {
+                @Override
+                public void run(int iteration) {
+                    sink += sumOfUsers(api, fsCursor);
+                }
+            });
+            Benchmark.report("namedColumnAccess", baseline, optimized);
+        } finally {
+            lookingUp.close();
+            fsCursor.close();
+        }
+    }
+
+    @Test
+    public void repeatedQuery() {
+        final SQLiteDatabase db = seedUsers(1000);
+        final QueryResultCache cache = new QueryResultCache(new TableVersions(), 10, 1000);
+        final Object[] replacements = new Object[] {50L};
+        final QueryResultCache.Source source = new QueryResultCache.Source() {
+            @Override
+            public Cursor query() {
+                return db.rawQuery(LOGIN_COUNTS_SQL, new String[] {"50"});
+            }
+        };
+        assertEquals(sumOfLoginCounts(source.query()), sumOfLoginCounts(cache.query(db, LOGIN_COUNTS_SQL, replacements, Collections.singleton("user"), source)));
+
+        long baseline = Benchmark.medianNanosPerOp(50, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                sink += sumOfLoginCounts(source.query());
+            }
+        });
+        long optimized = Benchmark.medianNanosPerOp(50, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                sink += sumOfLoginCounts(cache.query(db, LOGIN_COUNTS_SQL, replacements, Collections.singleton("user"), source));
+            }
+        });
+        Benchmark.report("repeatedQuery", baseline, optimized);
+    }
+
+    /**
+     * <p>
+     *     Upserts by a unique key, the uuid of doc_store_test. Half of the keys exist before the
+     *     first run, so the warmup runs insert the rest, and the measured runs update.
+     * </p>
+     */
+    @Test
+    public void upsert() {
+        assumeTrue("native upsert requires SQLite 3.24", isSqliteAtLeast(FSDBHelper.inst().sqliteVersion(), 3, 24));
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        final SQLiteStatement exists = db.compileStatement(DOC_EXISTS_SQL);
+        final SQLiteStatement update = db.compileStatement(DOC_UPDATE_SQL);
+        final SQLiteStatement insert = db.compileStatement(DOC_INSERT_SQL);
+        final SQLiteStatement nativeUpsert = db.compileStatement(DOC_NATIVE_UPSERT_SQL);
+        try {
+            for (int i = 0; i < UPSERT_KEY_COUNT / 2; i++) {
+                execute(insert, "seed", "uuid-" + i);
+            }
+            queryThenWrite(db, exists, update, insert, "fallback", "uuid-0");
+            queryThenWrite(db, exists, update, insert, "fallback", "uuid-fallback");
+            execute(nativeUpsert, "native", "uuid-1");
+            execute(nativeUpsert, "native", "uuid-native");
+            assertEquals("fallback", docOf(db, "uuid-0"));
+            assertEquals("fallback", docOf(db, "uuid-fallback"));
+            assertEquals("native", docOf(db, "uuid-1"));
+            assertEquals("native", docOf(db, "uuid-native"));
+            assertEquals(UPSERT_KEY_COUNT / 2 + 2, DatabaseUtils.queryNumEntries(db, "doc_store_test"));
+
+            long baseline = Benchmark.medianNanosPerOp(UPSERT_KEY_COUNT, new Benchmark.Op() {
+                @Override
+                public void run(int iteration) {
+                    queryThenWrite(db, exists, update, insert, "fallback " + iteration, "uuid-" + iteration);
+                }
+            });
+            long optimized = Benchmark.medianNanosPerOp(UPSERT_KEY_COUNT, new Benchmark.Op() {
+                @Override
+                public void run(int iteration) {
+                    execute(nativeUpsert, "native " + iteration, "uuid-" + iteration);
+                }
+            });
+            Benchmark.report("upsert", baseline, optimized);
+        } finally {
+            exists.close();
+            update.close();
+            insert.close();
+            nativeUpsert.close();
+        }
+    }
+
+    // what SQLiteDBQueryable and FSDefaultProvider do when the upsert cannot be performed natively
+    private static void queryThenWrite(SQLiteDatabase db, SQLiteStatement exists, SQLiteStatement update, SQLiteStatement insert, String doc, String uuid) {
+        db.beginTransaction();
+        try {
+            exists.bindString(1, uuid);
+            if (exists.simpleQueryForLong() != 0L) {
+                update.bindString(1, HotPathBenchmarkTest.class.getName());
+                update.bindString(2, doc);
+                update.bindString(3, uuid);
+                update.executeUpdateDelete();
+            } else {
+                execute(insert, doc, uuid);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // both the insert and the native upsert bind class_name, doc and uuid
+    private static void execute(SQLiteStatement statement, String doc, String uuid) {
+        statement.bindString(1, HotPathBenchmarkTest.class.getName());
+        statement.bindString(2, doc);
+        statement.bindString(3, uuid);
+        statement.executeUpdateDelete();
+    }
+
+    private static String docOf(SQLiteDatabase db, String uuid) {
+        return DatabaseUtils.stringForQuery(db, "SELECT doc FROM doc_store_test WHERE uuid = ?;", new String[] {uuid});
+    }
+
+    private static boolean isSqliteAtLeast(String sqliteVersion, int minMajor, int minMinor) {
+        final String[] parts = sqliteVersion.split("\\.");
+        final int major = Integer.parseInt(parts[0]);
+        return major > minMajor || (major == minMajor && parts.length > 1 && Integer.parseInt(parts[1]) >= minMinor);
+    }
+
+    private static SQLiteDatabase seedUsers(int count) {
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        final SQLiteStatement insert = db.compileStatement("INSERT INTO user(global_id, login_count, app_rating) VALUES(?, ?, ?);");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                insert.bindLong(1, i);
+                insert.bindLong(2, i % 100);
+                insert.bindDouble(3, i / 10D);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        return db;
+    }
+
+    private static long sumOfUsers(UserGetter api, Retriever retriever) {
+        long sum = 0L;
+        for (retriever.moveToPosition(-1); retriever.moveToNext(); ) {
+            sum += api.id(retriever);
+            sum += api.deleted(retriever) ? 1 : 0;
+            sum += api.globalId(retriever);
+            sum += api.loginCount(retriever);
+            sum += (long) api.appRating(retriever);
+        }
+        return sum;
+    }
+
+    private static long sumOfLoginCounts(Cursor c) {
+        try {
+            long sum = 0L;
+            while (c.moveToNext()) {
+                sum += c.getInt(1);
+            }
+            return sum;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static FSSelection loginCountAtLeast(int loginCount) {
+        return selection().where("login_count >= ?", new Object[] {loginCount}).build();
+    }
+
+    private static FSProjection userProjection() {
+        return new FSProjection() {
+            @Override
+            public String tableName() {
+                return "user";
+            }
+
+            @Override
+            public String[] columns() {
+                return new String[] {"_id", "global_id", "login_count", "app_rating"};
+            }
+
+            @Override
+            public boolean isDistinct() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * <p>
+     *     Reads columns by name through the {@link Retriever} the way the generated implementation
+     *     of an {@link FSGetApi} extension does
+     * </p>
+     */
+    private static class UserGetter implements FSGetApi {
+
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+
+        public long id(Retriever retriever) {
+            return retriever.getLong("_id");
+        }
+
+        public Date created(Retriever retriever) {
+            return parseDate(retriever.getString("created"));
+        }
+
+        public boolean deleted(Retriever retriever) {
+            return retriever.getInt("deleted") == 1;
+        }
+
+        public Date modified(Retriever retriever) {
+            return parseDate(retriever.getString("modified"));
+        }
+
+        long globalId(Retriever retriever) {
+            return retriever.getLong("global_id");
+        }
+
+        int loginCount(Retriever retriever) {
+            return retriever.getInt("login_count");
+        }
+
+        double appRating(Retriever retriever) {
+            return retriever.getDouble("app_rating");
+        }
+
+        private Date parseDate(String date) {
+            try {
+                return dateFormat.parse(date);
+            } catch (ParseException pe) {
+                throw new IllegalStateException(pe);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     The baseline {@link Retriever}, which looks up the index of the column on every access
+     * </p>
+     */
+    private static class LookingUpRetriever extends CursorWrapper implements Retriever {
+
+        LookingUpRetriever(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public String getString(String column) {
+            return getString(getColumnIndex(column));
+        }
+
+        @Override
+        public int getInt(String column) {
+            return getInt(getColumnIndex(column));
+        }
+
+        @Override
+        public long getLong(String column) {
+            return getLong(getColumnIndex(column));
+        }
+
+        @Override
+        public double getDouble(String column) {
+            return getDouble(getColumnIndex(column));
+        }
+
+        @Override
+        public float getFloat(String column) {
+            return getFloat(getColumnIndex(column));
+        }
+
+        @Override
+        public byte[] getBytes(String column) {
+            return getBlob(getColumnIndex(column));
+        }
+    }
+}
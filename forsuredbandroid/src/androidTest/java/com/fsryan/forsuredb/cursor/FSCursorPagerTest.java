@@ -0,0 +1,239 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.OrderBy;
+import com.fsryan.forsuredb.queryable.Keyset;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class FSCursorPagerTest {
+
+    private static final int ROW_COUNT = 100;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private List<Integer> loadedOffsets;
+    private FSCursorPager pagerUnderTest;
+
+    @Before
+    public void setUp() {
+        loadedOffsets = new ArrayList<>();
+        pagerUnderTest = new FSCursorPager(new FSCursorPager.PageLoader() {
+            @Override
+            public int count() {
+                return ROW_COUNT;
+            }
+
+            @Override
+            public Cursor loadPage(int offset, int limit) {
+                loadedOffsets.add(offset);
+                MatrixCursor ret = new MatrixCursor(new String[] {"_id"});
+                for (int i = offset; i < Math.min(ROW_COUNT, offset + limit); i++) {
+                    ret.addRow(new Object[] {(long) i});
+                }
+                return ret;
+            }
+        }, 10, 1, DIRECT, DIRECT);
+    }
+
+    @Test
+    public void shouldHaveNoRowsBeforeRefresh() {
+        assertEquals(-1, pagerUnderTest.count());
+        assertNull(pagerUnderTest.cursorAt(0));
+    }
+
+    @Test
+    public void shouldReadRowFromLoadedPage() {
+        pagerUnderTest.refresh();
+        assertEquals(ROW_COUNT, pagerUnderTest.count());
+
+        FSCursor c = pagerUnderTest.cursorAt(15);
+
+        assertNotNull(c);
+        assertEquals(15L, c.getLong("_id"));
+    }
+
+    @Test
+    public void shouldPrefetchNeighboringPages() {
+        pagerUnderTest.refresh();
+        pagerUnderTest.cursorAt(25);
+        assertEquals(3, loadedOffsets.size());
+        assertEquals(10, (int) loadedOffsets.get(0));
+        assertEquals(30, (int) loadedOffsets.get(2));
+    }
+
+    @Test
+    public void shouldReloadEvictedPage() {
+        pagerUnderTest.refresh();
+        pagerUnderTest.cursorAt(5);
+        pagerUnderTest.cursorAt(95);
+        loadedOffsets.clear();
+
+        pagerUnderTest.cursorAt(5);
+
+        assertEquals(0, (int) loadedOffsets.get(0));
+    }
+
+    @Test
+    public void shouldReportCountFailureAndAllowRetry() {
+        final boolean[] failCount = {true};
+        final List<RuntimeException> failures = new ArrayList<>();
+        pagerUnderTest = new FSCursorPager(new FSCursorPager.PageLoader() {
+            @Override
+            public int count() {
+                if (failCount[0]) {
+                    throw new IllegalStateException("count failed");
+                }
+                return ROW_COUNT;
+            }
+
+            @Override
+            public Cursor loadPage(int offset, int limit) {
+                return pageOf(offset, limit);
+            }
+        }, 10, 1, DIRECT, DIRECT);
+        pagerUnderTest.setListener(new RecordingListener() {
+            @Override
+            public void onCountFailed(@NonNull RuntimeException cause) {
+                failures.add(cause);
+            }
+        });
+
+        pagerUnderTest.refresh();
+        assertEquals(1, failures.size());
+        assertEquals(-1, pagerUnderTest.count());
+
+        failCount[0] = false;
+        pagerUnderTest.refresh();
+        assertEquals(ROW_COUNT, pagerUnderTest.count());
+    }
+
+    @Test
+    public void shouldRequestPageAgainWhenItWasLoadingDuringFailedRefresh() {
+        final boolean[] failCount = {false};
+        final List<Runnable> queued = new ArrayList<>();
+        pagerUnderTest = new FSCursorPager(new FSCursorPager.PageLoader() {
+            @Override
+            public int count() {
+                if (failCount[0]) {
+                    throw new IllegalStateException("count failed");
+                }
+                return ROW_COUNT;
+            }
+
+            @Override
+            public Cursor loadPage(int offset, int limit) {
+                return pageOf(offset, limit);
+            }
+        }, 10, 0, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                queued.add(command);
+            }
+        }, DIRECT);
+        pagerUnderTest.refresh();
+        runAll(queued);
+
+        assertNull(pagerUnderTest.cursorAt(5));     // <-- page 0 is now loading
+        failCount[0] = true;
+        pagerUnderTest.refresh();
+        runAll(queued);                             // <-- page 0 arrives stale, then the count fails
+
+        assertNull(pagerUnderTest.cursorAt(5));
+        assertEquals(1, queued.size());
+        runAll(queued);
+        FSCursor c = pagerUnderTest.cursorAt(5);
+        assertNotNull(c);
+        assertEquals(5L, c.getLong("_id"));
+    }
+
+    @Test
+    public void shouldLoadFollowingPagesByKeyOfPrecedingPage() {
+        final List<Long> keys = new ArrayList<>();
+        final List<FSOrdering> orderings = Keyset.orderingsWithTiebreaker("user", Collections.singletonList(new FSOrdering("user", "_id", OrderBy.ORDER_ASC)));
+        pagerUnderTest = new FSCursorPager(new FSCursorPager.KeysetPageLoader() {
+            @Override
+            public int count() {
+                return ROW_COUNT;
+            }
+
+            @Override
+            public Cursor loadPage(int offset, int limit) {
+                loadedOffsets.add(offset);
+                return pageOf(offset, limit);
+            }
+
+            @NonNull
+            @Override
+            public List<FSOrdering> orderings() {
+                return orderings;
+            }
+
+            @Override
+            public Cursor loadPageAfter(@NonNull Object[] key, int limit) {
+                keys.add((Long) key[0]);
+                return pageOf((int) ((Long) key[0] + 1), limit);
+            }
+        }, 10, 0, DIRECT, DIRECT);
+        pagerUnderTest.refresh();
+
+        for (int position = 0; position < 30; position++) {
+            FSCursor c = pagerUnderTest.cursorAt(position);
+            assertNotNull(c);
+            assertEquals((long) position, c.getLong("_id"));
+        }
+
+        assertEquals(Collections.singletonList(0), loadedOffsets);
+        assertEquals(2, keys.size());
+        assertEquals(9L, (long) keys.get(0));
+        assertEquals(19L, (long) keys.get(1));
+    }
+
+    private static void runAll(List<Runnable> queued) {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    private static Cursor pageOf(int offset, int limit) {
+        MatrixCursor ret = new MatrixCursor(new String[] {"_id"});
+        for (int i = offset; i < Math.min(ROW_COUNT, offset + limit); i++) {
+            ret.addRow(new Object[] {(long) i});
+        }
+        return ret;
+    }
+
+    private static class RecordingListener implements FSCursorPager.Listener {
+
+        @Override
+        public void onCountLoaded(int count) {}
+
+        @Override
+        public void onPageLoaded(int offset, int count) {}
+
+        @Override
+        public void onCountFailed(@NonNull RuntimeException cause) {}
+    }
+}
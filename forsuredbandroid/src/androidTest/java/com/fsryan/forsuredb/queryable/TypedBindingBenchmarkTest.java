@@ -0,0 +1,190 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
+import com.fsryan.forsuredb.benchmark.Benchmark;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ *     Times queries run through {@link TypedBindingCursorFactory}, which binds each replacement
+ *     with its actual type, against {@link SQLiteDatabase#rawQuery(String, String[])} with the
+ *     replacements stringified by {@link ReplacementStringifier#stringifyAll(Object[])}, which is
+ *     how queries were run before. Each argument type is compared on an indexed column, and the
+ *     EXPLAIN QUERY PLAN of both bindings is reported alongside the timing. See {@link Benchmark}
+ *     for how to enable and read them.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class TypedBindingBenchmarkTest extends BaseQueryableTest {
+
+    private static final int RECORD_COUNT = 1000;
+    private static final String BY_GLOBAL_ID_SQL = "SELECT _id FROM user WHERE global_id = ?;";
+    private static final String BY_APP_RATING_SQL = "SELECT _id FROM user WHERE app_rating = ?;";
+    private static final String BY_BLOB_DOC_SQL = "SELECT _id FROM doc_store_test WHERE blob_doc = ?;";
+
+    private SQLiteDatabase db;
+    private long sink;
+
+    @Before
+    public void setUpIndexedRecords() {
+        Benchmark.assumeEnabled();
+        db = FSDBHelper.inst().getWritableDatabase();
+        db.execSQL("CREATE INDEX benchmark_user_global_id ON user(global_id);");
+        db.execSQL("CREATE INDEX benchmark_user_app_rating ON user(app_rating);");
+        db.execSQL("CREATE INDEX benchmark_doc_store_test_blob_doc ON doc_store_test(blob_doc);");
+
+        final SQLiteStatement insertUser = db.compileStatement("INSERT INTO user(global_id, login_count, app_rating) VALUES(?, 0, ?);");
+        final SQLiteStatement insertDoc = db.compileStatement("INSERT INTO doc_store_test(uuid, blob_doc) VALUES(?, ?);");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                insertUser.bindLong(1, i);
+                insertUser.bindDouble(2, appRatingOf(i));
+                insertUser.executeInsert();
+                insertDoc.bindString(1, "uuid-" + i);
+                insertDoc.bindBlob(2, blobDocOf(i));
+                insertDoc.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertUser.close();
+            insertDoc.close();
+        }
+    }
+
+    @After
+    public void dropIndices() {
+        if (db == null) {
+            return;
+        }
+        db.execSQL("DROP INDEX IF EXISTS benchmark_user_global_id;");
+        db.execSQL("DROP INDEX IF EXISTS benchmark_user_app_rating;");
+        db.execSQL("DROP INDEX IF EXISTS benchmark_doc_store_test_blob_doc;");
+    }
+
+    @Test
+    public void longArgument() {
+        assertEquals(1, stringBound(BY_GLOBAL_ID_SQL, new Object[] {500L}));
+        assertEquals(1, typeBound("user", BY_GLOBAL_ID_SQL, new Object[] {500L}));
+        compare("typedBinding.long", "user", BY_GLOBAL_ID_SQL, new Arguments() {
+            @Override
+            public Object[] of(int iteration) {
+                return new Object[] {(long) iteration};
+            }
+        });
+    }
+
+    @Test
+    public void floatArgument() {
+        assertEquals(1, stringBound(BY_APP_RATING_SQL, new Object[] {appRatingOf(500)}));
+        assertEquals(1, typeBound("user", BY_APP_RATING_SQL, new Object[] {appRatingOf(500)}));
+        compare("typedBinding.float", "user", BY_APP_RATING_SQL, new Arguments() {
+            @Override
+            public Object[] of(int iteration) {
+                return new Object[] {appRatingOf(iteration)};
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     A stringified blob is bound as text, which never equals a blob, so the baseline finds
+     *     nothing. It is timed anyway, as that is what the baseline did.
+     * </p>
+     */
+    @Test
+    public void blobArgument() {
+        assertEquals(0, stringBound(BY_BLOB_DOC_SQL, new Object[] {blobDocOf(500)}));
+        assertEquals(1, typeBound("doc_store_test", BY_BLOB_DOC_SQL, new Object[] {blobDocOf(500)}));
+        compare("typedBinding.blob", "doc_store_test", BY_BLOB_DOC_SQL, new Arguments() {
+            @Override
+            public Object[] of(int iteration) {
+                return new Object[] {blobDocOf(iteration)};
+            }
+        });
+    }
+
+    private interface Arguments {
+        Object[] of(int iteration);
+    }
+
+    private void compare(String name, final String table, final String sql, final Arguments arguments) {
+        Benchmark.report(name + ".plan", "baseline=" + planOf(stringBoundPlan(sql, arguments.of(0)))
+                + "; optimized=" + planOf(typeBoundPlan(table, sql, arguments.of(0))));
+
+        long baseline = Benchmark.medianNanosPerOp(RECORD_COUNT, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                sink += stringBound(sql, arguments.of(iteration));
+            }
+        });
+        long optimized = Benchmark.medianNanosPerOp(RECORD_COUNT, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                sink += typeBound(table, sql, arguments.of(iteration));
+            }
+        });
+        Benchmark.report(name, baseline, optimized);
+    }
+
+    private int stringBound(String sql, Object[] replacements) {
+        return countOf(db.rawQuery(sql, ReplacementStringifier.stringifyAll(replacements)));
+    }
+
+    private int typeBound(String table, String sql, Object[] replacements) {
+        return countOf(TypedBindingCursorFactory.query(db, table, new SqlForPreparedStatement(sql, replacements), null));
+    }
+
+    private Cursor stringBoundPlan(String sql, Object[] replacements) {
+        return db.rawQuery("EXPLAIN QUERY PLAN " + sql, ReplacementStringifier.stringifyAll(replacements));
+    }
+
+    private Cursor typeBoundPlan(String table, String sql, Object[] replacements) {
+        return TypedBindingCursorFactory.query(db, table, new SqlForPreparedStatement("EXPLAIN QUERY PLAN " + sql, replacements), null);
+    }
+
+    private static String planOf(Cursor c) {
+        try {
+            StringBuilder buf = new StringBuilder();
+            final int detailIdx = c.getColumnIndex("detail");
+            while (c.moveToNext()) {
+                buf.append(buf.length() == 0 ? "" : " | ").append(c.getString(detailIdx));
+            }
+            return buf.toString();
+        } finally {
+            c.close();
+        }
+    }
+
+    private static int countOf(Cursor c) {
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    // a float that is exactly representable, so that the float and its string mean the same value
+    private static float appRatingOf(int i) {
+        return i / 4F;
+    }
+
+    private static byte[] blobDocOf(int i) {
+        return ByteBuffer.allocate(4).putInt(i).array();
+    }
+}
@@ -1,19 +1,28 @@
 package com.fsryan.forsuredb.queryable;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
 import android.net.Uri;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.v4.util.Pair;
 
+import com.fsryan.forsuredb.FSDBHelper;
 import com.fsryan.forsuredb.ForSureAndroidInfoFactory;
 import com.fsryan.forsuredb.api.FSQueryable;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
 import static android.support.test.InstrumentationRegistry.getTargetContext;
+import static org.junit.Assert.assertEquals;
 
 @RunWith(AndroidJUnit4.class)
 public class ContentProviderQueryableTest extends BasicQueryableTestsWithSeedDataInAssets<Uri> {
@@ -30,6 +39,45 @@ public class ContentProviderQueryableTest extends BasicQueryableTestsWithSeedDat
         factory.set(null, null);
     }
 
+    @Test
+    public void shouldKeepOtherWritesOfTransactionWhenUpdateFails() throws Exception {
+        final ContentResolver cr = getTargetContext().getContentResolver();
+        final Uri profiles = ForSureAndroidInfoFactory.inst().tableResource("profile_info");
+        FSDBHelper.inst().runInTransaction(new Callable<Void>() {
+            @Override
+            public Void call() {
+                cr.insert(profiles, profile("first@example.com", "uuid1"));
+                cr.insert(profiles, profile("second@example.com", "uuid2"));
+                ContentValues duplicateEmail = new ContentValues();
+                duplicateEmail.put("email_address", "first@example.com");
+                assertEquals(0, cr.update(profiles, duplicateEmail, "uuid = ?", new String[] {"uuid2"}));
+                return null;
+            }
+        });
+
+        assertEquals(2L, DatabaseUtils.queryNumEntries(FSDBHelper.inst().getReadableDatabase(), "profile_info"));
+    }
+
+    @Test
+    public void shouldCommitBatchContainingUpsertThatAffectsNoRows() throws Exception {
+        final Uri profiles = ForSureAndroidInfoFactory.inst().tableResource("profile_info");
+        final Uri upsertProfiles = profiles.buildUpon()
+                .appendQueryParameter(UriAnalyzer.QUERY_PARAM_UPSERT, String.valueOf(true))
+                .build();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(profiles)
+                .withValues(profile("first@example.com", "uuid1"))
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(upsertProfiles)   // <-- insert ignored on conflict
+                .withValues(profile("first@example.com", "uuid2"))
+                .withSelection("uuid = ?", new String[] {"uuid2"})
+                .build());
+
+        getTargetContext().getContentResolver().applyBatch(AUTHORITY, operations);
+
+        assertEquals(1L, DatabaseUtils.queryNumEntries(FSDBHelper.inst().getReadableDatabase(), "profile_info"));
+    }
+
     @Override
     protected Uri recordLocator(String table, long id) {
         return ForSureAndroidInfoFactory.inst().locatorFor(table, id);
@@ -58,4 +106,11 @@ public class ContentProviderQueryableTest extends BasicQueryableTestsWithSeedDat
     protected FSQueryable<Uri, FSContentValues> createQueryable(Uri locator) {
         return new ContentProviderQueryable(getTargetContext(), locator);
     }
+
+    private static ContentValues profile(String emailAddress, String uuid) {
+        ContentValues ret = new ContentValues();
+        ret.put("email_address", emailAddress);
+        ret.put("uuid", uuid);
+        return ret;
+    }
 }
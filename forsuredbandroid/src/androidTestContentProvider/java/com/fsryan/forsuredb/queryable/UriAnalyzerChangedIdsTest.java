@@ -0,0 +1,54 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.fsryan.forsuredb.TestObjectUtil.starterUri;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class UriAnalyzerChangedIdsTest {
+
+    private final Uri input;
+    private final Set<Long> expectedIds;
+
+    public UriAnalyzerChangedIdsTest(Uri input, Set<Long> expectedIds) {
+        this.input = input;
+        this.expectedIds = expectedIds;
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {   // 00: no changed ids
+                        starterUri(),
+                        null
+                },
+                {   // 01: one changed id
+                        UriAnalyzer.appendChangedIds(starterUri().buildUpon(), Collections.singletonList(3L)).build(),
+                        Collections.singleton(3L)
+                },
+                {   // 02: multiple changed ids
+                        UriAnalyzer.appendChangedIds(starterUri().buildUpon(), Arrays.asList(3L, 1L, 2L)).build(),
+                        new HashSet<>(Arrays.asList(1L, 2L, 3L))
+                },
+                {   // 03: malformed changed id
+                        starterUri().buildUpon().appendQueryParameter(UriAnalyzer.QUERY_PARAM_CHANGED_IDS, "x").build(),
+                        null
+                }
+        });
+    }
+
+    @Test
+    public void shouldDecodeChangedIds() {
+        assertEquals(expectedIds, UriAnalyzer.changedIdsOf(input));
+    }
+}
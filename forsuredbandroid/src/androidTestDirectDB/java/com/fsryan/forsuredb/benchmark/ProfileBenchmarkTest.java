@@ -0,0 +1,140 @@
+package com.fsryan.forsuredb.benchmark;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.fsryan.forsuredb.FSDBConfig;
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.api.FSGetApi;
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSProjection;
+import com.fsryan.forsuredb.api.FSTableCreator;
+import com.fsryan.forsuredb.api.Retriever;
+import com.fsryan.forsuredb.gsonserialization.FSDbInfoGsonSerializer;
+import com.fsryan.forsuredb.queryable.FSContentValues;
+import com.fsryan.forsuredb.queryable.SQLiteDBQueryable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+import static android.support.test.InstrumentationRegistry.getTargetContext;
+import static com.fsryan.forsuredb.TestQueryUtil.idOrderingASC;
+import static com.fsryan.forsuredb.TestQueryUtil.orderings;
+import static com.fsryan.forsuredb.TestQueryUtil.selection;
+import static com.fsryan.forsuredb.queryable.BaseQueryableTest.AUTHORITY;
+
+/**
+ * <p>
+ *     Runs the same insert and query workload through {@link SQLiteDBQueryable} on a fresh
+ *     database initialized with each {@link FSDBConfig.Profile} and with the default
+ *     {@link FSDBConfig}. Inserts are not batched, so each one commits on its own. Compare the
+ *     results of the profiles with those of the default. See {@link Benchmark} for how to enable
+ *     and read them.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProfileBenchmarkTest {
+
+    private static final String DB_NAME = "profile_benchmark.db";
+    private static final int INSERTS_PER_RUN = 200;
+    private static final int QUERIES_PER_RUN = 20;
+
+    private boolean initialized;
+    private long sink;
+
+    @Before
+    public void assumeBenchmarksEnabled() {
+        Benchmark.assumeEnabled();
+    }
+
+    @After
+    public void deleteDatabase() {
+        if (initialized) {
+            FSDBHelper.reset();     // <-- so that other tests initialize their own database
+            getTargetContext().deleteDatabase(DB_NAME);
+        }
+    }
+
+    @Test
+    public void defaultProfile() {
+        runWorkload("profile.default", FSDBConfig.DEFAULT);
+    }
+
+    @Test
+    public void readHeavyUiProfile() {
+        runWorkload("profile.READ_HEAVY_UI", FSDBConfig.builder(FSDBConfig.Profile.READ_HEAVY_UI).build());
+    }
+
+    @Test
+    public void bulkIngestProfile() {
+        runWorkload("profile.BULK_INGEST", FSDBConfig.builder(FSDBConfig.Profile.BULK_INGEST).build());
+    }
+
+    private void runWorkload(String name, FSDBConfig config) {
+        FSDBHelper.reset();
+        getTargetContext().deleteDatabase(DB_NAME);
+        FSDBHelper.init(getTargetContext(), DB_NAME, tables(), new FSDbInfoGsonSerializer(), config);
+        initialized = true;
+
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        final FSProjection projection = loginCountProjection();
+        final List<FSOrdering> orderings = orderings(idOrderingASC("user"));
+        long insertNanos = Benchmark.medianNanosPerOp(INSERTS_PER_RUN, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                FSContentValues cv = FSContentValues.getNew();
+                cv.put("global_id", (long) iteration);
+                cv.put("login_count", iteration % 100);
+                cv.put("app_rating", iteration / 10D);
+                queryable.insert(cv);
+            }
+        });
+        long queryNanos = Benchmark.medianNanosPerOp(QUERIES_PER_RUN, new Benchmark.Op() {
+            @Override
+            public void run(int iteration) {
+                Retriever retriever = queryable.query(projection, selection().where("login_count >= ?", new Object[] {iteration * 5}).build(), orderings);
+                try {
+                    while (retriever.moveToNext()) {
+                        sink += retriever.getInt("login_count");
+                    }
+                } finally {
+                    retriever.close();
+                }
+            }
+        });
+        Benchmark.report(name, String.format(Locale.US, "insert=%dns/op; query=%dns/op", insertNanos, queryNanos));
+    }
+
+    private static List<FSTableCreator> tables() {
+        final List<FSTableCreator> ret = new LinkedList<>();
+        ret.add(new FSTableCreator(AUTHORITY, "additional_data", FSGetApi.class));
+        ret.add(new FSTableCreator(AUTHORITY, "doc_store_test", FSGetApi.class));
+        ret.add(new FSTableCreator(AUTHORITY, "profile_info", FSGetApi.class));
+        ret.add(new FSTableCreator(AUTHORITY, "user", FSGetApi.class));
+        return ret;
+    }
+
+    private static FSProjection loginCountProjection() {
+        return new FSProjection() {
+            @Override
+            public String tableName() {
+                return "user";
+            }
+
+            @Override
+            public String[] columns() {
+                return new String[] {"_id", "login_count"};
+            }
+
+            @Override
+            public boolean isDistinct() {
+                return false;
+            }
+        };
+    }
+}
@@ -1,16 +1,273 @@
 package com.fsryan.forsuredb.queryable;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.v4.util.Pair;
 
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.StatementCache;
+import com.fsryan.forsuredb.api.FSOrdering;
 import com.fsryan.forsuredb.api.FSQueryable;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+import com.fsryan.forsuredb.api.OrderBy;
+import com.fsryan.forsuredb.api.sqlgeneration.Sql;
+import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
+import com.fsryan.forsuredb.cursor.FSCursor;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 @RunWith(AndroidJUnit4.class)
 public class SQLiteDBQueryableTest extends BasicQueryableTestsWithSeedDataInAssets<DirectLocator> {
 
+    @Test
+    public void shouldReuseCompiledStatementForSameTableAndColumns() {
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+
+        queryable.insert(userWithLoginCount(1));
+        final long hitsBefore = cache.hitCount();
+        queryable.insert(userWithLoginCount(2));
+
+        assertEquals(hitsBefore + 1, cache.hitCount());
+    }
+
+    @Test
+    public void shouldInsertAllRecordsInOrder() {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+
+        List<DirectLocator> inserted = queryable.insertAll(Arrays.asList(
+                userWithLoginCount(1),
+                userWithLoginCount(2),
+                userWithLoginCount(3)
+        ));
+
+        assertEquals(3, inserted.size());
+        for (int i = 1; i < inserted.size(); i++) {
+            assertTrue(inserted.get(i - 1).id < inserted.get(i).id);
+        }
+    }
+
+    @Test
+    public void shouldInsertFromManyThreadsThroughWriteDispatcher() throws Exception {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        final int threadCount = 8;
+        final int insertsPerThread = 25;
+        final AtomicInteger insertedCount = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+
+        WriteDispatcher.start(2L, 50);
+        try {
+            for (int t = 0; t < threadCount; t++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < insertsPerThread; i++) {
+                                if (queryable.insert(userWithLoginCount(i)) != null) {
+                                    insertedCount.incrementAndGet();
+                                }
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            WriteDispatcher.stop();
+        }
+
+        assertEquals(threadCount * insertsPerThread, insertedCount.get());
+    }
+
+    @Test
+    public void shouldCompleteAsyncInsertAfterCommit() throws Exception {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+
+        WriteDispatcher.start(0L, 10);
+        try {
+            DirectLocator inserted = queryable.insertAsync(userWithLoginCount(1)).get(5, TimeUnit.SECONDS);
+            assertTrue(inserted.id > 0);
+        } finally {
+            WriteDispatcher.stop();
+        }
+    }
+
+    @Test
+    public void shouldJoinCallerTransactionInsteadOfDispatching() throws Exception {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        final AtomicInteger insertedCount = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        WriteDispatcher.start(2L, 50);
+        try {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        FSDBHelper.inst().runInTransaction(new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                queryable.insert(userWithLoginCount(1));
+                                queryable.insert(userWithLoginCount(2));
+                                insertedCount.set(queryable.update(userWithLoginCount(3), null, null));
+                                return null;
+                            }
+                        });
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+            assertTrue("deadlocked waiting on the writer thread", done.await(10, TimeUnit.SECONDS));
+        } finally {
+            WriteDispatcher.stop();
+        }
+
+        assertEquals(2, insertedCount.get());
+        assertEquals(2L, DatabaseUtils.queryNumEntries(FSDBHelper.inst().getReadableDatabase(), "user"));
+    }
+
+    @Test
+    public void shouldRollBackAllWritesWhenTransactionWorkThrows() {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        try {
+            FSDBHelper.inst().runInTransaction(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    queryable.insert(userWithLoginCount(1));
+                    queryable.insert(userWithLoginCount(2));
+                    throw new IllegalStateException("roll back");
+                }
+            });
+            fail("expected the exception thrown by the work");
+        } catch (Exception e) {
+            assertEquals("roll back", e.getMessage());
+        }
+
+        assertEquals(0L, DatabaseUtils.queryNumEntries(FSDBHelper.inst().getReadableDatabase(), "user"));
+    }
+
+    @Test
+    public void shouldCommitAllWritesOfTransactionWork() throws Exception {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        List<DirectLocator> inserted = FSDBHelper.inst().runInTransaction(new Callable<List<DirectLocator>>() {
+            @Override
+            public List<DirectLocator> call() {
+                assertTrue(FSDBHelper.inst().inTransactionScope());
+                return Arrays.asList(queryable.insert(userWithLoginCount(1)), queryable.insert(userWithLoginCount(2)));
+            }
+        });
+
+        assertEquals(2, inserted.size());
+        assertFalse(FSDBHelper.inst().inTransactionScope());
+        assertEquals(2L, DatabaseUtils.queryNumEntries(FSDBHelper.inst().getReadableDatabase(), "user"));
+    }
+
+    @Test
+    public void shouldProbeExistenceAndCountWithoutCursor() {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        assertFalse(queryable.exists(null));
+        assertEquals(0L, queryable.count(null));
+
+        queryable.insertAll(Arrays.asList(userWithLoginCount(1), userWithLoginCount(2), userWithLoginCount(3)));
+
+        assertTrue(queryable.exists(null));
+        assertEquals(3L, queryable.count(null));
+    }
+
+    @Test
+    public void shouldPageAfterKeyOfLastRecord() {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        queryable.insertAll(Arrays.asList(
+                userWithLoginCount(3),
+                userWithLoginCount(1),
+                userWithLoginCount(3),
+                userWithLoginCount(2),
+                userWithLoginCount(1)
+        ));
+        final List<FSOrdering> orderings = Keyset.orderingsWithTiebreaker("user", Collections.singletonList(new FSOrdering("user", "login_count", OrderBy.ORDER_DESC)));
+        final FSSelection pageOfTwo = pageOf(2);
+
+        List<Integer> loginCounts = new ArrayList<>();
+        Object[] key = null;
+        for (int page = 0; page < 3; page++) {
+            FSCursor cursor = (FSCursor) queryable.queryAfter(null, pageOfTwo, orderings, key);
+            try {
+                while (cursor.moveToNext()) {
+                    loginCounts.add(cursor.getInt("login_count"));
+                }
+                assertTrue(cursor.moveToLast());
+                key = Keyset.keyOf(cursor, orderings);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        assertEquals(Arrays.asList(3, 3, 2, 1, 1), loginCounts);
+    }
+
+    @Test
+    public void shouldSeekIndexForPageAfterKey() {
+        final List<FSOrdering> orderings = Keyset.orderingsWithTiebreaker("user", Collections.singletonList(new FSOrdering("user", "login_count", OrderBy.ORDER_ASC)));
+        final List<String> plan = planOfPageAfter(orderings, new Object[] {3L, 12L});
+
+        assertSeeksIndex(plan);
+        for (String detail : plan) {
+            assertFalse("sorted rather than read in index order: " + plan, detail.contains("TEMP B-TREE"));
+        }
+    }
+
+    @Test
+    public void shouldSeekIndexForPageAfterKeyWithMixedDirections() {
+        final List<FSOrdering> orderings = Keyset.orderingsWithTiebreaker("user", Collections.singletonList(new FSOrdering("user", "login_count", OrderBy.ORDER_DESC)));
+        assertSeeksIndex(planOfPageAfter(orderings, new Object[] {3L, 12L}));
+    }
+
+    @Test
+    public void shouldAbortQueryWhenCanceled() {
+        final SQLiteDBQueryable queryable = new SQLiteDBQueryable("user");
+        queryable.insert(userWithLoginCount(1));
+        final CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        QueryCancellation.begin(signal);
+        try {
+            FSCursor cursor = (FSCursor) queryable.query(null, null, null);
+            cursor.close();
+            fail("Expected OperationCanceledException");
+        } catch (OperationCanceledException expected) {
+            // the query was aborted
+        } finally {
+            QueryCancellation.end();
+        }
+        assertNull(QueryCancellation.current());
+    }
+
     @Override
     protected long idFrom(DirectLocator insertedRecord) {
         return insertedRecord.id;
@@ -31,4 +288,73 @@ public class SQLiteDBQueryableTest extends BasicQueryableTestsWithSeedDataInAsse
         // TODO: check that this works
         return new DirectLocator(table);
     }
+
+    private static List<String> planOfPageAfter(List<FSOrdering> orderings, Object[] key) {
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        db.execSQL("CREATE INDEX keyset_login_count ON user(login_count, _id);");
+        try {
+            SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().querySql(Sql.generator(), "user", null, Keyset.after(pageOf(2), orderings, key), orderings);
+            Cursor plan = TypedBindingCursorFactory.query(db, "user", new SqlForPreparedStatement("EXPLAIN QUERY PLAN " + ps.getSql(), ps.getReplacements()), null);
+            try {
+                List<String> details = new ArrayList<>();
+                while (plan.moveToNext()) {
+                    details.add(plan.getString(plan.getColumnIndexOrThrow("detail")));
+                }
+                return details;
+            } finally {
+                plan.close();
+            }
+        } finally {
+            db.execSQL("DROP INDEX keyset_login_count;");
+        }
+    }
+
+    private static void assertSeeksIndex(List<String> plan) {
+        boolean searched = false;
+        for (String detail : plan) {
+            assertFalse("scanned rather than seeked: " + plan, detail.startsWith("SCAN"));
+            searched |= detail.startsWith("SEARCH");
+        }
+        assertTrue("did not search an index: " + plan, searched);
+    }
+
+    private static FSSelection pageOf(final int count) {
+        return new FSSelection() {
+            @Override
+            public String where() {
+                return null;
+            }
+
+            @Override
+            public Object[] replacements() {
+                return new Object[0];
+            }
+
+            @Override
+            public Limits limits() {
+                return new Limits() {
+                    @Override
+                    public int count() {
+                        return count;
+                    }
+
+                    @Override
+                    public int offset() {
+                        return 0;
+                    }
+
+                    @Override
+                    public boolean isBottom() {
+                        return false;
+                    }
+                };
+            }
+        };
+    }
+
+    private static FSContentValues userWithLoginCount(int loginCount) {
+        FSContentValues cv = FSContentValues.getNew();
+        cv.put("login_count", loginCount);
+        return cv;
+    }
 }
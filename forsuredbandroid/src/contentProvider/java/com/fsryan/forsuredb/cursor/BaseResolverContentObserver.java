@@ -4,14 +4,18 @@ import android.content.Context;
 import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import com.fsryan.forsuredb.api.Resolver;
 import com.fsryan.forsuredb.queryable.FSContentValues;
 import com.fsryan.forsuredb.queryable.UriAnalyzer;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * <p>
@@ -20,22 +24,73 @@ import java.util.Map;
  *     instead of this class so that you don't accidentally destroy the query you've built up in
  *     the {@link Resolver} passed into this observer
  * </p>
+ * <p>
+ *     With a positive debounce window, the notifications of all observed tables are collected
+ *     until none has arrived for the length of the window or until the maximum delay since the
+ *     first of them has passed, and then
+ *     {@link #onChange(boolean, Set, Resolver)} is called once with the set of tables that
+ *     changed. This way, a burst of writes to joined tables causes one requery rather than many.
+ * </p>
+ * <p>
+ *     Updates and deletes made through the FSDefaultProvider notify the _ids of the records that
+ *     changed. Override {@link #onRecordsChange(boolean, Map, Resolver)} to refresh only those
+ *     records.
+ * </p>
  * @param <R>
  */
 /*package*/ abstract class BaseResolverContentObserver<R extends Resolver> {
 
     private final Context context;
+    private final Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver;
     private final List<Uri> tableUris;
     private final Map<Uri, ContentObserver> contentObservers = new HashMap<>();
+    private final Handler handler;
+    private final ChangeDebouncer debouncer;
+    private final Runnable deliverPending = new Runnable() {
+        @Override
+        public void run() {
+            deliverPending();
+        }
+    };
 
     public BaseResolverContentObserver(Context context,
                                        final Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver,
                                        Handler handler,
                                        final boolean deliverSelfNotifications) {
+        this(context, resolver, handler, deliverSelfNotifications, 0L, 0L);
+    }
+
+    /**
+     * @param context the {@link Context} used to register the observers
+     * @param resolver the {@link Resolver} of the query whose tables are observed
+     * @param handler the {@link Handler} on which notifications are delivered. When debouncing,
+     *                the main thread is used if this is null.
+     * @param deliverSelfNotifications whether to deliver self-change notifications
+     * @param debounceMillis the length of the window in milliseconds in which notifications are
+     *                       collected--0 to deliver each notification as it arrives
+     * @param maxDelayMillis the maximum delay in milliseconds between the first collected
+     *                       notification and the delivery of the collected notifications
+     */
+    public BaseResolverContentObserver(Context context,
+                                       final Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver,
+                                       Handler handler,
+                                       final boolean deliverSelfNotifications,
+                                       long debounceMillis,
+                                       long maxDelayMillis) {
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("debounceMillis must not be negative: " + debounceMillis);
+        }
+        if (debounceMillis > 0 && maxDelayMillis < debounceMillis) {
+            throw new IllegalArgumentException("maxDelayMillis must not be less than debounceMillis: " + maxDelayMillis);
+        }
         this.context = context;
+        this.resolver = resolver;
+        this.debouncer = debounceMillis > 0 ? new ChangeDebouncer(debounceMillis, maxDelayMillis) : null;
+        // when debouncing, notifications must arrive on the thread of the handler
+        this.handler = debouncer != null && handler == null ? new Handler(Looper.getMainLooper()) : handler;
         this.tableUris = UriAnalyzer.tableLocatorsOf(resolver.currentLocator());
         for (final Uri tableUri : tableUris) {
-            contentObservers.put(tableUri, new ContentObserver(handler) {
+            contentObservers.put(tableUri, new ContentObserver(this.handler) {
 
                 @Override
                 public boolean deliverSelfNotifications() {
@@ -44,7 +99,12 @@ import java.util.Map;
 
                 @Override
                 public void onChange(boolean selfChange) {
-                    BaseResolverContentObserver.this.onChange(selfChange, tableUri, resolver);
+                    onChange(selfChange, null);
+                }
+
+                @Override
+                public void onChange(boolean selfChange, Uri uri) {
+                    BaseResolverContentObserver.this.onTableChange(selfChange, tableUri, UriAnalyzer.changedIdsOf(uri));
                 }
             });
         }
@@ -66,13 +126,18 @@ import java.util.Map;
 
     /**
      * <p>
-     *     Unregisters all observers associated with this {@link BaseResolverContentObserver}
+     *     Unregisters all observers associated with this {@link BaseResolverContentObserver} and
+     *     drops any notifications collected for the debounce window
      * </p>
      */
     public final void unregister() {
         for (Uri tableUri : tableUris) {
             context.getContentResolver().unregisterContentObserver(contentObservers.get(tableUri));
         }
+        if (debouncer != null) {
+            handler.removeCallbacks(deliverPending);
+            debouncer.drain();
+        }
     }
 
     /**
@@ -86,4 +151,56 @@ import java.util.Map;
      *                 bash over the built up query.
      */
     public abstract void onChange(boolean selfChange, Uri tableUri, Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver);
+
+    /**
+     * <p>
+     *     Called once per debounce window with all of the tables that changed within it. By
+     *     default, this calls {@link #onChange(boolean, Uri, Resolver)} for each table. Override
+     *     this to react to all of the changes at once.
+     * </p>
+     * @param selfChange if all of the collected notifications were self-change notifications
+     * @param tableUris the Uris of the tables that were changed
+     * @param resolver call {@link Resolver#preserveQueryStateAndGet()} to ensure that you do not
+     *                 bash over the built up query.
+     */
+    public void onChange(boolean selfChange, Set<Uri> tableUris, Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver) {
+        for (Uri tableUri : tableUris) {
+            onChange(selfChange, tableUri, resolver);
+        }
+    }
+
+    /**
+     * <p>
+     *     Called for each delivery of changes with the _ids of the records that changed, so that
+     *     only those records need to be refreshed. By default, this calls
+     *     {@link #onChange(boolean, Set, Resolver)} with the tables that changed.
+     * </p>
+     * @param selfChange if all of the delivered notifications were self-change notifications
+     * @param changedIds the _ids of the records that changed by the Uri of their table. The _ids
+     *                   of a table are null when they are not known, in which case any of its
+     *                   records may have changed.
+     * @param resolver call {@link Resolver#preserveQueryStateAndGet()} to ensure that you do not
+     *                 bash over the built up query.
+     */
+    public void onRecordsChange(boolean selfChange, Map<Uri, Set<Long>> changedIds, Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver) {
+        onChange(selfChange, changedIds.keySet(), resolver);
+    }
+
+    private void onTableChange(boolean selfChange, Uri tableUri, Set<Long> ids) {
+        if (debouncer == null) {
+            onRecordsChange(selfChange, Collections.singletonMap(tableUri, ids), resolver);
+            return;
+        }
+        long delay = debouncer.onChange(tableUri, ids, selfChange, SystemClock.uptimeMillis());
+        handler.removeCallbacks(deliverPending);
+        handler.postDelayed(deliverPending, delay);
+    }
+
+    private void deliverPending() {
+        if (!debouncer.hasPending()) {
+            return;
+        }
+        boolean selfChange = debouncer.pendingAreSelfChanges();
+        onRecordsChange(selfChange, debouncer.drain(), resolver);
+    }
 }
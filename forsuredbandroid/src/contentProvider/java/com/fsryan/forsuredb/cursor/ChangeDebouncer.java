@@ -0,0 +1,87 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ *     Collects table change notifications until no notification has arrived for the debounce
+ *     window or until the maximum delay since the first pending notification has passed,
+ *     whichever comes first. The _ids of the records that changed are merged per table, unless
+ *     any notification of the table did not know its _ids. Not thread safe--all calls must be
+ *     made on the same thread.
+ * </p>
+ * @see BaseResolverContentObserver
+ */
+/*package*/ class ChangeDebouncer {
+
+    private final long debounceMillis;
+    private final long maxDelayMillis;
+    private final Map<Uri, Set<Long>> pending = new LinkedHashMap<>();    // <-- null _ids for the whole table
+    private boolean allSelfChanges;
+    private long firstPendingAt;
+
+    ChangeDebouncer(long debounceMillis, long maxDelayMillis) {
+        this.debounceMillis = debounceMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @param tableUri the {@link Uri} of the table that changed
+     * @param ids the _ids of the records that changed or null if they are not known
+     * @param selfChange whether this was a self-change notification
+     * @param now the current time in milliseconds
+     * @return the delay in milliseconds from now after which the pending changes should be
+     * delivered, replacing any previously-scheduled delivery
+     */
+    long onChange(@NonNull Uri tableUri, @Nullable Set<Long> ids, boolean selfChange, long now) {
+        if (pending.isEmpty()) {
+            firstPendingAt = now;
+            allSelfChanges = true;
+        }
+        if (!pending.containsKey(tableUri)) {
+            pending.put(tableUri, ids == null ? null : new LinkedHashSet<>(ids));
+        } else if (pending.get(tableUri) != null) {
+            if (ids == null) {
+                pending.put(tableUri, null);
+            } else {
+                pending.get(tableUri).addAll(ids);
+            }
+        }
+        allSelfChanges &= selfChange;
+        return Math.max(0L, Math.min(debounceMillis, firstPendingAt + maxDelayMillis - now));
+    }
+
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return true if all of the pending notifications were self-change notifications
+     */
+    boolean pendingAreSelfChanges() {
+        return allSelfChanges;
+    }
+
+    /**
+     * @return the _ids of the records that changed by the {@link Uri} of their table, in the
+     * order in which the tables first changed. The _ids of a table are null if they are not
+     * known. There are no pending changes afterward.
+     */
+    @NonNull
+    Map<Uri, Set<Long>> drain() {
+        if (pending.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Uri, Set<Long>> ret = new LinkedHashMap<>(pending);
+        pending.clear();
+        return ret;
+    }
+}
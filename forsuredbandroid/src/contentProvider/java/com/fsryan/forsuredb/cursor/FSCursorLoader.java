@@ -30,6 +30,9 @@ import com.fsryan.forsuredb.api.Finder;
 import com.fsryan.forsuredb.api.Resolver;
 import com.fsryan.forsuredb.api.OrderBy;
 import com.fsryan.forsuredb.queryable.FSContentValues;
+import com.fsryan.forsuredb.queryable.QueryCancellation;
+
+import java.util.Set;
 
 public class FSCursorLoader<T extends Resolver, G extends FSGetApi, S extends FSSaveApi<Uri>, F extends Finder<T, F>, O extends OrderBy<T, O>> extends AsyncTaskLoader<FSCursor> {
 
@@ -39,13 +42,34 @@ public class FSCursorLoader<T extends Resolver, G extends FSGetApi, S extends FS
     private CancellationSignal mCancellationSignal;
 
     public FSCursorLoader(Context context, Resolver<T, Uri, FSContentValues, G, S, F, O> resolver) {
+        this(context, resolver, 0L, 0L);
+    }
+
+    /**
+     * <p>
+     *     Reloads at most once per debounce window, no matter how many of the tables of the query
+     *     change within it, so that a burst of writes results in one requery rather than many.
+     * </p>
+     * @param context the {@link Context}
+     * @param resolver the {@link Resolver} of the query
+     * @param debounceMillis the length of the window in milliseconds in which change
+     *                       notifications are collected--0 to reload on every notification
+     * @param maxDelayMillis the maximum delay in milliseconds between the first collected change
+     *                       notification and the reload
+     */
+    public FSCursorLoader(Context context, Resolver<T, Uri, FSContentValues, G, S, F, O> resolver, long debounceMillis, long maxDelayMillis) {
         super(context);
         this.resolver = resolver;
-        mObserver = new BaseResolverContentObserver<T>(context, resolver, new Handler(), true) {
+        mObserver = new BaseResolverContentObserver<T>(context, resolver, new Handler(), true, debounceMillis, maxDelayMillis) {
             @Override
             public void onChange(boolean selfChange, Uri tableUri, Resolver<T, Uri, FSContentValues, ?, ?, ?, ?> resolver) {
                 onContentChanged();
             }
+
+            @Override
+            public void onChange(boolean selfChange, Set<Uri> tableUris, Resolver<T, Uri, FSContentValues, ?, ?, ?, ?> resolver) {
+                onContentChanged();
+            }
         };
     }
 
@@ -58,16 +82,25 @@ public class FSCursorLoader<T extends Resolver, G extends FSGetApi, S extends FS
             mCancellationSignal = new CancellationSignal();
         }
 
-        FSCursor cursor = (FSCursor) resolver.preserveQueryStateAndGet();
-        if (cursor != null) {
-            try {
-                cursor.getCount();  // TODO: determine whether you need to make this call
-            } catch (RuntimeException ex) {
-                cursor.close();
-                throw ex;
+        // the Resolver cannot take the signal, so it is handed to the queryable of this thread
+        QueryCancellation.begin(mCancellationSignal);
+        try {
+            FSCursor cursor = (FSCursor) resolver.preserveQueryStateAndGet();
+            if (cursor != null) {
+                try {
+                    cursor.getCount();  // <-- fills the window here, where it can still be canceled
+                } catch (RuntimeException ex) {
+                    cursor.close();
+                    throw ex;
+                }
+            }
+            return cursor;
+        } finally {
+            QueryCancellation.end();
+            synchronized (this) {
+                mCancellationSignal = null;
             }
         }
-        return cursor;
     }
 
     @Override
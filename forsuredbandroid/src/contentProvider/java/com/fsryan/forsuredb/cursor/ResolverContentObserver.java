@@ -8,6 +8,8 @@ import android.os.Handler;
 import com.fsryan.forsuredb.api.Resolver;
 import com.fsryan.forsuredb.queryable.FSContentValues;
 
+import java.util.Set;
+
 /**
  * <p>
  *     Use this class to observe all tables referenced by the {@link Resolver} used to initialize
@@ -24,10 +26,46 @@ public abstract class ResolverContentObserver<R extends Resolver> extends BaseRe
         super(context, resolver, handler, deliverSelfNotifications);
     }
 
+    /**
+     * <p>
+     *     Collects the notifications of all observed tables for the debounce window so that a
+     *     burst of changes results in one query. See
+     *     {@link BaseResolverContentObserver#BaseResolverContentObserver(Context, Resolver, Handler, boolean, long, long)}
+     * </p>
+     */
+    public ResolverContentObserver(Context context,
+                                   Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver,
+                                   Handler handler,
+                                   boolean deliverSelfNotifications,
+                                   long debounceMillis,
+                                   long maxDelayMillis) {
+        super(context, resolver, handler, deliverSelfNotifications, debounceMillis, maxDelayMillis);
+    }
+
     public final void onChange(boolean selfChange, Uri tableUri, Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver) {
         onChange(selfChange, tableUri, (FSCursor) resolver.preserveQueryStateAndGet());
     }
 
+    public final void onChange(boolean selfChange, Set<Uri> tableUris, Resolver<R, Uri, FSContentValues, ?, ?, ?, ?> resolver) {
+        onChange(selfChange, tableUris, (FSCursor) resolver.preserveQueryStateAndGet());
+    }
+
+    /**
+     * <p>
+     *     Called once per debounce window with all of the tables that changed within it and the
+     *     result of a single query. By default, this calls
+     *     {@link #onChange(boolean, Uri, FSCursor)} with the first table that changed. Override
+     *     this to receive all of them.
+     * </p>
+     * @param selfChange if all of the collected notifications were self-change notifications
+     * @param tableUris the locator {@link Uri}s of the tables that were changed
+     * @param cursor The {@link FSCursor} you can use to iterate through the result of using the
+     *               {@link Resolver} to query your database.
+     */
+    public void onChange(boolean selfChange, Set<Uri> tableUris, FSCursor cursor) {
+        onChange(selfChange, tableUris.iterator().next(), cursor);
+    }
+
     /**
      * <p>
      *     This will get called any time a change is made to any table referenced by the
@@ -17,11 +17,19 @@
  */
 package com.fsryan.forsuredb.queryable;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.RemoteException;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.fsryan.forsuredb.ForSureAndroidInfoFactory;
 import com.fsryan.forsuredb.api.FSJoin;
 import com.fsryan.forsuredb.api.FSOrdering;
 import com.fsryan.forsuredb.api.FSProjection;
@@ -33,6 +41,7 @@ import com.fsryan.forsuredb.api.SaveResult;
 import com.fsryan.forsuredb.api.adapter.SaveResultFactory;
 import com.fsryan.forsuredb.cursor.FSCursor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -66,6 +75,46 @@ public class ContentProviderQueryable implements FSQueryable<Uri, FSContentValue
         return appContext.getContentResolver().insert(resource, cv.getContentValues());
     }
 
+    /**
+     * <p>
+     *     Inserts all of the records with a single call to
+     *     {@link android.content.ContentResolver#applyBatch(String, ArrayList)}, which
+     *     {@link FSDefaultProvider} performs in a single transaction.
+     * </p>
+     * @param records the records to insert
+     * @return the {@link Uri} of each inserted record in the same order as the input or an empty
+     * list if the batch could not be applied
+     */
+    @NonNull
+    public List<Uri> insertAll(@NonNull List<FSContentValues> records) {
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(records.size());
+        for (FSContentValues cv : records) {
+            if (cv.getContentValues().keySet().size() == 0) {
+                cv.put("deleted", 0);   // <-- see insert
+            }
+            operations.add(ContentProviderOperation.newInsert(resource).withValues(cv.getContentValues()).build());
+        }
+
+        ContentProviderResult[] results;
+        try {
+            results = appContext.getContentResolver().applyBatch(resource.getAuthority(), operations);
+        } catch (RemoteException re) {
+            return Collections.emptyList();
+        } catch (OperationApplicationException oae) {
+            return Collections.emptyList();
+        }
+
+        List<Uri> ret = new ArrayList<>(results.length);
+        for (ContentProviderResult result : results) {
+            ret.add(result.uri);
+        }
+        return ret;
+    }
+
     @Override
     public int update(FSContentValues cv, FSSelection selection, List<FSOrdering> orderings) {
         final Uri uri = enrichUri(selection, orderings, false);
@@ -99,18 +148,80 @@ public class ContentProviderQueryable implements FSQueryable<Uri, FSContentValue
     public Retriever query(FSProjection projection, FSSelection selection, List<FSOrdering> orderings) {
         final String[] p = formatProjection(Arrays.asList(projection));
         final Uri uri = enrichUri(projection, selection, orderings, false);
-        return selection == null
-                ? new FSCursor(appContext.getContentResolver().query(uri, p, null, null, null))
-                : new FSCursor(appContext.getContentResolver().query(uri, p, selection.where(), serializeAll(selection.replacements()), null));
+        return new FSCursor(resolverQuery(uri, p, selection));
     }
 
     @Override
     public Retriever query(List<FSJoin> joins, List<FSProjection> projections, FSSelection selection, List<FSOrdering> orderings) {
         final String[] p = formatProjection(projections);
         final Uri uri = enrichUri(projections, selection, orderings, joins, false);
+        return new FSCursor(resolverQuery(uri, p, selection));
+    }
+
+    /**
+     * <p>
+     *     Queries the page of records that come after the key of the last record of the previous
+     *     page (see {@link Keyset}). Unlike an offset, the cost of fetching a page does not grow
+     *     with its depth. The orderings are extended with the _id column as a tiebreaker.
+     * </p>
+     * @param projection the projection, which must include the ordering columns
+     * @param selection the selection, the limits of which determine the page size
+     * @param orderings the orderings of the pages
+     * @param key the {@link Keyset#keyOf(android.database.Cursor, List) key} of the last record
+     *            of the previous page or null to query the first page
+     * @return a {@link Retriever} over the records of the page
+     */
+    public Retriever queryAfter(FSProjection projection, FSSelection selection, List<FSOrdering> orderings, @Nullable Object[] key) {
+        final String[] p = formatProjection(Arrays.asList(projection));
+        final List<FSOrdering> keysetOrderings = Keyset.orderingsWithTiebreaker(ForSureAndroidInfoFactory.inst().tableName(resource), orderings);
+        Uri uri = enrichUri(projection, selection, keysetOrderings, false);
+        if (key != null) {
+            uri = UriAnalyzer.appendKeysetKey(uri.buildUpon(), key).build();
+        }
+        return new FSCursor(resolverQuery(uri, p, selection));
+    }
+
+    /**
+     * <p>
+     *     Determines whether any record matches the selection without creating a cursor. This
+     *     requires that the resource be provided by {@link FSDefaultProvider}.
+     * </p>
+     * @param selection the selection or null to check whether the table has any records
+     * @return true if at least one record matches the selection
+     */
+    public boolean exists(@Nullable FSSelection selection) {
+        return probe(FSDefaultProvider.METHOD_EXISTS, selection) != 0L;
+    }
+
+    /**
+     * <p>
+     *     Counts the records matching the selection without creating a cursor. This requires that
+     *     the resource be provided by {@link FSDefaultProvider}.
+     * </p>
+     * @param selection the selection or null to count all records of the table
+     * @return the number of records matching the selection
+     */
+    public long count(@Nullable FSSelection selection) {
+        return probe(FSDefaultProvider.METHOD_COUNT, selection);
+    }
+
+    private long probe(String method, @Nullable FSSelection selection) {
+        final Uri uri = enrichUri(selection, null, false);
+        Bundle extras = new Bundle();
+        if (selection != null) {
+            extras.putString(FSDefaultProvider.EXTRA_SELECTION, selection.where());
+            extras.putStringArray(FSDefaultProvider.EXTRA_SELECTION_ARGS, serializeAll(selection.replacements()));
+        }
+        Bundle result = appContext.getContentResolver().call(uri, method, uri.toString(), extras);
+        return result == null ? 0L : result.getLong(FSDefaultProvider.EXTRA_RESULT);
+    }
+
+    // the ContentResolver passes the cancellation on to the provider, even in another process
+    private Cursor resolverQuery(Uri uri, String[] p, @Nullable FSSelection selection) {
+        final CancellationSignal cancellationSignal = QueryCancellation.current();
         return selection == null
-                ? new FSCursor(appContext.getContentResolver().query(uri, p, null, null, null))
-                : new FSCursor(appContext.getContentResolver().query(uri, p, selection.where(), serializeAll(selection.replacements()), null));
+                ? appContext.getContentResolver().query(uri, p, null, null, null, cancellationSignal)
+                : appContext.getContentResolver().query(uri, p, selection.where(), serializeAll(selection.replacements()), null, cancellationSignal);
     }
 
     private Uri enrichUri(@Nullable FSSelection selection, @Nullable List<FSOrdering> orderings, boolean upsert) {
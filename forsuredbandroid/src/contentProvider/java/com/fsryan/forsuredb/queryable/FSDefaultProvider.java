@@ -18,17 +18,24 @@
 package com.fsryan.forsuredb.queryable;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.support.annotation.NonNull;
 
 import com.fsryan.forsuredb.FSDBHelper;
 import com.fsryan.forsuredb.ForSureAndroidInfoFactory;
+import com.fsryan.forsuredb.QueryResultCache;
+import com.fsryan.forsuredb.StatementCache;
 import com.fsryan.forsuredb.api.FSJoin;
 import com.fsryan.forsuredb.api.FSOrdering;
 import com.fsryan.forsuredb.api.FSProjection;
@@ -39,7 +46,12 @@ import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
 import com.fsryan.forsuredb.cursor.FSCursor;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.fsryan.forsuredb.SqlBinder.bindObjects;
 
@@ -51,7 +63,15 @@ import static com.fsryan.forsuredb.SqlBinder.bindObjects;
  */
 public class FSDefaultProvider extends ContentProvider {
 
+    // call methods that probe a table without creating a cursor--see ContentProviderQueryable
+    static final String METHOD_EXISTS = "forsuredb_exists";
+    static final String METHOD_COUNT = "forsuredb_count";
+    static final String EXTRA_SELECTION = "selection";
+    static final String EXTRA_SELECTION_ARGS = "selection_args";
+    static final String EXTRA_RESULT = "result";
+
     private final DBMSIntegrator sqlGenerator;
+    private volatile NotificationCoalescer notificationCoalescer;
 
     public FSDefaultProvider() {
         this(Sql.generator());
@@ -66,6 +86,22 @@ public class FSDefaultProvider extends ContentProvider {
         return true;
     }
 
+    /**
+     * @return the number of change notifications this provider has raised
+     */
+    public long requestedNotificationCount() {
+        return notificationCoalescer().requestedCount();
+    }
+
+    /**
+     * @return the number of change notifications this provider has raised but not delivered
+     * because they were coalesced with another notification for the same table or because the
+     * transaction they were raised in was rolled back
+     */
+    public long suppressedNotificationCount() {
+        return notificationCoalescer().suppressedCount();
+    }
+
     @Override
     public String getType(Uri uri) {
         return "vnd.android.cursor/" + ForSureAndroidInfoFactory.inst().tableName(uri);
@@ -74,15 +110,93 @@ public class FSDefaultProvider extends ContentProvider {
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
         final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
-        long rowId = FSDBHelper.inst().getWritableDatabase().insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        long rowId = insertIgnoringConflict(tableName, values);
         if (rowId != -1) {
             final Uri insertedItemUri = ContentUris.withAppendedId(uri, rowId);
-            getContext().getContentResolver().notifyChange(insertedItemUri, null);
+            notifyChange(insertedItemUri);
             return insertedItemUri;
         }
         return null;
     }
 
+    /**
+     * <p>Inserts all of the values in a single transaction, reusing one compiled statement for
+     * each distinct set of columns. Observers of the table are notified once after the
+     * transaction commits rather than once per inserted record.
+     * @param uri the {@link Uri} of the table into which the values should be inserted
+     * @param values the values to insert
+     * @return the number of records inserted
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        final Map<StatementCache.Key, SQLiteStatement> statements = new HashMap<>();
+
+        int inserted = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues cv : values) {
+                if (cv.size() == 0) {
+                    cv.put("deleted", 0);   // <-- see ContentProviderQueryable.insert
+                }
+                List<String> columns = sortedColumnsOf(cv);
+                StatementCache.Key key = new StatementCache.Key(tableName, StatementCache.Operation.INSERT_OR_IGNORE, columns, null);
+                SQLiteStatement statement = statements.get(key);
+                if (statement == null) {
+                    statement = checkOut(cache, key, insertOrIgnoreSql(tableName, columns));
+                    statements.put(key, statement);
+                }
+                bindObjects(statement, columns, cv);
+                if (statement.executeInsert() != -1) {
+                    inserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            for (Map.Entry<StatementCache.Key, SQLiteStatement> entry : statements.entrySet()) {
+                cache.checkIn(entry.getKey(), entry.getValue());
+            }
+            invalidateCachedResults(tableName, Collections.<Long>emptyList());  // <-- ignoring conflicts replaces nothing
+        }
+
+        if (inserted > 0) {
+            notifyChange(ForSureAndroidInfoFactory.inst().tableResource(tableName));
+        }
+        return inserted;
+    }
+
+    /**
+     * <p>Applies all of the operations in a single transaction. Change notifications are deferred
+     * until the transaction commits, at which point observers of each touched table are
+     * notified once. If any operation fails, the whole batch is rolled back and no notifications
+     * are sent.
+     * @param operations the operations to apply
+     * @return the results of the operations
+     * @throws OperationApplicationException if any operation fails
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        final NotificationCoalescer coalescer = threadNotificationCoalescer();
+        boolean successful = false;
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        coalescer.beginScope();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            FSDBHelper.inst().tableVersions().onTransactionEnd(db);
+            coalescer.endScope(successful);
+        }
+    }
+
     /**
      * <p>Actually an upsert, you can pass in the query parameter UPSERT=true on the {@link Uri}
      * in order to run a transaction which first checks for existence of any records matching the
@@ -107,123 +221,420 @@ public class FSDefaultProvider extends ContentProvider {
         final UriAnalyzer analyzer = new UriAnalyzer(uri);
         final FSSelection fsSelection = analyzer.getSelection(selection, selectionArgs);
         List<FSOrdering> orderings = analyzer.getOrderingsUnsafe();
-        SqlForPreparedStatement ps = sqlGenerator.createDeleteSql(tableName, fsSelection, orderings);
+        SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().deleteSql(sqlGenerator, tableName, fsSelection, orderings);
+        StatementCache.Key key = new StatementCache.Key(tableName, StatementCache.Operation.DELETE, Collections.<String>emptyList(), ps.getSql());
 
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        List<Long> affectedIds = null;
         int rowsAffected = 0;
         SQLiteStatement statement = null;
+        // An outer transaction already isolates the pre-select. Beginning a nested one would let a
+        // failure here roll back the whole outer transaction.
+        final boolean ownTransaction = !db.inTransaction();
+        if (ownTransaction) {
+            db.beginTransaction();  // <-- so that the affected ids are exactly those deleted
+        }
         try {
-            statement = FSDBHelper.inst().getWritableDatabase().compileStatement(ps.getSql());
+            affectedIds = affectedIds(uri, tableName, fsSelection, orderings);
+            statement = checkOut(cache, key, ps.getSql());
             bindObjects(statement, ps.getReplacements());
             rowsAffected = statement.executeUpdateDelete();
+            if (ownTransaction) {
+                db.setTransactionSuccessful();
+            }
             return rowsAffected;
         } finally {
+            if (ownTransaction) {
+                db.endTransaction();
+            }
             if (statement != null) {
-                statement.close();
+                cache.checkIn(key, statement);
             }
             if (rowsAffected > 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                invalidateCachedResults(tableName, affectedIds);
+                notifyRecordsChange(uri, affectedIds);
             }
         }
     }
 
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * <p>When the {@link CancellationSignal} is canceled, the query aborts inside SQLite with an
+     * {@link android.os.OperationCanceledException}, releasing its connection. This includes
+     * filling the window of the returned {@link Cursor}.
+     */
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
         Cursor cursor =  UriAnalyzer.isForJoin(uri)
-                ? performJoinQuery(uri, projection, selection, selectionArgs, sortOrder)
-                : performQuery(uri, projection, selection, selectionArgs, sortOrder);
+                ? performJoinQuery(uri, projection, selection, selectionArgs, cancellationSignal)
+                : performQuery(uri, projection, selection, selectionArgs, cancellationSignal);
         cursor.setNotificationUri(getContext().getContentResolver(), uri);  // <-- allows CursorLoader to auto reload
         return cursor;
     }
 
-    private Cursor performJoinQuery(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    /**
+     * <p>Supports {@link #METHOD_EXISTS} and {@link #METHOD_COUNT}, which answer whether any and
+     * how many records match a selection via a single-value statement rather than a cursor. The
+     * arg is the {@link Uri} of the table, which may contain limits, and the extras contain the
+     * selection and selection args. The answer is in the {@link #EXTRA_RESULT} long of the
+     * returned {@link Bundle}, where 1 means that a matching record exists.
+     * <p>Unlike {@link #query}, {@link ContentProvider#call} is not guarded by the provider's read
+     * permission, so this enforces it. The provider only receives the authority of the
+     * {@link Uri} passed to {@link android.content.ContentResolver#call}, so the table must still
+     * come from the arg, whose authority must be that of this provider.
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        final boolean exists = METHOD_EXISTS.equals(method);
+        if (!exists && !METHOD_COUNT.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        final String readPermission = getReadPermission();
+        if (readPermission != null) {
+            getContext().enforceCallingOrSelfPermission(readPermission, "Permission denial: " + method + " requires " + readPermission);
+        }
+
+        final Uri uri = Uri.parse(arg);
+        final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
+        final String authority = ForSureAndroidInfoFactory.inst().tableResource(tableName).getAuthority();
+        if (authority == null || !authority.equals(uri.getAuthority())) {
+            throw new IllegalArgumentException("Not a resource of this provider: " + arg);
+        }
+        final String selection = extras == null ? null : extras.getString(EXTRA_SELECTION);
+        final String[] selectionArgs = extras == null ? null : extras.getStringArray(EXTRA_SELECTION_ARGS);
+        final FSSelection fsSelection = new UriAnalyzer(uri).getSelection(selection, selectionArgs);
+
+        Bundle ret = new Bundle();
+        if (exists) {
+            ret.putLong(EXTRA_RESULT, QueryProbe.exists(sqlGenerator, tableName, fsSelection) ? 1L : 0L);
+        } else {
+            ret.putLong(EXTRA_RESULT, QueryProbe.count(sqlGenerator, tableName, fsSelection));
+        }
+        return ret;
+    }
+
+    private Cursor performJoinQuery(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, CancellationSignal cancellationSignal) {
         final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
         final UriAnalyzer analyzer = new UriAnalyzer(uri);
-        final FSSelection fsSelection = analyzer.getSelection(selection, selectionArgs);
-        final List<FSOrdering> ordering = analyzer.getOrderingsUnsafe();
+        final List<FSOrdering> ordering = keysetOrderings(tableName, analyzer);
+        final FSSelection fsSelection = keysetSelection(analyzer, analyzer.getSelection(selection, selectionArgs), ordering);
         final List<FSJoin> joins = analyzer.getJoinsUnsafe();
         final List<FSProjection> fsProjections = ProjectionHelper.toFSProjections(analyzer.isDistinct(), projection);
-        final SqlForPreparedStatement ps = sqlGenerator.createQuerySql(tableName, joins, fsProjections, fsSelection, ordering);
-        return innerQuery(tableName, ps);
+        final SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().querySql(sqlGenerator, tableName, joins, fsProjections, fsSelection, ordering);
+        return innerQuery(tableName, QueryResultCache.tablesOf(tableName, joins), ps, cancellationSignal);
     }
 
-    private Cursor performQuery(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    private Cursor performQuery(Uri uri, String[] projection, String selection, String[] selectionArgs, CancellationSignal cancellationSignal) {
         final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
         final UriAnalyzer analyzer = new UriAnalyzer(uri);
-        final FSSelection fsSelection = analyzer.getSelection(selection, selectionArgs);
-        final List<FSOrdering> ordering = analyzer.getOrderingsUnsafe();
+        final List<FSOrdering> ordering = keysetOrderings(tableName, analyzer);
+        final FSSelection fsSelection = keysetSelection(analyzer, analyzer.getSelection(selection, selectionArgs), ordering);
         final FSProjection fsProjection = ProjectionHelper.toFSProjection(tableName, analyzer.isDistinct(), projection);
-        final SqlForPreparedStatement ps = sqlGenerator.createQuerySql(tableName, fsProjection, fsSelection, ordering);
-        return innerQuery(tableName, ps);
+        final FSDBHelper helper = FSDBHelper.inst();
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final FSCursor byId = helper.rowCache().query(
+                db,
+                tableName,
+                fsProjection,
+                fsSelection,
+                TypedBindingCursorFactory.rowLoader(db, tableName, cancellationSignal)
+        );
+        if (byId != null) {
+            return byId;
+        }
+        final SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().querySql(sqlGenerator, tableName, fsProjection, fsSelection, ordering);
+        return innerQuery(tableName, Collections.singleton(tableName), ps, cancellationSignal);
+    }
+
+    // a keyset page must be ordered by the tiebreaker of its key
+    private static List<FSOrdering> keysetOrderings(String tableName, UriAnalyzer analyzer) {
+        final List<FSOrdering> ordering = analyzer.getOrderingsUnsafe();
+        return analyzer.hasKeysetKey() ? Keyset.orderingsWithTiebreaker(tableName, ordering) : ordering;
+    }
+
+    private static FSSelection keysetSelection(UriAnalyzer analyzer, FSSelection fsSelection, List<FSOrdering> ordering) {
+        return analyzer.hasKeysetKey() ? Keyset.after(fsSelection, ordering, analyzer.getKeysetKey()) : fsSelection;
     }
 
     private int performUpsert(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
+        final FSSelection fsSelection = new UriAnalyzer(uri).getSelection(selection, selectionArgs);
+        List<String> conflictTarget = NativeUpsert.conflictTargetFor(tableName, values.keySet(), fsSelection);
+        if (conflictTarget != null) {
+            return nativeUpsert(uri, tableName, values, fsSelection, conflictTarget);
+        }
+
+        final NotificationCoalescer coalescer = threadNotificationCoalescer();
+        boolean successful = false;
         SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        coalescer.beginScope();
         db.beginTransaction();
         try {
             int rowsAffected;
-            if (hasMatchingRecord(uri, selection, selectionArgs)) {
+            if (QueryProbe.exists(sqlGenerator, tableName, fsSelection)) {
                 rowsAffected = updateInternal(uri, values, selection, selectionArgs);
             } else {
                 Uri inserted = insert(uri, values);
                 rowsAffected = inserted == null ? 0 : 1;
             }
-            if (rowsAffected > 0) {
-                db.setTransactionSuccessful();
-            }
+            // Affecting no rows is not a failure. Leaving the transaction unsuccessful would roll
+            // back any outer transaction, such as that of applyBatch, without an exception.
+            db.setTransactionSuccessful();
+            successful = true;
             return rowsAffected;
         } finally {
             db.endTransaction();
+            FSDBHelper.inst().tableVersions().onTransactionEnd(db);
+            coalescer.endScope(successful);
         }
     }
 
     private int updateInternal(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final String tableName = ForSureAndroidInfoFactory.inst().tableName(uri);
-        List<String> columns = new ArrayList<>(values.keySet());
+        List<String> columns = sortedColumnsOf(values);
         final UriAnalyzer analyzer = new UriAnalyzer(uri);
         final FSSelection fsSelection = analyzer.getSelection(selection, selectionArgs);
         List<FSOrdering> orderings = analyzer.getOrderingsUnsafe();
-        SqlForPreparedStatement ps = sqlGenerator.createUpdateSql(tableName, columns, fsSelection, orderings);
+        SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().updateSql(sqlGenerator, tableName, columns, fsSelection, orderings);
+        StatementCache.Key key = new StatementCache.Key(tableName, StatementCache.Operation.UPDATE, columns, ps.getSql());
 
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        List<Long> affectedIds = null;
         int rowsAffected = 0;
         SQLiteStatement statement = null;
+        final boolean ownTransaction = !db.inTransaction();     // <-- see delete
+        if (ownTransaction) {
+            db.beginTransaction();  // <-- so that the affected ids are exactly those updated
+        }
         try {
-            statement = FSDBHelper.inst().getWritableDatabase().compileStatement(ps.getSql());
+            affectedIds = affectedIds(uri, tableName, fsSelection, orderings);
+            statement = checkOut(cache, key, ps.getSql());
             bindObjects(statement, columns, values);
             bindObjects(statement, columns.size() + 1, ps.getReplacements());
             rowsAffected = statement.executeUpdateDelete();
+            if (ownTransaction) {
+                db.setTransactionSuccessful();
+            }
             return rowsAffected;
         } catch (SQLException sqle) {
-            return 0;   // TODO: propagate?
+            return 0;   // TODO: propagate? SQLite aborts only the failed statement of an outer transaction
         } finally {
+            if (ownTransaction) {
+                db.endTransaction();
+            }
             if (statement != null) {
-                statement.close();
+                cache.checkIn(key, statement);
             }
             if (rowsAffected > 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                invalidateCachedResults(tableName, affectedIds);
+                notifyRecordsChange(uri, affectedIds);
             }
         }
     }
 
-    private boolean hasMatchingRecord(Uri uri, String selection, String[] selectionArgs) {
-        Cursor c = query(uri, null, selection, selectionArgs, null);
+    private int nativeUpsert(Uri uri, String tableName, ContentValues values, FSSelection fsSelection, List<String> conflictTarget) {
+        List<String> columns = sortedColumnsOf(values);
+        String sql = NativeUpsert.sql(tableName, columns, conflictTarget, fsSelection.where());
+        StatementCache.Key key = new StatementCache.Key(tableName, StatementCache.Operation.UPSERT, columns, sql);
+
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        int rowsAffected = 0;
+        SQLiteStatement statement = null;
         try {
-            return c != null && c.moveToFirst();
+            statement = checkOut(cache, key, sql);
+            bindObjects(statement, columns, values);
+            bindObjects(statement, columns.size() + 1, fsSelection.replacements());
+            rowsAffected = statement.executeUpdateDelete();
+            return rowsAffected;
+        } catch (SQLException sqle) {
+            return 0;
         } finally {
-            if (c != null) {
-                c.close();
+            if (statement != null) {
+                cache.checkIn(key, statement);
+            }
+            if (rowsAffected > 0) {
+                invalidateCachedResults(tableName, null);
+                notifyChange(uri);
             }
         }
     }
 
-    private FSCursor innerQuery(String tableName, SqlForPreparedStatement ps) {
-        // Since we're forcing our way into a non-exposed API to make the bindings work properly,
-        // the check for isAvailable falls back to the standard version. The drawback of the
-        // standard db query is that instead of binding the objects as they are and using the
-        // underlying bindings, you must first convert even bindable objects into strings. This
-        // could result in unexpected returns when using blobs and floating points as selectionArgs.
+    private long insertIgnoringConflict(String tableName, ContentValues values) {
+        List<String> columns = sortedColumnsOf(values);
+        StatementCache.Key key = new StatementCache.Key(tableName, StatementCache.Operation.INSERT_OR_IGNORE, columns, null);
+
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        SQLiteStatement statement = null;
+        try {
+            statement = checkOut(cache, key, insertOrIgnoreSql(tableName, columns));
+            bindObjects(statement, columns, values);
+            return statement.executeInsert();
+        } catch (SQLException sqle) {
+            return -1;
+        } finally {
+            if (statement != null) {
+                cache.checkIn(key, statement);
+            }
+            invalidateCachedResults(tableName, Collections.<Long>emptyList());
+        }
+    }
+
+    private void notifyChange(Uri uri) {
+        ForSureAndroidInfoFactory infoFactory = ForSureAndroidInfoFactory.inst();
+        threadNotificationCoalescer().notifyChange(uri, infoFactory.tableResource(infoFactory.tableName(uri)));
+    }
+
+    /**
+     * <p>
+     *     Notifies observers of the table of the _ids of the records that changed, which are
+     *     encoded in the {@link Uri} of the notification (see
+     *     {@link UriAnalyzer#changedIdsOf(Uri)}).
+     * </p>
+     * @param uri the {@link Uri} of the write
+     * @param ids the _ids of the records that changed or null if they are not known
+     */
+    private void notifyRecordsChange(Uri uri, List<Long> ids) {
+        if (ids == null) {
+            notifyChange(uri);
+            return;
+        }
+        ForSureAndroidInfoFactory infoFactory = ForSureAndroidInfoFactory.inst();
+        threadNotificationCoalescer().notifyRecordsChange(infoFactory.tableResource(infoFactory.tableName(uri)), ids);
+    }
+
+    /**
+     * <p>
+     *     Selects the _ids of the records that an update or delete with the same selection and
+     *     orderings is about to affect. Must be called within the transaction of the write.
+     * </p>
+     * @return the _ids or null if there are more than
+     * {@link NotificationCoalescer#MAX_NOTIFIED_IDS}
+     */
+    private List<Long> affectedIds(Uri uri, String tableName, FSSelection fsSelection, List<FSOrdering> orderings) {
+        if (UriAnalyzer.isSpecificRecordUri(uri)) {
+            return Collections.singletonList(ContentUris.parseId(uri));
+        }
+
+        final FSProjection idProjection = ProjectionHelper.toFSProjection(tableName, false, new String[] {"_id"});
+        final SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().querySql(sqlGenerator, tableName, idProjection, fsSelection, orderings);
+        final SqlForPreparedStatement limited = new SqlForPreparedStatement(
+                QueryProbe.limitedSql(ps.getSql(), NotificationCoalescer.MAX_NOTIFIED_IDS + 1),
+                ps.getReplacements()
+        );
+        final Cursor cursor = TypedBindingCursorFactory.query(FSDBHelper.inst().getWritableDatabase(), tableName, limited, null);
+        try {
+            if (cursor.getCount() > NotificationCoalescer.MAX_NOTIFIED_IDS) {
+                return null;
+            }
+            final List<Long> ret = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                ret.add(cursor.getLong(0));
+            }
+            return ret;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * <p>
+     *     When called within {@link FSDBHelper#runInTransaction(java.util.concurrent.Callable)},
+     *     opens a notification scope that ends with the transaction, so that notifications are
+     *     held until the transaction commits.
+     * </p>
+     */
+    private NotificationCoalescer threadNotificationCoalescer() {
+        final NotificationCoalescer coalescer = notificationCoalescer();
+        final FSDBHelper helper = FSDBHelper.inst();
+        if (helper.inTransactionScope() && !coalescer.inScope()) {
+            coalescer.beginScope();
+            helper.addTransactionScopeListener(new FSDBHelper.TransactionScopeListener() {
+                @Override
+                public void onTransactionScopeEnd(boolean committed) {
+                    coalescer.endScope(committed);
+                }
+            });
+        }
+        return coalescer;
+    }
+
+    // The provider is created before Application.onCreate, so the FSDBHelper config can only be
+    // read lazily.
+    private NotificationCoalescer notificationCoalescer() {
+        NotificationCoalescer ret = notificationCoalescer;
+        if (ret == null) {
+            synchronized (this) {
+                ret = notificationCoalescer;
+                if (ret == null) {
+                    ret = new NotificationCoalescer(new NotificationCoalescer.Notifier() {
+                        @Override
+                        public void notifyChange(@NonNull Uri uri) {
+                            getContext().getContentResolver().notifyChange(uri, null);
+                        }
+
+                        @Override
+                        public void notifyRecordsChange(@NonNull Uri tableUri, @NonNull Set<Long> ids) {
+                            Uri uri = UriAnalyzer.appendChangedIds(tableUri.buildUpon(), ids).build();
+                            getContext().getContentResolver().notifyChange(uri, null);
+                        }
+                    }, FSDBHelper.inst().config().notificationWindowMillis());
+                    notificationCoalescer = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static SQLiteStatement checkOut(StatementCache cache, StatementCache.Key key, String sql) {
+        SQLiteStatement statement = cache.checkOut(key);
+        return statement == null ? cache.compile(FSDBHelper.inst().getWritableDatabase(), sql) : statement;
+    }
+
+    // sorting allows the same set of columns to hit the same cached statement
+    private static List<String> sortedColumnsOf(ContentValues values) {
+        List<String> columns = new ArrayList<>(values.keySet());
+        Collections.sort(columns);
+        return columns;
+    }
+
+    // mirrors the SQLiteDatabase.CONFLICT_IGNORE behavior of the framework insert
+    private static String insertOrIgnoreSql(String tableName, List<String> columns) {
+        StringBuilder buf = new StringBuilder("INSERT OR IGNORE INTO ").append(tableName).append(" (");
+        StringBuilder valuesBuf = new StringBuilder(" VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            buf.append(i == 0 ? "" : ", ").append(columns.get(i));
+            valuesBuf.append(i == 0 ? "?" : ", ?");
+        }
+        return buf.append(')').append(valuesBuf).append(");").toString();
+    }
+
+    private FSCursor innerQuery(final String tableName,
+                                Collection<String> tables,
+                                final SqlForPreparedStatement ps,
+                                final CancellationSignal cancellationSignal) {
+        // Binding the replacements with their actual types rather than as strings allows blobs and
+        // floating points to match and allows SQLite to use indices on numeric columns.
         final SQLiteDatabase db = FSDBHelper.inst().getReadableDatabase();
-        return CursorDriverHack.isAvailable()
-                ? new CursorDriverHack(db, tableName).query(ps)
-                : (FSCursor) db.rawQuery(ps.getSql(), ReplacementStringifier.stringifyAll(ps.getReplacements()));
+        return FSDBHelper.inst().queryResultCache().query(db, ps.getSql(), ps.getReplacements(), tables, new QueryResultCache.Source() {
+            @Override
+            public Cursor query() {
+                return TypedBindingCursorFactory.query(db, tableName, ps, cancellationSignal);
+            }
+        });
+    }
+
+    /**
+     * @param changedIds the _ids of the existing records that may have changed or null if any
+     *                   record may have changed
+     */
+    private static void invalidateCachedResults(String tableName, List<Long> changedIds) {
+        FSDBHelper helper = FSDBHelper.inst();
+        helper.tableVersions().written(helper.getWritableDatabase(), tableName, changedIds);
     }
 }
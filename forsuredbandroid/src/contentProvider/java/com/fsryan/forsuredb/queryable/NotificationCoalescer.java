@@ -0,0 +1,239 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     Deduplicates change notifications per table {@link Uri}. Notifications raised on a thread
+ *     within a scope (see {@link #beginScope()}) are held until the outermost scope ends and then
+ *     delivered once per table--or dropped if the scope failed. Outside of a scope, notifications
+ *     are either delivered immediately or, if a window is configured, collected for the length of
+ *     the window and then delivered once per table.
+ * </p>
+ * <p>
+ *     When the _ids of the changed records are known (see
+ *     {@link #notifyRecordsChange(Uri, Collection)}), the _ids of all coalesced notifications of a
+ *     table are delivered with its one notification, unless any of them did not know its _ids or
+ *     there are more than {@link #MAX_NOTIFIED_IDS}.
+ * </p>
+ */
+class NotificationCoalescer {
+
+    /**
+     * <p>
+     *     The maximum number of _ids of a table delivered with one notification. Beyond this,
+     *     observers are better off requerying the whole table.
+     * </p>
+     */
+    static final int MAX_NOTIFIED_IDS = 100;
+
+    interface Notifier {
+        void notifyChange(@NonNull Uri uri);
+        void notifyRecordsChange(@NonNull Uri tableUri, @NonNull Set<Long> ids);
+    }
+
+    private static final class Scope {
+        int depth;
+        boolean failed;
+        final Map<Uri, Set<Long>> pending = new LinkedHashMap<>();     // <-- null _ids for the whole table
+    }
+
+    private final Notifier notifier;
+    private final long windowMillis;
+    private final ThreadLocal<Scope> scopes = new ThreadLocal<>();
+    private final Map<Uri, Set<Long>> windowPending = new LinkedHashMap<>();
+    private final AtomicLong requestedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    NotificationCoalescer(@NonNull Notifier notifier, long windowMillis) {
+        this.notifier = notifier;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * <p>
+     *     Begins a scope on the current thread, typically along with a transaction. Scopes may be
+     *     nested. Each call must be matched with a call to {@link #endScope(boolean)}.
+     * </p>
+     */
+    void beginScope() {
+        Scope scope = scopes.get();
+        if (scope == null) {
+            scope = new Scope();
+            scopes.set(scope);
+        }
+        scope.depth++;
+    }
+
+    /**
+     * <p>
+     *     Ends a scope on the current thread. When the outermost scope ends, the notifications
+     *     raised within it are delivered unless any of the nested scopes failed, mirroring the way
+     *     a failed nested transaction rolls back the outermost transaction.
+     * </p>
+     * @param successful whether the work of the scope was successful
+     */
+    void endScope(boolean successful) {
+        Scope scope = scopes.get();
+        if (scope == null) {
+            throw new IllegalStateException("endScope called without beginScope");
+        }
+        scope.failed |= !successful;
+        if (--scope.depth > 0) {
+            return;
+        }
+
+        scopes.remove();
+        if (!scope.failed) {
+            deliverAll(scope.pending);
+        }
+    }
+
+    /**
+     * @return true if the current thread is within a scope
+     */
+    boolean inScope() {
+        return scopes.get() != null;
+    }
+
+    /**
+     * @param uri the {@link Uri} that changed
+     * @param tableUri the {@link Uri} of the table of the {@link Uri} that changed. Observers of a
+     *                 table are registered for descendants, so notifying the table {@link Uri}
+     *                 suffices when notifications are coalesced.
+     */
+    void notifyChange(@NonNull Uri uri, @NonNull Uri tableUri) {
+        requestedCount.incrementAndGet();
+        Scope scope = scopes.get();
+        if (scope != null) {
+            addPending(scope.pending, tableUri, null);
+            return;
+        }
+        if (windowMillis <= 0) {
+            deliver(uri);
+            return;
+        }
+        addWindowPending(tableUri, null);
+    }
+
+    /**
+     * @param tableUri the {@link Uri} of the table of the records that changed
+     * @param ids the _ids of the records that changed
+     */
+    void notifyRecordsChange(@NonNull Uri tableUri, @NonNull Collection<Long> ids) {
+        requestedCount.incrementAndGet();
+        Scope scope = scopes.get();
+        if (scope != null) {
+            addPending(scope.pending, tableUri, ids);
+            return;
+        }
+        if (windowMillis <= 0) {
+            deliver(tableUri, ids.size() > MAX_NOTIFIED_IDS ? null : new LinkedHashSet<>(ids));
+            return;
+        }
+        addWindowPending(tableUri, ids);
+    }
+
+    long requestedCount() {
+        return requestedCount.get();
+    }
+
+    long deliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return the number of requested notifications that were not delivered because they were
+     * coalesced with another notification or raised within a failed scope
+     */
+    long suppressedCount() {
+        return requestedCount.get() - deliveredCount.get();
+    }
+
+    private void addWindowPending(Uri tableUri, Collection<Long> ids) {
+        synchronized (windowPending) {
+            boolean first = windowPending.isEmpty();
+            addPending(windowPending, tableUri, ids);
+            if (first) {
+                scheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushWindow();
+                    }
+                }, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flushWindow() {
+        Map<Uri, Set<Long>> toDeliver;
+        synchronized (windowPending) {
+            toDeliver = new LinkedHashMap<>(windowPending);
+            windowPending.clear();
+        }
+        deliverAll(toDeliver);
+    }
+
+    // null ids mean that any record of the table may have changed, which absorbs any known ids
+    private static void addPending(Map<Uri, Set<Long>> pending, Uri tableUri, Collection<Long> ids) {
+        if (!pending.containsKey(tableUri)) {
+            pending.put(tableUri, ids == null ? null : new LinkedHashSet<>(ids));
+        } else if (pending.get(tableUri) != null) {
+            if (ids == null) {
+                pending.put(tableUri, null);
+            } else {
+                pending.get(tableUri).addAll(ids);
+            }
+        }
+        if (pending.get(tableUri) != null && pending.get(tableUri).size() > MAX_NOTIFIED_IDS) {
+            pending.put(tableUri, null);
+        }
+    }
+
+    private void deliverAll(Map<Uri, Set<Long>> pending) {
+        for (Map.Entry<Uri, Set<Long>> entry : pending.entrySet()) {
+            deliver(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void deliver(Uri tableUri, Set<Long> ids) {
+        if (ids == null) {
+            deliver(tableUri);
+            return;
+        }
+        deliveredCount.incrementAndGet();
+        notifier.notifyRecordsChange(tableUri, ids);
+    }
+
+    private void deliver(Uri uri) {
+        deliveredCount.incrementAndGet();
+        notifier.notifyChange(uri);
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread t = new Thread(r, "forsuredb-notifications");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return scheduler;
+    }
+}
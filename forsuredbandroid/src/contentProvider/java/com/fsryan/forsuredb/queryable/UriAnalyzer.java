@@ -14,9 +14,11 @@ import com.fsryan.forsuredb.api.OrderBy;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,6 +31,8 @@ public class UriAnalyzer {
     public static final String QUERY_PARAM_JOIN = "JOIN";
     public static final String QUERY_PARAM_LIMITS = "LIMITS";
     public static final String QUERY_PARAM_ORDERING = "ORDER";
+    public static final String QUERY_PARAM_AFTER = "AFTER";
+    public static final String QUERY_PARAM_CHANGED_IDS = "CHANGED_IDS";
 
     private static final Pattern ID_SELECTION_PATTERN = Pattern.compile("_id *(=|IS) *\\?");
 
@@ -116,6 +120,71 @@ public class UriAnalyzer {
         return uri != null && uri.getQueryParameter(QUERY_PARAM_ORDERING) != null;
     }
 
+    /**
+     * @param uri the {@link Uri} to check
+     * @return true if the {@link Uri} is for the page of records after a {@link Keyset} key
+     * @see #appendKeysetKey(Uri.Builder, Object[])
+     */
+    public static boolean isForKeysetPage(@Nullable Uri uri) {
+        return uri != null && uri.getQueryParameter(QUERY_PARAM_AFTER) != null;
+    }
+
+    /**
+     * <p>Encodes the {@link Keyset} key of the last record of the previous page so that the
+     * {@link Uri} locates the records after it. Each value is encoded as a type parameter
+     * followed by a value parameter.
+     * @param builder the {@link Uri.Builder} to append to
+     * @param key the key of the last record of the previous page
+     * @return the builder input
+     */
+    @NonNull
+    public static Uri.Builder appendKeysetKey(@NonNull Uri.Builder builder, @NonNull Object[] key) {
+        for (String serialized : ReplacementSerializer.serializeAll(key)) {
+            builder.appendQueryParameter(QUERY_PARAM_AFTER, serialized);
+        }
+        return builder;
+    }
+
+    /**
+     * <p>Encodes the _ids of the records that changed into the table {@link Uri} of a change
+     * notification so that observers can refresh only those records. Each _id is encoded as its
+     * own parameter.
+     * @param builder the {@link Uri.Builder} of the table {@link Uri} to append to
+     * @param ids the _ids of the records that changed
+     * @return the builder input
+     * @see #changedIdsOf(Uri)
+     */
+    @NonNull
+    public static Uri.Builder appendChangedIds(@NonNull Uri.Builder builder, @NonNull Collection<Long> ids) {
+        for (Long id : ids) {
+            builder.appendQueryParameter(QUERY_PARAM_CHANGED_IDS, Long.toString(id));
+        }
+        return builder;
+    }
+
+    /**
+     * @param uri the {@link Uri} of a change notification
+     * @return the _ids of the records that changed or null if they are not known, in which case
+     * any record of the table may have changed
+     * @see #appendChangedIds(Uri.Builder, Collection)
+     */
+    @Nullable
+    public static Set<Long> changedIdsOf(@Nullable Uri uri) {
+        List<String> encoded = uri == null ? null : uri.getQueryParameters(QUERY_PARAM_CHANGED_IDS);
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        Set<Long> ret = new LinkedHashSet<>(encoded.size());
+        for (String id : encoded) {
+            try {
+                ret.add(Long.parseLong(id));
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+        return ret;
+    }
+
     // TODO: this is probably not correct, but it doesn't seem broken for the way Uri is being used
     /**
      * <p>A {@link Uri} is considered to be a specific record {@link Uri} in the case that it:
@@ -384,6 +453,15 @@ public class UriAnalyzer {
         return isForJoin(uri);
     }
 
+    /**
+     * @return true if the {@link Uri} analyzed by this {@link UriAnalyzer} has a {@link Keyset}
+     * key encoded, otherwise false
+     * @see #isForKeysetPage(Uri)
+     */
+    public boolean hasKeysetKey() {
+        return isForKeysetPage(uri);
+    }
+
     /**
      * @return true if the {@link Uri} analyzed by this {@link UriAnalyzer} has an {@link Limits}
      * encoded, otherwise false
@@ -484,6 +562,19 @@ public class UriAnalyzer {
         }
     }
 
+    /**
+     * @return the {@link Keyset} key encoded in the {@link Uri} analyzed by this
+     * {@link UriAnalyzer} or null if none
+     * @see #appendKeysetKey(Uri.Builder, Object[])
+     */
+    @Nullable
+    public Object[] getKeysetKey() {
+        List<String> serialized = uri.getQueryParameters(QUERY_PARAM_AFTER);
+        return serialized == null || serialized.isEmpty()
+                ? null
+                : ReplacementSerializer.deserializeAll(serialized.toArray(new String[serialized.size()]));
+    }
+
     /**
      * <p>The {@link Uri} may either specify a table, subset of records in a table, or a single
      * record of the table. This method ensures that any such encoding in the {@link Uri} is
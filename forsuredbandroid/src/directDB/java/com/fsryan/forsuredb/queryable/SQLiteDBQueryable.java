@@ -1,12 +1,17 @@
 package com.fsryan.forsuredb.queryable;
 
+import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.QueryResultCache;
+import com.fsryan.forsuredb.RowCache;
+import com.fsryan.forsuredb.StatementCache;
 import com.fsryan.forsuredb.api.FSJoin;
 import com.fsryan.forsuredb.api.FSOrdering;
 import com.fsryan.forsuredb.api.FSProjection;
@@ -21,7 +26,13 @@ import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
 import com.fsryan.forsuredb.cursor.FSCursor;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import static com.fsryan.forsuredb.SqlBinder.bindObjects;
 
@@ -46,23 +57,88 @@ public class SQLiteDBQueryable implements FSQueryable<DirectLocator, FSContentVa
 
     @Override
     public DirectLocator insert(FSContentValues cv) {
-        // SQLite either requires that there be a value for a column in an insert query or that the query be in the following
-        // form: INSERT INTO table DEFAULT VALUES;
-        // Since executing raw SQL on the SQLiteDatabase reference would achieve the desired result, but return void, we would
-        // not get the Uri of the inserted resource back from the call.
-        // This hack makes use of the fact that each forsuredb table has a 'deleted' column with a default value of 0. Since it
-        // would have been 0 anyway, we can get away with this hack here and can avoid using the nullColumnHack encouraged by
-        // the Android framework.
-        if (cv.getContentValues().keySet().isEmpty()) {
-            cv.put("deleted", 0);
-        }
+        return WriteDispatcher.shouldDispatch() ? WriteDispatcher.await(insertAsync(cv)) : insertNow(cv);
+    }
 
-        List<String> columns = new ArrayList<>(cv.keySet());
-        String sql = sqlGenerator.newSingleRowInsertionSql(locator.table, columns);
+    /**
+     * <p>
+     *     Same as {@link #insert(FSContentValues)}, but when a {@link WriteDispatcher} is started,
+     *     the insert is performed on its writer thread.
+     * </p>
+     * @param cv the values to insert
+     * @return a {@link Future} that completes after the insert has been committed
+     */
+    @NonNull
+    public Future<DirectLocator> insertAsync(final FSContentValues cv) {
+        return WriteDispatcher.dispatch(new Callable<DirectLocator>() {
+            @Override
+            public DirectLocator call() {
+                return insertNow(cv);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     Same as {@link #update(FSContentValues, FSSelection, List)}, but when a
+     *     {@link WriteDispatcher} is started, the update is performed on its writer thread.
+     * </p>
+     * @return a {@link Future} that completes after the update has been committed
+     */
+    @NonNull
+    public Future<Integer> updateAsync(final FSContentValues cv, final FSSelection selection, final List<FSOrdering> orderings) {
+        return WriteDispatcher.dispatch(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return updateNow(cv, selection, orderings);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     Same as {@link #upsert(FSContentValues, FSSelection, List)}, but when a
+     *     {@link WriteDispatcher} is started, the upsert is performed on its writer thread.
+     * </p>
+     * @return a {@link Future} that completes after the upsert has been committed
+     */
+    @NonNull
+    public Future<SaveResult<DirectLocator>> upsertAsync(final FSContentValues cv, final FSSelection selection, final List<FSOrdering> orderings) {
+        return WriteDispatcher.dispatch(new Callable<SaveResult<DirectLocator>>() {
+            @Override
+            public SaveResult<DirectLocator> call() {
+                return upsertNow(cv, selection, orderings);
+            }
+        });
+    }
 
+    /**
+     * <p>
+     *     Same as {@link #delete(FSSelection, List)}, but when a {@link WriteDispatcher} is
+     *     started, the delete is performed on its writer thread.
+     * </p>
+     * @return a {@link Future} that completes after the delete has been committed
+     */
+    @NonNull
+    public Future<Integer> deleteAsync(final FSSelection selection, final List<FSOrdering> orderings) {
+        return WriteDispatcher.dispatch(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return deleteNow(selection, orderings);
+            }
+        });
+    }
+
+    private DirectLocator insertNow(FSContentValues cv) {
+        ensureInsertable(cv);
+
+        List<String> columns = sortedColumnsOf(cv);
+        StatementCache.Key key = StatementCache.Key.insert(locator.table, columns);
+
+        final StatementCache cache = FSDBHelper.inst().statementCache();
         SQLiteStatement statement = null;
         try {
-            statement = FSDBHelper.inst().getWritableDatabase().compileStatement(sql);
+            statement = checkOutInsertStatement(cache, key, columns);
             bindObjects(statement, columns, cv);
             long id = statement.executeInsert();
             return id < 1 ? null : new DirectLocator(locator.table, id);
@@ -70,18 +146,81 @@ public class SQLiteDBQueryable implements FSQueryable<DirectLocator, FSContentVa
             return null;    // TODO: propagate instead of trap
         } finally {
             if (statement != null) {
-                statement.close();
+                cache.checkIn(key, statement);
+            }
+            invalidateCachedResults(idsReplaceableBy(cv.keySet()));
+        }
+    }
+
+    /**
+     * <p>
+     *     Inserts all of the records in a single transaction, reusing one compiled statement for
+     *     each distinct set of columns. Either all of the records are inserted or none of them are.
+     * </p>
+     * @param records the records to insert
+     * @return the {@link DirectLocator} of each inserted record in the same order as the input or
+     * an empty list if the records could not be inserted
+     */
+    @NonNull
+    public List<DirectLocator> insertAll(@NonNull List<FSContentValues> records) {
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        final Map<StatementCache.Key, SQLiteStatement> statements = new HashMap<>();
+        final List<DirectLocator> ret = new ArrayList<>(records.size());
+        Collection<Long> replaceableIds = Collections.emptyList();
+        db.beginTransaction();
+        try {
+            for (FSContentValues cv : records) {
+                ensureInsertable(cv);
+                if (replaceableIds != null) {
+                    replaceableIds = idsReplaceableBy(cv.keySet());
+                }
+                List<String> columns = sortedColumnsOf(cv);
+                StatementCache.Key key = StatementCache.Key.insert(locator.table, columns);
+                SQLiteStatement statement = statements.get(key);
+                if (statement == null) {
+                    statement = checkOutInsertStatement(cache, key, columns);
+                    statements.put(key, statement);
+                }
+
+                bindObjects(statement, columns, cv);
+                long id = statement.executeInsert();
+                if (id < 1) {
+                    return Collections.emptyList(); // <-- the transaction is rolled back
+                }
+                ret.add(new DirectLocator(locator.table, id));
+            }
+            db.setTransactionSuccessful();
+            return ret;
+        } catch (SQLException sqle) {
+            return Collections.emptyList();
+        } finally {
+            db.endTransaction();
+            for (Map.Entry<StatementCache.Key, SQLiteStatement> entry : statements.entrySet()) {
+                cache.checkIn(entry.getKey(), entry.getValue());
             }
+            invalidateCachedResults(replaceableIds);
         }
     }
 
     @Override
     public int update(FSContentValues cv, FSSelection selection, List<FSOrdering> orderings) {
-        List<String> columns = new ArrayList<>(cv.keySet());
-        SqlForPreparedStatement ps = sqlGenerator.createUpdateSql(locator.table, columns, selection, orderings);
+        return WriteDispatcher.shouldDispatch() ? WriteDispatcher.await(updateAsync(cv, selection, orderings)) : updateNow(cv, selection, orderings);
+    }
+
+    private int updateNow(FSContentValues cv, FSSelection selection, List<FSOrdering> orderings) {
+        List<String> columns = sortedColumnsOf(cv);
+        SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().updateSql(sqlGenerator, locator.table, columns, selection, orderings);
+        StatementCache.Key key = new StatementCache.Key(locator.table, StatementCache.Operation.UPDATE, columns, ps.getSql());
+
+        final StatementCache cache = FSDBHelper.inst().statementCache();
         SQLiteStatement statement = null;
         try {
-            statement = FSDBHelper.inst().getWritableDatabase().compileStatement(ps.getSql());
+            statement = checkOut(cache, key, ps.getSql());
             bindObjects(statement, columns, cv);
             bindObjects(statement, columns.size() + 1, ps.getReplacements());
             return statement.executeUpdateDelete();
@@ -89,53 +228,102 @@ public class SQLiteDBQueryable implements FSQueryable<DirectLocator, FSContentVa
             return 0;
         } finally {
             if (statement != null) {
-                statement.close();
+                cache.checkIn(key, statement);
             }
+            invalidateCachedResults(idsSelectedBy(selection));
         }
     }
 
     @Override
     public SaveResult<DirectLocator> upsert(FSContentValues cv, FSSelection selection, List<FSOrdering> orderings) {
+        return WriteDispatcher.shouldDispatch() ? WriteDispatcher.await(upsertAsync(cv, selection, orderings)) : upsertNow(cv, selection, orderings);
+    }
+
+    private SaveResult<DirectLocator> upsertNow(FSContentValues cv, FSSelection selection, List<FSOrdering> orderings) {
+        List<String> conflictTarget = NativeUpsert.conflictTargetFor(locator.table, cv.keySet(), selection);
+        if (conflictTarget != null) {
+            // A single statement needs no transaction. SQLite does not report whether it inserted
+            // or updated, so there is no inserted locator.
+            try {
+                return SaveResultFactory.create(null, nativeUpsert(cv, selection, conflictTarget), null);
+            } catch (Exception e) {
+                return SaveResultFactory.create(null, 0, e);
+            }
+        }
+
         SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
-        db.beginTransaction();
+        // Within a transaction--the writer thread's group or a caller's--a failed nested
+        // transaction would silently roll back the whole outer transaction. The outer transaction
+        // already keeps anything from being written between the query and the write.
+        final boolean ownTransaction = !db.inTransaction();
+        if (ownTransaction) {
+            db.beginTransaction();
+        }
         try {
             DirectLocator inserted = null;
             int rowsAffected;
-            if (hasMatchingRecord(selection)) {
+            if (exists(selection)) {
                 rowsAffected = update(cv, selection, orderings);
             } else {
                 inserted = insert(cv);
                 rowsAffected = inserted == null ? 0 : 1;
             }
-            db.setTransactionSuccessful();
+            if (ownTransaction) {
+                db.setTransactionSuccessful();
+            }
             return SaveResultFactory.create(inserted, rowsAffected, null);
         } catch (Exception e) {
             return SaveResultFactory.create(null, 0, e);
         } finally {
-            db.endTransaction();
+            if (ownTransaction) {
+                db.endTransaction();
+                FSDBHelper.inst().tableVersions().onTransactionEnd(db);
+            }
         }
     }
 
     @Override
     public int delete(FSSelection selection, List<FSOrdering> orderings) {
-        SqlForPreparedStatement ps = sqlGenerator.createDeleteSql(locator.table, selection, orderings);
+        return WriteDispatcher.shouldDispatch() ? WriteDispatcher.await(deleteAsync(selection, orderings)) : deleteNow(selection, orderings);
+    }
+
+    private int deleteNow(FSSelection selection, List<FSOrdering> orderings) {
+        SqlForPreparedStatement ps = FSDBHelper.inst().sqlGenerationCache().deleteSql(sqlGenerator, locator.table, selection, orderings);
+        StatementCache.Key key = new StatementCache.Key(locator.table, StatementCache.Operation.DELETE, Collections.<String>emptyList(), ps.getSql());
+
+        final StatementCache cache = FSDBHelper.inst().statementCache();
         SQLiteStatement statement = null;
         try {
-            statement = FSDBHelper.inst().getWritableDatabase().compileStatement(ps.getSql());
+            statement = checkOut(cache, key, ps.getSql());
             bindObjects(statement, ps.getReplacements());
             return statement.executeUpdateDelete();
         } catch (SQLException sqle) {
             return 0;
         } finally {
             if (statement != null) {
-                statement.close();
+                cache.checkIn(key, statement);
             }
+            invalidateCachedResults(idsSelectedBy(selection));
         }
     }
 
     @Override
     public Retriever query(FSProjection projection, FSSelection selection, List<FSOrdering> orderings) {
-        return innerQuery(sqlGenerator.createQuerySql(
+        final FSDBHelper helper = FSDBHelper.inst();
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final FSCursor byId = helper.rowCache().query(
+                db,
+                locator.table,
+                projection,
+                selection,
+                TypedBindingCursorFactory.rowLoader(db, locator.table, QueryCancellation.current())
+        );
+        if (byId != null) {
+            return byId;
+        }
+
+        return innerQuery(Collections.singleton(locator.table), FSDBHelper.inst().sqlGenerationCache().querySql(
+                sqlGenerator,
                 locator.table,
                 projection,
                 selection,
@@ -145,7 +333,8 @@ public class SQLiteDBQueryable implements FSQueryable<DirectLocator, FSContentVa
 
     @Override
     public Retriever query(List<FSJoin> joins, List<FSProjection> projections, FSSelection selection, List<FSOrdering> orderings) {
-        return innerQuery(sqlGenerator.createQuerySql(
+        return innerQuery(QueryResultCache.tablesOf(locator.table, joins), FSDBHelper.inst().sqlGenerationCache().querySql(
+                sqlGenerator,
                 locator.table,
                 joins,
                 projections,
@@ -154,27 +343,138 @@ public class SQLiteDBQueryable implements FSQueryable<DirectLocator, FSContentVa
         ));
     }
 
-    private Retriever innerQuery(SqlForPreparedStatement ps) {
-        // Since we're forcing our way into a non-exposed API to make the bindings work properly,
-        // the check for isAvailable falls back to the standard version. The drawback of the
-        // standard db query is that instead of binding the objects as they are and using the
-        // underlying bindings, you must first convert even bindable objects into strings. This
-        // could result in unexpected returns when using blobs and floating points as selectionArgs.
+    /**
+     * <p>
+     *     Queries the page of records that come after the key of the last record of the previous
+     *     page (see {@link Keyset}). Unlike an offset, the cost of fetching a page does not grow
+     *     with its depth. The orderings are extended with the _id column as a tiebreaker.
+     * </p>
+     * @param projection the projection, which must include the ordering columns
+     * @param selection the selection, the limits of which determine the page size
+     * @param orderings the orderings of the pages
+     * @param key the {@link Keyset#keyOf(android.database.Cursor, List) key} of the last record
+     *            of the previous page or null to query the first page
+     * @return a {@link Retriever} over the records of the page
+     */
+    public Retriever queryAfter(FSProjection projection, FSSelection selection, List<FSOrdering> orderings, Object[] key) {
+        List<FSOrdering> keysetOrderings = Keyset.orderingsWithTiebreaker(locator.table, orderings);
+        return query(projection, Keyset.after(selection, keysetOrderings, key), keysetOrderings);
+    }
+
+    /**
+     * <p>
+     *     Determines whether any record matches the selection without creating a cursor
+     * </p>
+     * @param selection the selection or null to check whether the table has any records
+     * @return true if at least one record matches the selection
+     */
+    public boolean exists(FSSelection selection) {
+        return QueryProbe.exists(sqlGenerator, locator.table, selection);
+    }
+
+    /**
+     * <p>
+     *     Counts the records matching the selection without creating a cursor
+     * </p>
+     * @param selection the selection or null to count all records of the table
+     * @return the number of records matching the selection
+     */
+    public long count(FSSelection selection) {
+        return QueryProbe.count(sqlGenerator, locator.table, selection);
+    }
+
+    private Retriever innerQuery(Collection<String> tables, final SqlForPreparedStatement ps) {
+        // Binding the replacements with their actual types rather than as strings allows blobs and
+        // floating points to match and allows SQLite to use indices on numeric columns.
         final SQLiteDatabase db = FSDBHelper.inst().getReadableDatabase();
-        return CursorDriverHack.isAvailable()
-                ? new CursorDriverHack(db, locator.table).query(ps)
-                : (FSCursor) db.rawQuery(ps.getSql(), ReplacementStringifier.stringifyAll(ps.getReplacements()));
+        final CancellationSignal cancellationSignal = QueryCancellation.current();
+        return FSDBHelper.inst().queryResultCache().query(db, ps.getSql(), ps.getReplacements(), tables, new QueryResultCache.Source() {
+            @Override
+            public Cursor query() {
+                return TypedBindingCursorFactory.query(db, locator.table, ps, cancellationSignal);
+            }
+        });
+    }
+
+    /**
+     * @param changedIds the _ids of the existing records that may have changed or null if any
+     *                   record may have changed
+     */
+    private void invalidateCachedResults(Collection<Long> changedIds) {
+        FSDBHelper helper = FSDBHelper.inst();
+        helper.tableVersions().written(helper.getWritableDatabase(), locator.table, changedIds);
+    }
+
+    // An insert changes no existing record unless it conflicts with one on a unique key, in which
+    // case the conflict resolution could replace the existing record.
+    private Collection<Long> idsReplaceableBy(Collection<String> insertedColumns) {
+        if (insertedColumns.contains("_id")) {
+            return null;
+        }
+        for (List<String> uniqueKey : FSDBHelper.inst().uniqueKeysOf(locator.table)) {
+            if (!uniqueKey.equals(Collections.singletonList("_id"))) {
+                return null;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private Collection<Long> idsSelectedBy(FSSelection selection) {
+        Long id = RowCache.idOf(locator.table, selection);
+        return id == null ? null : Collections.singletonList(id);
     }
 
-    private boolean hasMatchingRecord(FSSelection selection) {
-        Retriever r = null;
+    private int nativeUpsert(FSContentValues cv, FSSelection selection, List<String> conflictTarget) {
+        List<String> columns = sortedColumnsOf(cv);
+        String where = selection == null ? null : selection.where();
+        String sql = NativeUpsert.sql(locator.table, columns, conflictTarget, where);
+        StatementCache.Key key = new StatementCache.Key(locator.table, StatementCache.Operation.UPSERT, columns, sql);
+
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        SQLiteStatement statement = checkOut(cache, key, sql);
         try {
-            r = query(null, selection, null);
-            return r != null && r.moveToFirst();
-        } finally {
-            if (r != null) {
-                r.close();
+            bindObjects(statement, columns, cv);
+            if (selection != null) {
+                bindObjects(statement, columns.size() + 1, selection.replacements());
             }
+            return statement.executeUpdateDelete();
+        } finally {
+            cache.checkIn(key, statement);
+            invalidateCachedResults(null);
         }
     }
+
+    private SQLiteStatement checkOutInsertStatement(StatementCache cache, StatementCache.Key key, List<String> columns) {
+        SQLiteStatement statement = cache.checkOut(key);
+        if (statement == null) {
+            String sql = sqlGenerator.newSingleRowInsertionSql(locator.table, columns);
+            statement = cache.compile(FSDBHelper.inst().getWritableDatabase(), sql);
+        }
+        return statement;
+    }
+
+    private static SQLiteStatement checkOut(StatementCache cache, StatementCache.Key key, String sql) {
+        SQLiteStatement statement = cache.checkOut(key);
+        return statement == null ? cache.compile(FSDBHelper.inst().getWritableDatabase(), sql) : statement;
+    }
+
+    private static void ensureInsertable(FSContentValues cv) {
+        // SQLite either requires that there be a value for a column in an insert query or that the query be in the following
+        // form: INSERT INTO table DEFAULT VALUES;
+        // Since executing raw SQL on the SQLiteDatabase reference would achieve the desired result, but return void, we would
+        // not get the Uri of the inserted resource back from the call.
+        // This hack makes use of the fact that each forsuredb table has a 'deleted' column with a default value of 0. Since it
+        // would have been 0 anyway, we can get away with this hack here and can avoid using the nullColumnHack encouraged by
+        // the Android framework.
+        if (cv.getContentValues().keySet().isEmpty()) {
+            cv.put("deleted", 0);
+        }
+    }
+
+    // sorting allows the same set of columns to hit the same cached statement
+    private static List<String> sortedColumnsOf(FSContentValues cv) {
+        List<String> columns = new ArrayList<>(cv.keySet());
+        Collections.sort(columns);
+        return columns;
+    }
 }
@@ -0,0 +1,334 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.fsryan.forsuredb.FSDBHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Funnels the writes of {@link SQLiteDBQueryable} through a single writer thread that groups
+ *     the pending writes into one transaction, so that many producer threads share a commit
+ *     rather than contending for the database lock and committing separately.
+ * </p>
+ * <p>
+ *     When started via {@link #start(long, int)}, the synchronous write methods of
+ *     {@link SQLiteDBQueryable} block until the transaction containing the write commits, and the
+ *     asynchronous write methods return a {@link Future} that completes at that time. A write is
+ *     never reported as done before its transaction commits. If the commit fails, every write in
+ *     the group fails with the cause.
+ * </p>
+ */
+public class WriteDispatcher {
+
+    private static final String LOG_TAG = WriteDispatcher.class.getSimpleName();
+
+    private static volatile WriteDispatcher current;
+
+    private final BlockingQueue<PendingWrite<?>> queue = new LinkedBlockingQueue<>();
+    private final long latencyBudgetNanos;
+    private final int maxGroupSize;
+    private final Thread writerThread;
+    private volatile boolean stopped;
+
+    private WriteDispatcher(long latencyBudgetMillis, int maxGroupSize) {
+        this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis);
+        this.maxGroupSize = maxGroupSize;
+        writerThread = new WriterThread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     Starts routing the writes of all {@link SQLiteDBQueryable} instances through a single
+     *     writer thread. Calling this when already started has no effect.
+     * </p>
+     * @param latencyBudgetMillis the maximum amount of time the writer waits for additional
+     *                            writes to join a transaction after the first write of the
+     *                            transaction arrives. With 0, only writes that are already queued
+     *                            join the transaction.
+     * @param maxGroupSize the maximum number of writes in one transaction
+     * @return the current {@link WriteDispatcher}
+     */
+    public static synchronized WriteDispatcher start(long latencyBudgetMillis, int maxGroupSize) {
+        if (latencyBudgetMillis < 0) {
+            throw new IllegalArgumentException("latencyBudgetMillis must not be negative: " + latencyBudgetMillis);
+        }
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be positive: " + maxGroupSize);
+        }
+        if (current == null) {
+            WriteDispatcher dispatcher = new WriteDispatcher(latencyBudgetMillis, maxGroupSize);
+            dispatcher.writerThread.start();
+            current = dispatcher;
+        }
+        return current;
+    }
+
+    /**
+     * <p>
+     *     Stops routing writes through the writer thread. Writes that were already submitted are
+     *     still performed.
+     * </p>
+     */
+    public static synchronized void stop() {
+        if (current == null) {
+            return;
+        }
+        current.stopped = true;
+        current.queue.add(PendingWrite.STOP);
+        current = null;
+    }
+
+    /**
+     * @return the started {@link WriteDispatcher} or null if writes are performed on the calling
+     * thread
+     */
+    @Nullable
+    public static WriteDispatcher current() {
+        return current;
+    }
+
+    /**
+     * @return true if there is a started {@link WriteDispatcher}, the current thread is not its
+     * writer thread, and the current thread does not hold a transaction. A write of a thread that
+     * holds a transaction must join that transaction; dispatching it would leave the writer thread
+     * waiting on the connection the calling thread holds.
+     */
+    static boolean shouldDispatch() {
+        return current != null && !isWriterThread() && !callerInTransaction();
+    }
+
+    private static boolean callerInTransaction() {
+        FSDBHelper helper = FSDBHelper.inst();
+        return helper.inTransactionScope() || helper.getWritableDatabase().inTransaction();
+    }
+
+    /**
+     * @return true if the current thread is the writer thread of a {@link WriteDispatcher}, in
+     * which case a group transaction is already in progress
+     */
+    static boolean isWriterThread() {
+        return Thread.currentThread() instanceof WriterThread;
+    }
+
+    /**
+     * <p>
+     *     Submits the write to the current {@link WriteDispatcher} or, if there is none, the
+     *     current thread is the writer thread, or the current thread holds a transaction, performs
+     *     it immediately.
+     * </p>
+     * @param write the write to perform
+     * @param <T> the type of result of the write
+     * @return a {@link Future} that completes when the write has been committed
+     */
+    static <T> Future<T> dispatch(@NonNull Callable<T> write) {
+        WriteDispatcher dispatcher = current;
+        if (dispatcher == null || isWriterThread() || callerInTransaction()) {
+            FutureTask<T> task = new FutureTask<>(write);
+            task.run();
+            return task;
+        }
+        return dispatcher.submit(write);
+    }
+
+    /**
+     * <p>
+     *     Waits for a write to complete. Once a write has been submitted, it is performed
+     *     regardless of whether the waiting thread is interrupted, so this waits uninterruptibly
+     *     and then restores the interrupt status.
+     * </p>
+     * @param future the {@link Future} of the write
+     * @param <T> the type of result of the write
+     * @return the result of the write
+     */
+    static <T> T await(@NonNull Future<T> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private <T> Future<T> submit(Callable<T> write) {
+        PendingWrite<T> pending = new PendingWrite<>(write);
+        synchronized (WriteDispatcher.class) {  // <-- same lock as stop(), so nothing is queued behind STOP
+            if (!stopped) {
+                queue.add(pending);
+                return pending;
+            }
+        }
+        // raced with stop--perform the write on the calling thread
+        pending.run();
+        pending.publish();
+        return pending;
+    }
+
+    private void writeLoop() {
+        final List<PendingWrite<?>> group = new ArrayList<>(maxGroupSize);
+        while (true) {
+            boolean stopRequested = false;
+            try {
+                group.add(queue.take());
+                stopRequested = collectGroup(group);
+            } catch (InterruptedException ie) {
+                stopRequested = true;
+            }
+
+            if (!group.isEmpty()) {
+                performGroup(group);
+                group.clear();
+            }
+            if (stopRequested) {
+                drainAfterStop();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if stop was requested while collecting the group
+     */
+    private boolean collectGroup(List<PendingWrite<?>> group) throws InterruptedException {
+        if (group.get(0) == PendingWrite.STOP) {
+            group.clear();
+            return true;
+        }
+
+        final long deadline = System.nanoTime() + latencyBudgetNanos;
+        while (group.size() < maxGroupSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingWrite<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return false;
+            }
+            if (next == PendingWrite.STOP) {
+                return true;
+            }
+            group.add(next);
+        }
+        return false;
+    }
+
+    private void drainAfterStop() {
+        List<PendingWrite<?>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.remove(PendingWrite.STOP);
+        if (!remaining.isEmpty()) {
+            performGroup(remaining);
+        }
+    }
+
+    private static void performGroup(List<PendingWrite<?>> group) {
+        RuntimeException commitFailure = null;
+        try {
+            SQLiteDatabase db = FSDBHelper.inst().getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (PendingWrite<?> write : group) {
+                    write.run();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                FSDBHelper.inst().tableVersions().onTransactionEnd(db);
+            }
+        } catch (RuntimeException re) {
+            Log.e(LOG_TAG, "failed to commit group of " + group.size() + " writes", re);
+            commitFailure = re;
+        }
+
+        for (PendingWrite<?> write : group) {
+            if (commitFailure == null) {
+                write.publish();
+            } else {
+                write.fail(commitFailure);
+            }
+        }
+    }
+
+    private static class WriterThread extends Thread {
+        WriterThread(Runnable writeLoop) {
+            super(writeLoop, "forsuredb-writer");
+        }
+    }
+
+    /**
+     * <p>
+     *     A {@link FutureTask} that holds onto its result after running until its transaction
+     *     commits.
+     * </p>
+     */
+    private static class PendingWrite<T> extends FutureTask<T> {
+
+        static final PendingWrite<Void> STOP = new PendingWrite<>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        });
+
+        private T result;
+        private Throwable error;
+
+        PendingWrite(Callable<T> write) {
+            super(write);
+        }
+
+        @Override
+        protected void set(T v) {
+            result = v;     // <-- deferred until publish
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            error = t;      // <-- deferred until publish
+        }
+
+        void publish() {
+            if (error == null) {
+                super.set(result);
+            } else {
+                super.setException(error);
+            }
+        }
+
+        void fail(Throwable t) {
+            super.setException(t);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import com.fsryan.forsuredb.api.RecordContainer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.SqlBinder.bindObjects;
+
+/**
+ * <p>
+ *     Inserts records into a single table using multi-row INSERT INTO ... VALUES (...), (...)
+ *     statements. Consecutive records having the same set of columns are grouped into one
+ *     statement, and a compiled statement is reused for every full group of the same shape.
+ *     Records are inserted in the order they were added.
+ * </p>
+ * <p>
+ *     Call {@link #add(RecordContainer)} for each record and then {@link #finish()}, which
+ *     inserts the remaining records and closes the compiled statements.
+ * </p>
+ */
+/*package*/ class BatchInserter {
+
+    /**
+     * <p>
+     *     The default SQLITE_MAX_VARIABLE_NUMBER of the SQLite versions shipped with Android
+     * </p>
+     */
+    static final int MAX_VARIABLE_NUMBER = 999;
+
+    /**
+     * <p>
+     *     Before SQLite 3.8.8, a multi-row VALUES clause is a compound SELECT, so it is subject to
+     *     SQLITE_MAX_COMPOUND_SELECT (default 500)
+     * </p>
+     */
+    static final int MAX_ROWS = 500;
+
+    private final SQLiteDatabase db;
+    private final String tableName;
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private final List<RecordContainer> pending = new ArrayList<>();
+    private List<String> pendingColumns = Collections.emptyList();
+    private int insertedCount;
+
+    BatchInserter(@NonNull SQLiteDatabase db, @NonNull String tableName) {
+        this.db = db;
+        this.tableName = tableName;
+    }
+
+    void add(@NonNull RecordContainer record) {
+        List<String> columns = new ArrayList<>(record.keySet());
+        Collections.sort(columns);
+        if (!columns.equals(pendingColumns)) {
+            flush();
+            pendingColumns = columns;
+        }
+
+        pending.add(record);
+        if (pending.size() == rowsPerStatement(columns.size())) {
+            flush();
+        }
+    }
+
+    /**
+     * @return the number of records inserted
+     */
+    int finish() {
+        try {
+            flush();
+            return insertedCount;
+        } finally {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
+            }
+            statements.clear();
+        }
+    }
+
+    static int rowsPerStatement(int columnCount) {
+        return Math.max(1, Math.min(MAX_ROWS, MAX_VARIABLE_NUMBER / Math.max(1, columnCount)));
+    }
+
+    static String insertionSql(String tableName, List<String> columns, int rowCount) {
+        StringBuilder rowBuf = new StringBuilder("(");
+        StringBuilder buf = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            buf.append(i == 0 ? "" : ", ").append(columns.get(i));
+            rowBuf.append(i == 0 ? "?" : ", ?");
+        }
+        rowBuf.append(')');
+
+        buf.append(") VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            buf.append(i == 0 ? "" : ", ").append(rowBuf);
+        }
+        return buf.append(';').toString();
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        SQLiteStatement statement = statementFor(pendingColumns, pending.size());
+        int pos = 1;
+        for (RecordContainer record : pending) {
+            bindObjects(statement, pos, pendingColumns, record);
+            pos += pendingColumns.size();
+        }
+        statement.executeInsert();
+        statement.clearBindings();
+
+        insertedCount += pending.size();
+        pending.clear();
+    }
+
+    private SQLiteStatement statementFor(List<String> columns, int rowCount) {
+        String sql = insertionSql(tableName, columns, rowCount);
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,486 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * <p>
+ *     Optional behavior of the database managed by {@link FSDBHelper}. Create one with
+ *     {@link #builder()} and pass it to
+ *     {@link FSDBHelper#init(android.content.Context, String, java.util.List, com.fsryan.forsuredb.serialization.FSDbInfoSerializer, FSDBConfig)}.
+ *     Each option defaults to the behavior forsuredbandroid had before the option existed.
+ * </p>
+ */
+public class FSDBConfig {
+
+    public static final FSDBConfig DEFAULT = builder().build();
+
+    /**
+     * <p>
+     *     Determines how an upsert is performed.
+     * </p>
+     */
+    public enum UpsertStrategy {
+        /**
+         * <p>
+         *     Queries for a record matching the selection and then either updates all matching
+         *     records or inserts a new record. This works with any selection.
+         * </p>
+         */
+        QUERY_THEN_WRITE,
+        /**
+         * <p>
+         *     Performs the upsert as a single INSERT ... ON CONFLICT(...) DO UPDATE statement when
+         *     the SQLite version supports it (3.24.0 and later) and the values contain every column
+         *     of a primary key or unique index of the table. Otherwise, falls back to
+         *     {@link #QUERY_THEN_WRITE}.
+         * </p>
+         * <p>
+         *     Use this only when your upsert selections identify records by the same unique key
+         *     the values carry. In that case, the result is the same as {@link #QUERY_THEN_WRITE}
+         *     with one statement instead of two or three, except that the
+         *     {@link com.fsryan.forsuredb.api.SaveResult} of a native upsert has no inserted
+         *     locator, as SQLite does not report whether the statement inserted or updated.
+         * </p>
+         */
+        NATIVE_WHEN_SUPPORTED
+    }
+
+    /**
+     * <p>
+     *     Named presets of the connection settings. Pass one to {@link #builder(Profile)} and
+     *     override individual settings on the returned {@link Builder} as necessary. Every profile
+     *     sets {@link Builder#maxSqlCacheSize(Integer)} to 100, the framework's maximum.
+     * </p>
+     */
+    public enum Profile {
+        /**
+         * <p>
+         *     Write-ahead logging so that reads on the UI's behalf do not wait on writes and
+         *     synchronous=NORMAL so that each commit does not sync the file system, which is safe
+         *     from corruption in WAL mode. The page cache, memory-mapped I/O and temporary storage
+         *     are left at their defaults, as those pragmas would only apply to the primary
+         *     connection, while reads run on the other connections of the pool.
+         * </p>
+         */
+        READ_HEAVY_UI,
+        /**
+         * <p>
+         *     Write-ahead logging with synchronous=NORMAL, a large page cache and in-memory
+         *     temporary storage for index building. The latter two apply to the primary connection,
+         *     which performs all writes.
+         * </p>
+         */
+        BULK_INGEST
+    }
+
+    /**
+     * <p>
+     *     The values of PRAGMA synchronous
+     * </p>
+     */
+    public enum Synchronous {
+        OFF, NORMAL, FULL
+    }
+
+    /**
+     * <p>
+     *     The values of PRAGMA temp_store
+     * </p>
+     */
+    public enum TempStore {
+        DEFAULT, FILE, MEMORY
+    }
+
+    private final UpsertStrategy upsertStrategy;
+    private final boolean streamStaticData;
+    private final long asyncInitTimeoutMillis;
+    private final String bootstrapAsset;
+    private final boolean writeAheadLogging;
+    private final Synchronous synchronous;
+    private final Integer cacheSizeKiB;
+    private final Long mmapSizeBytes;
+    private final TempStore tempStore;
+    private final Integer maxSqlCacheSize;
+    private final long notificationWindowMillis;
+    private final int queryResultCacheSize;
+    private final int queryResultCacheMaxRows;
+    private final int rowCacheSize;
+
+    private FSDBConfig(Builder builder) {
+        upsertStrategy = builder.upsertStrategy;
+        streamStaticData = builder.streamStaticData;
+        asyncInitTimeoutMillis = builder.asyncInitTimeoutMillis;
+        bootstrapAsset = builder.bootstrapAsset;
+        writeAheadLogging = builder.writeAheadLogging;
+        synchronous = builder.synchronous;
+        cacheSizeKiB = builder.cacheSizeKiB;
+        mmapSizeBytes = builder.mmapSizeBytes;
+        tempStore = builder.tempStore;
+        maxSqlCacheSize = builder.maxSqlCacheSize;
+        notificationWindowMillis = builder.notificationWindowMillis;
+        queryResultCacheSize = builder.queryResultCacheSize;
+        queryResultCacheMaxRows = builder.queryResultCacheMaxRows;
+        rowCacheSize = builder.rowCacheSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param profile the {@link Profile} whose settings the {@link Builder} should start with
+     * @return a {@link Builder} with the connection settings of the profile
+     */
+    public static Builder builder(@NonNull Profile profile) {
+        Builder builder = new Builder().writeAheadLogging(true).synchronous(Synchronous.NORMAL).maxSqlCacheSize(100);
+        switch (profile) {
+            case READ_HEAVY_UI:
+                return builder;
+            case BULK_INGEST:
+                return builder.tempStore(TempStore.MEMORY)
+                        .cacheSizeKiB(16 * 1024);
+        }
+        throw new IllegalArgumentException("Unknown profile: " + profile);
+    }
+
+    @NonNull
+    public UpsertStrategy upsertStrategy() {
+        return upsertStrategy;
+    }
+
+    /**
+     * @return true if static data should be retrieved and inserted one table at a time during
+     * migrations rather than retrieving the static data of all tables before inserting any of it
+     * @see Builder#streamStaticData(boolean)
+     */
+    public boolean streamStaticData() {
+        return streamStaticData;
+    }
+
+    /**
+     * @return the maximum number of milliseconds that {@link FSDBHelper#inst()} waits for an
+     * initialization started by
+     * {@link FSDBHelper#initAsync(android.content.Context, String, java.util.List, com.fsryan.forsuredb.serialization.FSDbInfoSerializer, FSDBConfig)}
+     * to complete
+     */
+    public long asyncInitTimeoutMillis() {
+        return asyncInitTimeoutMillis;
+    }
+
+    /**
+     * @return the path of the prebuilt database asset that is copied into place when the database
+     * does not yet exist or null if the database should be created by replaying all migrations
+     * @see Builder#bootstrapAsset(String)
+     */
+    @Nullable
+    public String bootstrapAsset() {
+        return bootstrapAsset;
+    }
+
+    public boolean writeAheadLogging() {
+        return writeAheadLogging;
+    }
+
+    /**
+     * @return the value of PRAGMA synchronous or null if SQLite's default should be used
+     */
+    @Nullable
+    public Synchronous synchronous() {
+        return synchronous;
+    }
+
+    /**
+     * @return the size of the page cache in KiB or null if SQLite's default should be used
+     */
+    @Nullable
+    public Integer cacheSizeKiB() {
+        return cacheSizeKiB;
+    }
+
+    /**
+     * @return the maximum number of bytes of the database file to memory-map or null if SQLite's
+     * default should be used
+     */
+    @Nullable
+    public Long mmapSizeBytes() {
+        return mmapSizeBytes;
+    }
+
+    /**
+     * @return the value of PRAGMA temp_store or null if SQLite's default should be used
+     */
+    @Nullable
+    public TempStore tempStore() {
+        return tempStore;
+    }
+
+    /**
+     * @return the size of the framework's compiled statement cache for each connection or null if
+     * the framework's default should be used
+     * @see android.database.sqlite.SQLiteDatabase#setMaxSqlCacheSize(int)
+     */
+    @Nullable
+    public Integer maxSqlCacheSize() {
+        return maxSqlCacheSize;
+    }
+
+    /**
+     * @return the number of milliseconds for which change notifications are collected and
+     * deduplicated per table before being delivered--0 to deliver them immediately
+     * @see Builder#notificationWindowMillis(long)
+     */
+    public long notificationWindowMillis() {
+        return notificationWindowMillis;
+    }
+
+    /**
+     * @return the maximum number of query results held by the {@link QueryResultCache}--0 if
+     * query results are not cached
+     * @see Builder#queryResultCache(int, int)
+     */
+    public int queryResultCacheSize() {
+        return queryResultCacheSize;
+    }
+
+    /**
+     * @return the maximum number of rows of a query result held by the {@link QueryResultCache}
+     * @see Builder#queryResultCache(int, int)
+     */
+    public int queryResultCacheMaxRows() {
+        return queryResultCacheMaxRows;
+    }
+
+    /**
+     * @return the maximum number of rows per table held by the {@link RowCache}--0 if rows are
+     * not cached
+     * @see Builder#rowCache(int)
+     */
+    public int rowCacheSize() {
+        return rowCacheSize;
+    }
+
+    public static class Builder {
+
+        private UpsertStrategy upsertStrategy = UpsertStrategy.QUERY_THEN_WRITE;
+        private boolean streamStaticData = false;
+        private long asyncInitTimeoutMillis = 5000L;
+        private String bootstrapAsset = null;
+        private boolean writeAheadLogging = false;
+        private Synchronous synchronous = null;
+        private Integer cacheSizeKiB = null;
+        private Long mmapSizeBytes = null;
+        private TempStore tempStore = null;
+        private Integer maxSqlCacheSize = null;
+        private long notificationWindowMillis = 0L;
+        private int queryResultCacheSize = 0;
+        private int queryResultCacheMaxRows = 500;
+        private int rowCacheSize = 0;
+
+        private Builder() {}
+
+        public Builder upsertStrategy(@NonNull UpsertStrategy upsertStrategy) {
+            this.upsertStrategy = upsertStrategy;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     When streaming, each table's static data asset is read as its records are inserted,
+         *     so only a small chunk of static data is held in memory at a time rather than all of
+         *     it. The tradeoff is that each record is parsed twice and that the &lt;records&gt;
+         *     elements of each asset must be in ascending db_version order. Use this when your
+         *     static data assets are large.
+         * </p>
+         * @param streamStaticData whether to stream static data
+         * @return this {@link Builder}
+         */
+        public Builder streamStaticData(boolean streamStaticData) {
+            this.streamStaticData = streamStaticData;
+            return this;
+        }
+
+        public Builder asyncInitTimeoutMillis(long asyncInitTimeoutMillis) {
+            if (asyncInitTimeoutMillis < 0) {
+                throw new IllegalArgumentException("asyncInitTimeoutMillis must not be negative: " + asyncInitTimeoutMillis);
+            }
+            this.asyncInitTimeoutMillis = asyncInitTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     On first install, rather than replaying every migration and inserting all static
+         *     data, copy a prebuilt SQLite database from the assets. The prebuilt database must
+         *     have its user_version set to the version of the last migration it contains. Any
+         *     migrations newer than that version (and their static data) are then applied as an
+         *     upgrade.
+         * </p>
+         * @param bootstrapAsset the path of the prebuilt database within the assets
+         * @return this {@link Builder}
+         */
+        public Builder bootstrapAsset(@Nullable String bootstrapAsset) {
+            this.bootstrapAsset = bootstrapAsset;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Write-ahead logging allows reads to happen concurrently with a write on separate
+         *     connections of the framework's connection pool.
+         * </p>
+         * @param writeAheadLogging whether to enable write-ahead logging
+         * @return this {@link Builder}
+         * @see android.database.sqlite.SQLiteOpenHelper#setWriteAheadLoggingEnabled(boolean)
+         */
+        public Builder writeAheadLogging(boolean writeAheadLogging) {
+            this.writeAheadLogging = writeAheadLogging;
+            return this;
+        }
+
+        public Builder synchronous(@Nullable Synchronous synchronous) {
+            this.synchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Applies only to the primary connection (see {@link FSDBHelper#onConfigure}).
+         * </p>
+         * @param cacheSizeKiB the size of the page cache in KiB
+         * @return this {@link Builder}
+         */
+        public Builder cacheSizeKiB(@Nullable Integer cacheSizeKiB) {
+            if (cacheSizeKiB != null && cacheSizeKiB < 1) {
+                throw new IllegalArgumentException("cacheSizeKiB must be positive: " + cacheSizeKiB);
+            }
+            this.cacheSizeKiB = cacheSizeKiB;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Applies only to the primary connection (see {@link FSDBHelper#onConfigure}). Has no
+         *     effect on SQLite versions prior to 3.7.17 or when SQLite was compiled without
+         *     memory-mapped I/O support.
+         * </p>
+         * @param mmapSizeBytes the maximum number of bytes of the database file to memory-map
+         * @return this {@link Builder}
+         */
+        public Builder mmapSizeBytes(@Nullable Long mmapSizeBytes) {
+            if (mmapSizeBytes != null && mmapSizeBytes < 0) {
+                throw new IllegalArgumentException("mmapSizeBytes must not be negative: " + mmapSizeBytes);
+            }
+            this.mmapSizeBytes = mmapSizeBytes;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Applies only to the primary connection (see {@link FSDBHelper#onConfigure}).
+         * </p>
+         * @param tempStore where temporary tables and indices are stored
+         * @return this {@link Builder}
+         */
+        public Builder tempStore(@Nullable TempStore tempStore) {
+            this.tempStore = tempStore;
+            return this;
+        }
+
+        /**
+         * @param maxSqlCacheSize the size of the framework's compiled statement cache for each
+         *                        connection--at most 100
+         * @return this {@link Builder}
+         * @see android.database.sqlite.SQLiteDatabase#setMaxSqlCacheSize(int)
+         */
+        public Builder maxSqlCacheSize(@Nullable Integer maxSqlCacheSize) {
+            if (maxSqlCacheSize != null && (maxSqlCacheSize < 0 || maxSqlCacheSize > 100)) {
+                throw new IllegalArgumentException("maxSqlCacheSize must be in [0, 100]: " + maxSqlCacheSize);
+            }
+            this.maxSqlCacheSize = maxSqlCacheSize;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Applies to the contentProvider flavor only. Notifications raised within a
+         *     transaction of the provider are always held until the transaction commits and then
+         *     delivered once per table. With a positive window, notifications raised outside of a
+         *     transaction are also collected for the length of the window and then delivered once
+         *     per table, so that bursts of writes cause one reload rather than many.
+         * </p>
+         * @param notificationWindowMillis the length of the window in milliseconds
+         * @return this {@link Builder}
+         */
+        public Builder notificationWindowMillis(long notificationWindowMillis) {
+            if (notificationWindowMillis < 0) {
+                throw new IllegalArgumentException("notificationWindowMillis must not be negative: " + notificationWindowMillis);
+            }
+            this.notificationWindowMillis = notificationWindowMillis;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Caches in-memory snapshots of query results, keyed by the sql and replacements of the
+         *     query. An entry is served until a write to any of the tables of the query, so
+         *     repeated queries of unchanged tables do not go to SQLite. Results with more rows than
+         *     maxRows are not cached.
+         * </p>
+         * @param size the maximum number of cached results--0 to disable the cache
+         * @param maxRows the maximum number of rows of a cached result
+         * @return this {@link Builder}
+         */
+        public Builder queryResultCache(int size, int maxRows) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size must not be negative: " + size);
+            }
+            if (maxRows < 1) {
+                throw new IllegalArgumentException("maxRows must be positive: " + maxRows);
+            }
+            this.queryResultCacheSize = size;
+            this.queryResultCacheMaxRows = maxRows;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Caches the rows of lookups of single records by _id so that repeated lookups of the
+         *     same record do not touch SQLite. Updates and deletes evict the rows of the records
+         *     they change, and inserts that may replace a record evict all rows of the table.
+         *     Disabled by default.
+         * </p>
+         * @param rowsPerTable the maximum number of rows to cache per table--0 to disable
+         * @return this {@link Builder}
+         * @see RowCache
+         */
+        public Builder rowCache(int rowsPerTable) {
+            if (rowsPerTable < 0) {
+                throw new IllegalArgumentException("rowsPerTable must not be negative: " + rowsPerTable);
+            }
+            this.rowCacheSize = rowsPerTable;
+            return this;
+        }
+
+        public FSDBConfig build() {
+            return new FSDBConfig(this);
+        }
+    }
+}
@@ -18,9 +18,13 @@
 package com.fsryan.forsuredb;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.fsryan.forsuredb.api.FSTableCreator;
@@ -34,6 +38,11 @@ import com.fsryan.forsuredb.info.TableInfo;
 import com.fsryan.forsuredb.migration.MigrationSet;
 import com.fsryan.forsuredb.serialization.FSDbInfoSerializer;
 
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -41,36 +50,83 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-import static com.fsryan.forsuredb.SqlBinder.bindObjects;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class FSDBHelper extends SQLiteOpenHelper {
 
     private static final SQLiteDatabase.CursorFactory cursorFactory = new FSCursorFactory();
 
     private final List<FSTableCreator> tables;
-    private final List<MigrationSet> migrationSets;
+    private final Migrator migrator;
+    private final SchemaFingerprint schemaFingerprint;
     private final Context context;
     private final FSDbInfoSerializer dbInfoSerializer;
     private final boolean debugMode;
+    private final FSDBConfig config;
+    private final StatementCache statementCache = new StatementCache(StatementCache.DEFAULT_MAX_SIZE);
+    private final SqlGenerationCache sqlGenerationCache = new SqlGenerationCache(SqlGenerationCache.DEFAULT_MAX_SIZE);
+    private final TableVersions tableVersions = new TableVersions();
+    private final QueryResultCache queryResultCache;
+    private final RowCache rowCache;
+    private final Map<String, List<List<String>>> uniqueKeyCache = new ConcurrentHashMap<>();
+    private final ThreadLocal<TransactionScope> transactionScopes = new ThreadLocal<>();
+    private volatile String sqliteVersion;
 
     private FSDBHelper(Context context,
                        String dbName,
                        List<FSTableCreator> tables,
-                       List<MigrationSet> migrationSets,
+                       Migrator migrator,
+                       SchemaFingerprint schemaFingerprint,
+                       int dbVersion,
                        FSDbInfoSerializer dbInfoSerializer,
-                       boolean debugMode) {
-        super(context, dbName, cursorFactory, identifyDbVersion(migrationSets));
+                       boolean debugMode,
+                       FSDBConfig config) {
+        super(context, dbName, cursorFactory, dbVersion);
         this.context = context;
         this.tables = tables;
         Collections.sort(this.tables);
-        this.migrationSets = migrationSets;
+        this.migrator = migrator;
+        this.schemaFingerprint = schemaFingerprint;
         this.dbInfoSerializer = dbInfoSerializer;
         this.debugMode = debugMode;
+        this.config = config;
+        this.queryResultCache = new QueryResultCache(tableVersions, config.queryResultCacheSize(), config.queryResultCacheMaxRows());
+        this.rowCache = new RowCache(tableVersions, config.rowCacheSize());
+        if (config.writeAheadLogging()) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * <p>
+     *     Notified on the thread of a {@link #runInTransaction(Callable)} scope when the outermost
+     *     scope ends.
+     * </p>
+     */
+    public interface TransactionScopeListener {
+        /**
+         * @param committed true if the transaction committed; false if it was rolled back
+         */
+        void onTransactionScopeEnd(boolean committed);
+    }
+
+    private static final class TransactionScope {
+        int depth;
+        boolean failed;
+        final List<TransactionScopeListener> listeners = new ArrayList<>();
     }
 
     private static final class Holder {
-        public static FSDBHelper instance;
+        public static volatile FSDBHelper instance;
+        public static volatile Future<FSDBHelper> pending;
+        public static volatile long pendingTimeoutMillis;
     }
 
     /**
@@ -88,9 +144,27 @@ public class FSDBHelper extends SQLiteOpenHelper {
                                          String dbName,
                                          List<FSTableCreator> tables,
                                          FSDbInfoSerializer dbInfoSerializer) {
-        if (Holder.instance == null) {
-            List<MigrationSet> migrationSets = new Migrator(context, dbInfoSerializer).getMigrationSets();
-            Holder.instance = new FSDBHelper(context, dbName, tables, migrationSets, dbInfoSerializer, false);
+        init(context, dbName, tables, dbInfoSerializer, FSDBConfig.DEFAULT);
+    }
+
+    /**
+     * <p>
+     *     Same as {@link #init(Context, String, List, FSDbInfoSerializer)}, but allows you to
+     *     configure optional behavior of the database.
+     * </p>
+     * @param context The application context
+     * @param dbName The name of your database
+     * @param tables The information for creating tables
+     * @param config The {@link FSDBConfig} describing optional behavior
+     * @see #initDebug(Context, String, List, FSDbInfoSerializer, FSDBConfig)
+     */
+    public static synchronized void init(Context context,
+                                         String dbName,
+                                         List<FSTableCreator> tables,
+                                         FSDbInfoSerializer dbInfoSerializer,
+                                         FSDBConfig config) {
+        if (Holder.instance == null && Holder.pending == null) {
+            Holder.instance = create(context, dbName, tables, dbInfoSerializer, false, config);
         }
     }
 
@@ -110,17 +184,234 @@ public class FSDBHelper extends SQLiteOpenHelper {
                                               String dbName,
                                               List<FSTableCreator> tables,
                                               FSDbInfoSerializer dbInfoSerializer) {
-        if (Holder.instance == null) {
-            List<MigrationSet> migrationSets = new Migrator(context, dbInfoSerializer).getMigrationSets();
-            Holder.instance = new FSDBHelper(context, dbName, tables, migrationSets, dbInfoSerializer, true);
+        initDebug(context, dbName, tables, dbInfoSerializer, FSDBConfig.DEFAULT);
+    }
+
+    /**
+     * <p>
+     *     Same as {@link #initDebug(Context, String, List, FSDbInfoSerializer)}, but allows you
+     *     to configure optional behavior of the database.
+     * </p>
+     * @param context The application context
+     * @param dbName The name of your database
+     * @param tables The information for creating tables
+     * @param config The {@link FSDBConfig} describing optional behavior
+     * @see #init(Context, String, List, FSDbInfoSerializer, FSDBConfig)
+     */
+    public static synchronized void initDebug(Context context,
+                                              String dbName,
+                                              List<FSTableCreator> tables,
+                                              FSDbInfoSerializer dbInfoSerializer,
+                                              FSDBConfig config) {
+        if (Holder.instance == null && Holder.pending == null) {
+            Holder.instance = create(context, dbName, tables, dbInfoSerializer, true, config);
+        }
+    }
+
+    /**
+     * <p>
+     *     Same as {@link #init(Context, String, List, FSDbInfoSerializer, FSDBConfig)}, except
+     *     that listing and parsing the migration assets, creating the {@link FSDBHelper}, and
+     *     opening (and, if necessary, migrating) the database all happen on a background thread.
+     *     Call this in onCreate of your {@link android.app.Application} class so that the
+     *     database gets prepared while your UI is inflated.
+     * </p>
+     * <p>
+     *     Until the returned {@link Future} completes, {@link #inst()} blocks for up to
+     *     {@link FSDBConfig#asyncInitTimeoutMillis()} waiting for it. If initialization fails, the
+     *     failure is forgotten once the {@link Future} completes, so that calling an initializer
+     *     again retries it.
+     * </p>
+     * @param context The application context
+     * @param dbName The name of your database
+     * @param tables The information for creating tables
+     * @param config The {@link FSDBConfig} describing optional behavior
+     * @return a {@link Future} that completes when the database is ready
+     * @see #initDebugAsync(Context, String, List, FSDbInfoSerializer, FSDBConfig)
+     */
+    public static synchronized Future<FSDBHelper> initAsync(Context context,
+                                                            String dbName,
+                                                            List<FSTableCreator> tables,
+                                                            FSDbInfoSerializer dbInfoSerializer,
+                                                            FSDBConfig config) {
+        return initAsync(context, dbName, tables, dbInfoSerializer, false, config);
+    }
+
+    /**
+     * <p>
+     *     Same as {@link #initAsync(Context, String, List, FSDbInfoSerializer, FSDBConfig)}, but
+     *     with debug mode on.
+     * </p>
+     * @param context The application context
+     * @param dbName The name of your database
+     * @param tables The information for creating tables
+     * @param config The {@link FSDBConfig} describing optional behavior
+     * @return a {@link Future} that completes when the database is ready
+     * @see #initAsync(Context, String, List, FSDbInfoSerializer, FSDBConfig)
+     */
+    public static synchronized Future<FSDBHelper> initDebugAsync(Context context,
+                                                                 String dbName,
+                                                                 List<FSTableCreator> tables,
+                                                                 FSDbInfoSerializer dbInfoSerializer,
+                                                                 FSDBConfig config) {
+        return initAsync(context, dbName, tables, dbInfoSerializer, true, config);
+    }
+
+    private static Future<FSDBHelper> initAsync(final Context context,
+                                                final String dbName,
+                                                final List<FSTableCreator> tables,
+                                                final FSDbInfoSerializer dbInfoSerializer,
+                                                final boolean debugMode,
+                                                final FSDBConfig config) {
+        if (Holder.pending != null) {
+            return Holder.pending;
+        }
+
+        final FutureTask<FSDBHelper> task;
+        if (Holder.instance != null) {
+            // already initialized synchronously
+            task = new FutureTask<>(new Callable<FSDBHelper>() {
+                @Override
+                public FSDBHelper call() {
+                    return Holder.instance;
+                }
+            });
+            task.run();
+            return task;
+        }
+
+        task = new FutureTask<FSDBHelper>(new Callable<FSDBHelper>() {
+            @Override
+            public FSDBHelper call() {
+                FSDBHelper helper = create(context, dbName, tables, dbInfoSerializer, debugMode, config);
+                helper.getWritableDatabase();
+                Holder.instance = helper;
+                return helper;
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (Holder.instance == null) {
+                    clearFailedInitialization(this);
+                }
+            }
+        };
+        Holder.pendingTimeoutMillis = config.asyncInitTimeoutMillis();
+        Holder.pending = task;
+        new Thread(task, "forsuredb-init").start();
+        return task;
+    }
+
+    /**
+     * <p>
+     *     Closes the database and forgets the initialized instance so that an initializer can be
+     *     called again, for example with a different {@link FSDBConfig}. This is for tests and
+     *     benchmarks. It must not be called while an asynchronous initialization is pending, and
+     *     anything still holding the old instance is left with a closed database.
+     * </p>
+     */
+    @VisibleForTesting
+    public static synchronized void reset() {
+        FSDBHelper instance = Holder.instance;
+        Holder.instance = null;
+        Holder.pending = null;
+        if (instance != null) {
+            instance.close();
         }
     }
 
+    /**
+     * <p>
+     *     Forgets a failed asynchronous initialization so that the app can retry it without
+     *     restarting the process. Callers already waiting on it still see the failure.
+     * </p>
+     */
+    private static synchronized void clearFailedInitialization(Future<FSDBHelper> failed) {
+        if (Holder.pending == failed) {
+            Holder.pending = null;
+        }
+    }
+
+    private static FSDBHelper create(Context context,
+                                     String dbName,
+                                     List<FSTableCreator> tables,
+                                     FSDbInfoSerializer dbInfoSerializer,
+                                     boolean debugMode,
+                                     FSDBConfig config) {
+        if (config.bootstrapAsset() != null && dbName != null) {
+            bootstrapFromAsset(context, dbName, config.bootstrapAsset(), debugMode);
+        }
+
+        // Listing the migration assets is cheap, but parsing them is not. When the migration
+        // assets are unchanged since the database was last opened, the stored version is the
+        // current version, and parsing is deferred until a migration is actually necessary.
+        Migrator migrator = new Migrator(context, dbInfoSerializer);
+        SchemaFingerprint schemaFingerprint = new SchemaFingerprint(context, dbName, migrator.getMigrationAssetNames());
+        int dbVersion = schemaFingerprint.storedVersion();
+        if (dbVersion < 1) {
+            dbVersion = identifyDbVersion(migrator.getMigrationSets());
+        } else if (debugMode) {
+            Log.d("forsuredb", "migration assets unchanged; deferring parsing of migrations for db version " + dbVersion);
+        }
+        return new FSDBHelper(context, dbName, tables, migrator, schemaFingerprint, dbVersion, dbInfoSerializer, debugMode, config);
+    }
+
     public static FSDBHelper inst() {
-        if (Holder.instance == null) {
+        FSDBHelper instance = Holder.instance;
+        if (instance != null) {
+            return instance;
+        }
+
+        Future<FSDBHelper> pending = Holder.pending;
+        if (pending == null) {
             throw new IllegalStateException("Must call FSDBHelper.init prior to getting instance");
         }
-        return Holder.instance;
+        return awaitInitialization(pending, Holder.pendingTimeoutMillis);
+    }
+
+    private static FSDBHelper awaitInitialization(Future<FSDBHelper> pending, long timeoutMillis) {
+        try {
+            return pending.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for FSDBHelper initialization", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("FSDBHelper initialization failed", ee.getCause());
+        } catch (TimeoutException te) {
+            throw new IllegalStateException("FSDBHelper initialization did not complete within " + timeoutMillis + "ms", te);
+        }
+    }
+
+    /**
+     * <p>
+     *     Applies the connection settings of the {@link FSDBConfig}. This happens before any
+     *     migration, so the settings also apply to migrations.
+     * </p>
+     * <p>
+     *     The pragmas are per-connection, and the framework offers no hook for the other
+     *     connections of its pool, so they only apply to the primary connection. It performs all
+     *     writes, but with write-ahead logging, reads on threads other than the writing one run on
+     *     the other connections with SQLite's default settings.
+     * </p>
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        if (config.maxSqlCacheSize() != null) {
+            db.setMaxSqlCacheSize(config.maxSqlCacheSize());
+        }
+        if (config.synchronous() != null) {
+            runPragma(db, "synchronous=" + config.synchronous().name());
+        }
+        if (config.cacheSizeKiB() != null) {
+            runPragma(db, "cache_size=-" + config.cacheSizeKiB()); // <-- negative means KiB rather than pages
+        }
+        if (config.mmapSizeBytes() != null) {
+            runPragma(db, "mmap_size=" + config.mmapSizeBytes());
+        }
+        if (config.tempStore() != null) {
+            runPragma(db, "temp_store=" + config.tempStore().name());
+        }
     }
 
     @Override
@@ -139,12 +430,245 @@ public class FSDBHelper extends SQLiteOpenHelper {
         if (!db.isReadOnly()) {
             db.execSQL("PRAGMA foreign_keys=ON;");
         }
+        // any necessary migration has completed successfully by the time the database is opened
+        schemaFingerprint.store(db.getVersion());
+    }
+
+    @Override
+    public synchronized void close() {
+        // cached statements hold a reference to the database, so they must be closed first
+        statementCache.clear();
+        super.close();
     }
 
     public boolean inDebugMode() {
         return debugMode;
     }
 
+    public FSDBConfig config() {
+        return config;
+    }
+
+    /**
+     * <p>
+     *     Performs the work in a single transaction. Every {@link com.fsryan.forsuredb.api.FSQueryable}
+     *     operation performed on the calling thread within the work--across any number of
+     *     tables--joins the transaction, so the work commits (and syncs) once. If the work throws,
+     *     the transaction is rolled back.
+     * </p>
+     * <p>
+     *     Change notifications of an in-process FSDefaultProvider that are raised within the work
+     *     are delivered once per table after the transaction commits and dropped if it rolls back.
+     *     Calls may be nested, in which case a failed nested call rolls back the outermost
+     *     transaction.
+     * </p>
+     * @param work the work to perform in the transaction
+     * @param <T> the type returned by the work
+     * @return the value returned by the work
+     * @throws Exception if the work throws
+     */
+    public <T> T runInTransaction(Callable<T> work) throws Exception {
+        final SQLiteDatabase db = getWritableDatabase();
+        TransactionScope scope = transactionScopes.get();
+        if (scope == null) {
+            scope = new TransactionScope();
+            transactionScopes.set(scope);
+        }
+        scope.depth++;
+
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            T ret = work.call();
+            db.setTransactionSuccessful();
+            successful = true;
+            return ret;
+        } finally {
+            try {
+                db.endTransaction();
+            } catch (RuntimeException re) {
+                successful = false;     // <-- commit failed
+                throw re;
+            } finally {
+                tableVersions.onTransactionEnd(db);
+                endTransactionScope(scope, successful);
+            }
+        }
+    }
+
+    /**
+     * @return true if the current thread is within {@link #runInTransaction(Callable)}
+     */
+    public boolean inTransactionScope() {
+        return transactionScopes.get() != null;
+    }
+
+    /**
+     * @param listener notified when the outermost {@link #runInTransaction(Callable)} scope of
+     *                 the current thread ends
+     * @throws IllegalStateException if the current thread is not within
+     * {@link #runInTransaction(Callable)}
+     */
+    public void addTransactionScopeListener(TransactionScopeListener listener) {
+        TransactionScope scope = transactionScopes.get();
+        if (scope == null) {
+            throw new IllegalStateException("Not in a transaction scope");
+        }
+        scope.listeners.add(listener);
+    }
+
+    /**
+     * @return the {@link StatementCache} of compiled statements for the database managed by this
+     * {@link FSDBHelper}. It is cleared whenever the database is closed or migrated.
+     */
+    public StatementCache statementCache() {
+        return statementCache;
+    }
+
+    /**
+     * @return the {@link SqlGenerationCache} of sql generated for the queries, updates and deletes
+     * of the database managed by this {@link FSDBHelper}
+     */
+    public SqlGenerationCache sqlGenerationCache() {
+        return sqlGenerationCache;
+    }
+
+    /**
+     * @return the {@link QueryResultCache} of the database managed by this {@link FSDBHelper},
+     * which is disabled unless configured via {@link FSDBConfig.Builder#queryResultCache(int, int)}
+     */
+    public QueryResultCache queryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * @return the {@link RowCache} of the database managed by this {@link FSDBHelper}, which is
+     * disabled unless configured via {@link FSDBConfig.Builder#rowCache(int)}
+     */
+    public RowCache rowCache() {
+        return rowCache;
+    }
+
+    /**
+     * @return the {@link TableVersions} against which the {@link #queryResultCache()} and the
+     * {@link #rowCache()} are checked. Every write to a table must be reported to it.
+     */
+    public TableVersions tableVersions() {
+        return tableVersions;
+    }
+
+    /**
+     * @return the version of the SQLite library backing the database, for example "3.22.0"
+     */
+    public String sqliteVersion() {
+        if (sqliteVersion == null) {
+            sqliteVersion = DatabaseUtils.stringForQuery(getReadableDatabase(), "SELECT sqlite_version();", null);
+        }
+        return sqliteVersion;
+    }
+
+    /**
+     * <p>
+     *     Looks up the columns of the primary key and of each full (not partial) unique index of
+     *     a table. These are the column sets that may be the target of an ON CONFLICT clause. The
+     *     result is cached until the next migration.
+     * </p>
+     * @param tableName the name of the table
+     * @return a {@link List} of the unique keys of the table, each key being the {@link List} of
+     * its column names. The primary key, if any, is first.
+     */
+    public List<List<String>> uniqueKeysOf(String tableName) {
+        List<List<String>> ret = uniqueKeyCache.get(tableName);
+        if (ret == null) {
+            ret = Collections.unmodifiableList(lookUpUniqueKeys(getReadableDatabase(), tableName));
+            uniqueKeyCache.put(tableName, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Copies the prebuilt database asset to the location of the database if the database does
+     *     not yet exist. The copy is written to a temporary file first so that an interrupted copy
+     *     never leaves a partial database behind.
+     * </p>
+     */
+    private static void bootstrapFromAsset(Context context, String dbName, String bootstrapAsset, boolean debugMode) {
+        File dbFile = context.getDatabasePath(dbName);
+        if (dbFile.exists()) {
+            return;
+        }
+
+        final long start = debugMode ? SystemClock.elapsedRealtime() : 0L;
+        File parent = dbFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IllegalStateException("Could not create database directory: " + parent);
+        }
+        File tmpFile = new File(dbFile.getPath() + ".bootstrap");
+        InputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = context.getAssets().open(bootstrapAsset);
+            out = new FileOutputStream(tmpFile);
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+            out.getFD().sync();     // <-- otherwise, a power loss after the rename could leave a partial file
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(dbFile)) {
+                throw new IOException("Could not rename " + tmpFile + " to " + dbFile);
+            }
+        } catch (IOException ioe) {
+            tmpFile.delete();
+            throw new IllegalStateException("Could not bootstrap database from asset: " + bootstrapAsset, ioe);
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+
+        if (debugMode) {
+            Log.d("forsuredb", "bootstrapped " + dbName + " from " + bootstrapAsset + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    // some pragmas return a row, which execSQL does not allow
+    private void runPragma(SQLiteDatabase db, String pragma) {
+        if (debugMode) {
+            Log.d("forsuredb", "PRAGMA " + pragma);
+        }
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma + ";", null);
+        try {
+            cursor.moveToFirst();   // <-- the pragma only runs when the cursor is filled
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //
+            }
+        }
+    }
+
+    private void endTransactionScope(TransactionScope scope, boolean successful) {
+        scope.failed |= !successful;
+        if (--scope.depth > 0) {
+            return;
+        }
+
+        transactionScopes.remove();
+        for (TransactionScopeListener listener : scope.listeners) {
+            listener.onTransactionScopeEnd(!scope.failed);
+        }
+    }
+
     /**
      * @param migrationSets The {@link List} of
      * {@link com.fsryan.forsuredb.migration.MigrationSet MigrationSet}
@@ -163,27 +687,101 @@ public class FSDBHelper extends SQLiteOpenHelper {
     }
 
     private void applyMigrations(SQLiteDatabase db, int previousVersion) {
+        statementCache.clear();
+        uniqueKeyCache.clear();
+        queryResultCache.clear();
+        rowCache.clear();
         int staticDataInsertFromVersion = 0;
         final Map<String, Map<Integer, List<RecordContainer>>> versionToStaticDataRecordContainers = new HashMap<>();
-        while (migrationSets.size() > 0) {
-            MigrationSet migrationSet = migrationSets.get(0);
-            int version = migrationSet.dbVersion();
-            if (previousVersion >= version) {
+        List<MigrationSet> staticDataMigrationSets = null;
+        final Map<String, StaticDataStream> staticDataStreams = new HashMap<>();
+        final List<MigrationSet> migrationSets = migrator.getMigrationSets();
+        try {
+            while (migrationSets.size() > 0) {
+                MigrationSet migrationSet = migrationSets.get(0);
+                int version = migrationSet.dbVersion();
+                if (previousVersion >= version) {
+                    migrationSets.remove(0);
+                    continue;
+                }
+
+                if (staticDataInsertFromVersion == 0) {
+                    staticDataInsertFromVersion = migrationSet.dbVersion();
+                    if (config.streamStaticData()) {
+                        // the static data is retrieved with the same migration sets either way
+                        staticDataMigrationSets = new ArrayList<>(migrationSets);
+                    } else {
+                        versionToStaticDataRecordContainers.putAll(createStaticDataRecordContainers());
+                    }
+                }
                 migrationSets.remove(0);
-                continue;
+
+                final List<String> sqlScript = Sql.generator().generateMigrationSql(migrationSet, dbInfoSerializer);
+                migrateSchema(db, sqlScript, "performing migration sql: ");
+                if (staticDataMigrationSets == null) {
+                    insertStaticData(db, migrationSet, versionToStaticDataRecordContainers);
+                } else {
+                    streamStaticData(db, migrationSet, staticDataMigrationSets, staticDataStreams);
+                }
+            }
+        } finally {
+            for (StaticDataStream stream : staticDataStreams.values()) {
+                closeQuietly(stream);
             }
+        }
+    }
 
-            if (staticDataInsertFromVersion == 0) {
-                staticDataInsertFromVersion = migrationSet.dbVersion();
-                versionToStaticDataRecordContainers.putAll(createStaticDataRecordContainers());
+    /**
+     * <p>
+     *     Inserts the static data records for the version of the migrationSet as they are read.
+     *     Each table's static data asset is opened the first time it is needed and read on from
+     *     where the previous version stopped, so it is parsed once per migration, and only one
+     *     chunk of records is held in memory at any time.
+     * </p>
+     * @param staticDataStreams the {@link StaticDataStream} of each table already opened during
+     *                          this migration
+     */
+    private void streamStaticData(SQLiteDatabase db, MigrationSet migrationSet, List<MigrationSet> staticDataMigrationSets, Map<String, StaticDataStream> staticDataStreams) {
+        final int version = migrationSet.dbVersion();
+        for (TableInfo table : TableInfoUtil.bestEffortDAGSort(migrationSet.targetSchema())) {
+            final String tableName = table.tableName();
+            FSTableCreator tc = staticDataTableCreator(tableName);
+            if (tc == null) {
+                continue;
             }
-            migrationSets.remove(0);
 
-            final List<String> sqlScript = Sql.generator().generateMigrationSql(migrationSet, dbInfoSerializer);
-            migrateSchema(db, sqlScript, "performing migration sql: ");
-            insertStaticData(db, migrationSet, versionToStaticDataRecordContainers);
+            final long start = debugMode ? SystemClock.elapsedRealtime() : 0L;
+            final BatchInserter inserter = new BatchInserter(db, tableName);
+            try {
+                StaticDataStream stream = staticDataStreams.get(tableName);
+                if (stream == null) {
+                    stream = new StaticDataStream(tableName, staticDataMigrationSets, context.getAssets().open(tc.getStaticDataAsset()));
+                    staticDataStreams.put(tableName, stream);
+                }
+                stream.retrieve(version, new OnRecordRetrievedListener() {
+                    @Override
+                    public void onRecord(Map<Integer, List<RecordContainer>> versionRecordMap) {
+                        List<RecordContainer> records = versionRecordMap.get(version);
+                        if (records == null) {
+                            return;
+                        }
+                        for (RecordContainer record : records) {
+                            inserter.add(record);
+                        }
+                    }
+                });
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            } catch (XmlPullParserException xppe) {
+                throw new RuntimeException(xppe);
+            }
+            int inserted = inserter.finish();
+            if (debugMode && inserted > 0) {
+                logStaticDataInsertion(tableName, inserted, SystemClock.elapsedRealtime() - start);
+            }
         }
     }
+
     private void insertStaticData(SQLiteDatabase db, MigrationSet migrationSet, Map<String, Map<Integer, List<RecordContainer>>> versionToStaticDataRecordContainers) {
         // TODO: use map instead of list to store TableCreators
         for (TableInfo table : TableInfoUtil.bestEffortDAGSort(migrationSet.targetSchema())) {
@@ -205,13 +803,18 @@ public class FSDBHelper extends SQLiteOpenHelper {
     }
 
     private boolean hasStaticData(String tableName) {
+        return staticDataTableCreator(tableName) != null;
+    }
+
+    @Nullable
+    private FSTableCreator staticDataTableCreator(String tableName) {
         for (FSTableCreator tc : tables) {
             if (!tc.getTableName().equals(tableName)) {
                 continue;
             }
-            return tc.getStaticDataAsset() != null && !tc.getStaticDataAsset().isEmpty();
+            return tc.getStaticDataAsset() != null && !tc.getStaticDataAsset().isEmpty() ? tc : null;
         }
-        return false;
+        return null;
     }
 
     private void migrateSchema(SQLiteDatabase db, List<String> sqlScript, String logPrefix) {
@@ -236,40 +839,104 @@ public class FSDBHelper extends SQLiteOpenHelper {
                 continue;
             }
 
-            InputStream xmlStream = null;
-            try {
-                xmlStream = context.getAssets().open(staticDataAsset);
-                StaticDataRetrieverFactory.createFor(tc.getTableName(), migrationSets, xmlStream)
-                        .retrieve(new OnRecordRetrievedListener() {
-                    @Override
-                    public void onRecord(Map<Integer, List<RecordContainer>> versionRecordMap) {
-                        ret.put(tc.getTableName(), versionRecordMap);
-                    }
-                });
-            } catch (IOException ioe) {
-                throw new RuntimeException(ioe);
-            } finally {
-                if (xmlStream != null) {
-                    try {
-                        xmlStream.close();
-                    } catch (IOException e) {
-                        //
-                    }
+            retrieveStaticData(tc, migrator.getMigrationSets(), new OnRecordRetrievedListener() {
+                @Override
+                public void onRecord(Map<Integer, List<RecordContainer>> versionRecordMap) {
+                    ret.put(tc.getTableName(), versionRecordMap);
                 }
-            }
+            });
         }
         return ret;
     }
 
+    private void retrieveStaticData(FSTableCreator tc, List<MigrationSet> availableMigrationSets, OnRecordRetrievedListener listener) {
+        InputStream xmlStream = null;
+        try {
+            xmlStream = context.getAssets().open(tc.getStaticDataAsset());
+            StaticDataRetrieverFactory.createFor(tc.getTableName(), availableMigrationSets, xmlStream).retrieve(listener);
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        } finally {
+            if (xmlStream != null) {
+                try {
+                    xmlStream.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+    }
+
     private void insertStaticData(SQLiteDatabase db, String tableName, List<RecordContainer> records) {
-        // TODO: records are inserted individually, but there is not a strong reason why they should--investigate batching instead of individual record insertion
+        final long start = debugMode ? SystemClock.elapsedRealtime() : 0L;
+        BatchInserter inserter = new BatchInserter(db, tableName);
         for (RecordContainer record : records) {
-            final List<String> columns = new ArrayList<>(record.keySet());
-            String sql = Sql.generator().newSingleRowInsertionSql(tableName, columns);
-            SQLiteStatement statement = db.compileStatement(sql);
-            bindObjects(statement, columns, record);
-            statement.executeInsert();  // TODO: figure out what to do with the return
-            statement.close();
+            inserter.add(record);
+        }
+        int inserted = inserter.finish();
+        if (debugMode) {
+            logStaticDataInsertion(tableName, inserted, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    private static void logStaticDataInsertion(String tableName, int inserted, long elapsedMillis) {
+        long rowsPerSecond = elapsedMillis == 0 ? inserted * 1000L : inserted * 1000L / elapsedMillis;
+        Log.d("forsuredb", "inserted " + inserted + " static data records into " + tableName + " in " + elapsedMillis + "ms (" + rowsPerSecond + " rows/sec)");
+    }
+
+    private static List<List<String>> lookUpUniqueKeys(SQLiteDatabase db, String tableName) {
+        List<List<String>> ret = new ArrayList<>();
+
+        // table_info reports the position of each column within the primary key--0 if not part of it
+        Map<Integer, String> primaryKey = new TreeMap<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + DatabaseUtils.sqlEscapeString(tableName) + ");", null);
+        try {
+            int nameIdx = cursor.getColumnIndex("name");
+            int pkIdx = cursor.getColumnIndex("pk");
+            while (cursor.moveToNext()) {
+                int pkPosition = cursor.getInt(pkIdx);
+                if (pkPosition > 0) {
+                    primaryKey.put(pkPosition, cursor.getString(nameIdx));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (!primaryKey.isEmpty()) {
+            ret.add(new ArrayList<>(primaryKey.values()));
+        }
+
+        List<String> uniqueIndices = new ArrayList<>();
+        cursor = db.rawQuery("PRAGMA index_list(" + DatabaseUtils.sqlEscapeString(tableName) + ");", null);
+        try {
+            int nameIdx = cursor.getColumnIndex("name");
+            int uniqueIdx = cursor.getColumnIndex("unique");
+            int partialIdx = cursor.getColumnIndex("partial");  // not reported by older SQLite versions
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(uniqueIdx) == 1 && (partialIdx < 0 || cursor.getInt(partialIdx) == 0)) {
+                    uniqueIndices.add(cursor.getString(nameIdx));
+                }
+            }
+        } finally {
+            cursor.close();
         }
+
+        for (String indexName : uniqueIndices) {
+            List<String> columns = new ArrayList<>();
+            cursor = db.rawQuery("PRAGMA index_info(" + DatabaseUtils.sqlEscapeString(indexName) + ");", null);
+            try {
+                int nameIdx = cursor.getColumnIndex("name");
+                while (cursor.moveToNext()) {
+                    columns.add(cursor.getString(nameIdx));
+                }
+            } finally {
+                cursor.close();
+            }
+            // an index on an expression has a null column name and cannot be matched to values
+            if (!columns.isEmpty() && !columns.contains(null) && !ret.contains(columns)) {
+                ret.add(columns);
+            }
+        }
+        return ret;
     }
 }
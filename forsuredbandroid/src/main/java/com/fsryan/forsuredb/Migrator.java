@@ -27,6 +27,7 @@ import com.fsryan.forsuredb.serialization.FSDbInfoSerializer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -38,6 +39,7 @@ import java.util.PriorityQueue;
     private final Context context;
     private final FSDbInfoSerializer serializer;
     private List<MigrationSet> migrationSets;
+    private List<String> migrationAssetNames;
 
     /*package*/ Migrator(Context context, FSDbInfoSerializer serializer) {
         this.context = context;
@@ -54,13 +56,30 @@ import java.util.PriorityQueue;
         return migrationSets;
     }
 
+    /**
+     * <p>
+     *     Lists the migration assets without parsing them, which is much cheaper than
+     *     {@link #getMigrationSets()}.
+     * </p>
+     * @return the sorted names of the migration assets
+     */
+    public List<String> getMigrationAssetNames() {
+        if (migrationAssetNames == null) {
+            final PriorityQueue<String> sortedPaths = createSortedMigrationFilenames(context.getResources().getAssets());
+            migrationAssetNames = new ArrayList<>(sortedPaths.size());
+            while (sortedPaths.size() > 0) {
+                migrationAssetNames.add(sortedPaths.remove());
+            }
+        }
+        return migrationAssetNames;
+    }
+
     private void createMigrationSets() {
         final AssetManager assetManager = context.getResources().getAssets();
-        final PriorityQueue<String> sortedPaths = createSortedMigrationFilenames(assetManager);
 
         migrationSets = new LinkedList<>();
-        while (sortedPaths.size() > 0) {
-            addMigrationsFromFile(assetManager, sortedPaths.remove());
+        for (String filename : getMigrationAssetNames()) {
+            addMigrationsFromFile(assetManager, filename);
         }
     }
 
@@ -0,0 +1,243 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.fsryan.forsuredb.api.FSJoin;
+import com.fsryan.forsuredb.cursor.FSCursor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     A bounded, least-recently-used cache of query results, keyed by the sql and replacements of
+ *     the query. Each entry holds an immutable in-memory snapshot of the rows, from which a new
+ *     cursor is created for each hit.
+ * </p>
+ * <p>
+ *     An entry remembers the {@link TableVersions} of its tables as of before its query ran and is
+ *     only served while they are unchanged. Queries of a thread within a transaction bypass the
+ *     cache, as they may see uncommitted writes.
+ * </p>
+ * @see FSDBHelper#queryResultCache()
+ * @see FSDBConfig.Builder#queryResultCache(int, int)
+ */
+public class QueryResultCache {
+
+    /**
+     * <p>
+     *     Runs the query on a cache miss
+     * </p>
+     */
+    public interface Source {
+        Cursor query();
+    }
+
+    private final TableVersions tableVersions;
+    private final int maxRows;
+    private final LruCache<Key, Entry> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param tableVersions the {@link TableVersions} that are bumped by writes
+     * @param maxSize the maximum number of entries--0 to disable the cache
+     * @param maxRows the maximum number of rows of an entry
+     */
+    public QueryResultCache(@NonNull TableVersions tableVersions, int maxSize, int maxRows) {
+        this.tableVersions = tableVersions;
+        this.maxRows = maxRows;
+        entries = maxSize > 0 ? new LruCache<Key, Entry>(maxSize) : null;
+    }
+
+    public boolean isEnabled() {
+        return entries != null;
+    }
+
+    /**
+     * @param db the database being queried
+     * @param sql the sql of the query
+     * @param replacements the replacements of the query
+     * @param tables all of the tables the query reads
+     * @param source runs the query on a miss
+     * @return a cursor over a snapshot of the cached rows on a hit; otherwise, the cursor
+     * returned by the source, which is snapshotted and cached if small enough
+     */
+    @NonNull
+    public FSCursor query(@NonNull SQLiteDatabase db, @NonNull String sql, @Nullable Object[] replacements, @NonNull Collection<String> tables, @NonNull Source source) {
+        if (!isEnabled() || !tableVersions.readsCommitted(db)) {
+            return asFSCursor(source.query());
+        }
+
+        final Key key = new Key(sql, replacements);
+        final Entry cached = entries.get(key);
+        if (cached != null && cached.isCurrent(tableVersions)) {
+            hitCount.incrementAndGet();
+            return new FSCursor(new SnapshotCursor(cached.columnNames, cached.rows));
+        }
+
+        missCount.incrementAndGet();
+        final String[] entryTables = tables.toArray(new String[tables.size()]);
+        final long[] versions = tableVersions.versionsOf(entryTables);     // <-- before the query runs
+        final Cursor result = source.query();
+        if (result == null) {
+            return null;
+        }
+        final int count;
+        try {
+            count = result.getCount();      // <-- runs the query, so it may be canceled
+        } catch (RuntimeException re) {
+            result.close();
+            throw re;
+        }
+        if (count > maxRows) {
+            return asFSCursor(result);
+        }
+
+        final Entry entry = Entry.snapshot(result, entryTables, versions);
+        entries.put(key, entry);
+        return new FSCursor(new SnapshotCursor(entry.columnNames, entry.rows));
+    }
+
+    /**
+     * @param table the table being queried
+     * @param joins the joins of the query or null
+     * @return the table and all of the tables of the joins
+     */
+    @NonNull
+    public static Set<String> tablesOf(@NonNull String table, @Nullable List<FSJoin> joins) {
+        Set<String> ret = new HashSet<>();
+        ret.add(table);
+        if (joins != null) {
+            for (FSJoin join : joins) {
+                ret.add(join.getParentTable());
+                ret.add(join.getChildTable());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Removes all entries, for example when the schema changes
+     * </p>
+     */
+    public void clear() {
+        if (isEnabled()) {
+            entries.evictAll();
+        }
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the fraction of queries that were served from the cache or 0 if there have been no
+     * queries
+     */
+    public double hitRate() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests == 0 ? 0D : (double) hits / requests;
+    }
+
+    private static FSCursor asFSCursor(Cursor c) {
+        return c == null || c instanceof FSCursor ? (FSCursor) c : new FSCursor(c);
+    }
+
+    private static final class Entry {
+
+        final String[] columnNames;
+        final Object[][] rows;
+        final String[] tables;
+        final long[] versions;
+
+        Entry(String[] columnNames, Object[][] rows, String[] tables, long[] versions) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+            this.tables = tables;
+            this.versions = versions;
+        }
+
+        static Entry snapshot(Cursor result, String[] tables, long[] versions) {
+            try {
+                final String[] columnNames = result.getColumnNames();
+                final Object[][] rows = new Object[result.getCount()][];
+                for (int r = 0; r < rows.length && result.moveToPosition(r); r++) {
+                    Object[] row = new Object[columnNames.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = SnapshotCursor.valueOf(result, i);
+                    }
+                    rows[r] = row;
+                }
+                return new Entry(columnNames, rows, tables, versions);
+            } finally {
+                result.close();
+            }
+        }
+
+        boolean isCurrent(TableVersions tableVersions) {
+            for (int i = 0; i < tables.length; i++) {
+                if (tableVersions.versionOf(tables[i]) != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Key {
+
+        private final String sql;
+        private final Object[] replacements;
+
+        Key(String sql, Object[] replacements) {
+            this.sql = sql;
+            this.replacements = replacements == null ? new Object[0] : replacements.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return sql.equals(key.sql) && Arrays.deepEquals(replacements, key.replacements);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + Arrays.deepHashCode(replacements);
+        }
+    }
+}
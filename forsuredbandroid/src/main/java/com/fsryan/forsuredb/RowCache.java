@@ -0,0 +1,307 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.fsryan.forsuredb.api.FSProjection;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+import com.fsryan.forsuredb.cursor.FSCursor;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ *     A fast path for looking up a single record by its _id. Rather than generating sql for the
+ *     selection and projection of each lookup, the whole row is read with the same sql every time
+ *     and kept in a bounded, least-recently-used cache per table, from which any projection of
+ *     plain columns is served without touching SQLite.
+ * </p>
+ * <p>
+ *     A cached row is evicted when {@link TableVersions} reports that a write may have changed
+ *     its record. Updates and deletes of known records evict only those records, while writes
+ *     that may have changed any record, such as inserts that may replace an existing record,
+ *     evict all rows of the table. Inserts that cannot replace an existing record evict nothing.
+ *     A row read while its table is written is not cached. Rows that do not exist are not
+ *     cached. Lookups of a thread within a transaction bypass the cache, as they may see
+ *     uncommitted writes.
+ * </p>
+ * @see FSDBHelper#rowCache()
+ * @see FSDBConfig.Builder#rowCache(int)
+ */
+public class RowCache {
+
+    private static final Pattern ID_SELECTION_PATTERN = Pattern.compile("^\\(?\\s*(?:(\\w+)\\.)?_id\\s*=\\s*\\?\\s*\\)?$");
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("^(?:(\\w+)\\.)?(\\w+)$");
+
+    /**
+     * <p>
+     *     Reads the row on a cache miss
+     * </p>
+     */
+    public interface Loader {
+        Cursor load(@NonNull String sql, @NonNull Object[] replacements);
+    }
+
+    private final TableVersions tableVersions;
+    private final int rowsPerTable;
+    private final ConcurrentMap<String, TableRows> tables = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param tableVersions the {@link TableVersions} that are told of writes
+     * @param rowsPerTable the maximum number of rows cached per table--0 to disable the cache
+     */
+    public RowCache(@NonNull TableVersions tableVersions, int rowsPerTable) {
+        this.tableVersions = tableVersions;
+        this.rowsPerTable = rowsPerTable;
+        tableVersions.addRowWriteListener(new TableVersions.RowWriteListener() {
+            @Override
+            public void onRowsWritten(@NonNull String table, @Nullable Collection<Long> ids) {
+                evict(table, ids);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return rowsPerTable > 0;
+    }
+
+    /**
+     * @param db the database being queried
+     * @param table the table being queried
+     * @param projection the projection of the query
+     * @param selection the selection of the query
+     * @param loader reads the row on a miss
+     * @return a cursor over the projection of the record, which has no rows if the record does
+     * not exist, or null if the cache is disabled, the current thread is within a transaction, or
+     * the query is not a lookup of plain columns of a single record by its _id, in which case the
+     * query should be run as usual
+     */
+    @Nullable
+    public FSCursor query(@NonNull SQLiteDatabase db, @NonNull String table, @Nullable FSProjection projection, @Nullable FSSelection selection, @NonNull Loader loader) {
+        if (!isEnabled() || !tableVersions.readsCommitted(db)) {
+            return null;
+        }
+        final Long id = idOf(table, selection);
+        final String[] columns = id == null ? null : columnsOf(table, projection);
+        if (columns == null) {
+            return null;
+        }
+
+        final TableRows tableRows = rowsOf(table);
+        Row row = tableRows.rows.get(id);
+        if (row != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            final long writeCount = tableRows.writeCount();     // <-- before the row is read
+            row = Row.read(loader.load("SELECT * FROM " + table + " WHERE _id = ?;", new Object[] {id}));
+            if (row.values != null) {
+                tableRows.putIfNotWritten(id, row, writeCount);
+            }
+        }
+        return row.project(columns);
+    }
+
+    /**
+     * <p>
+     *     Removes all rows, for example when the schema changes
+     * </p>
+     */
+    public void clear() {
+        tables.clear();
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the fraction of lookups that were served from the cache or 0 if there have been no
+     * lookups
+     */
+    public double hitRate() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests == 0 ? 0D : (double) hits / requests;
+    }
+
+    /**
+     * @return the _id of the record if the selection selects exactly one record of the table by
+     * its _id; otherwise, null
+     */
+    @Nullable
+    public static Long idOf(@NonNull String table, @Nullable FSSelection selection) {
+        if (selection == null || selection.where() == null) {
+            return null;
+        }
+        final Limits limits = selection.limits();
+        if (limits != null && limits.offset() > 0) {
+            return null;
+        }
+        final Matcher m = ID_SELECTION_PATTERN.matcher(selection.where().trim());
+        if (!m.matches() || (m.group(1) != null && !m.group(1).equals(table))) {
+            return null;
+        }
+        final Object[] replacements = selection.replacements();
+        if (replacements == null || replacements.length != 1 || !(replacements[0] instanceof Number)) {
+            return null;
+        }
+        final Number id = (Number) replacements[0];
+        return id instanceof Double || id instanceof Float ? null : id.longValue();
+    }
+
+    /**
+     * @return the unqualified names of the columns of the projection, an empty array for all
+     * columns or null if the projection includes anything other than plain columns of the table
+     */
+    @Nullable
+    /*package*/ static String[] columnsOf(@NonNull String table, @Nullable FSProjection projection) {
+        final String[] projected = projection == null ? null : projection.columns();
+        if (projected == null || projected.length == 0) {
+            return new String[0];
+        }
+        final String[] ret = new String[projected.length];
+        for (int i = 0; i < ret.length; i++) {
+            Matcher m = COLUMN_PATTERN.matcher(projected[i].trim());
+            if (!m.matches() || (m.group(1) != null && !m.group(1).equals(table))) {
+                return null;
+            }
+            ret[i] = m.group(2);
+        }
+        return ret;
+    }
+
+    private void evict(String table, Collection<Long> ids) {
+        final TableRows tableRows = tables.get(table);
+        if (tableRows != null) {
+            tableRows.evict(ids);
+        }
+    }
+
+    private TableRows rowsOf(String table) {
+        TableRows ret = tables.get(table);
+        if (ret == null) {
+            TableRows created = new TableRows(rowsPerTable);
+            ret = tables.putIfAbsent(table, created);
+            if (ret == null) {
+                ret = created;
+            }
+        }
+        return ret;
+    }
+
+    private static final class TableRows {
+
+        final LruCache<Long, Row> rows;
+        private long writeCount;    // <-- guarded by this
+
+        TableRows(int maxSize) {
+            rows = new LruCache<>(maxSize);
+        }
+
+        synchronized long writeCount() {
+            return writeCount;
+        }
+
+        // a row read while the table was written may be stale
+        synchronized void putIfNotWritten(long id, Row row, long writeCountBeforeRead) {
+            if (writeCount == writeCountBeforeRead) {
+                rows.put(id, row);
+            }
+        }
+
+        synchronized void evict(Collection<Long> ids) {
+            writeCount++;
+            if (ids == null) {
+                rows.evictAll();
+                return;
+            }
+            for (Long id : ids) {
+                rows.remove(id);
+            }
+        }
+    }
+
+    private static final class Row {
+
+        final String[] columnNames;
+        final Object[] values;      // <-- null when the record does not exist
+
+        Row(String[] columnNames, Object[] values) {
+            this.columnNames = columnNames;
+            this.values = values;
+        }
+
+        static Row read(Cursor c) {
+            try {
+                final String[] columnNames = c.getColumnNames();
+                if (!c.moveToFirst()) {
+                    return new Row(columnNames, null);
+                }
+                final Object[] values = new Object[columnNames.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = SnapshotCursor.valueOf(c, i);
+                }
+                return new Row(columnNames, values);
+            } finally {
+                c.close();
+            }
+        }
+
+        FSCursor project(String[] columns) {
+            if (columns.length == 0) {
+                return new FSCursor(new SnapshotCursor(columnNames, values == null ? new Object[0][] : new Object[][] {values}));
+            }
+            if (values == null) {
+                return new FSCursor(new SnapshotCursor(columns, new Object[0][]));
+            }
+
+            final Object[] projected = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                projected[i] = values[indexOf(columns[i])];
+            }
+            return new FSCursor(new SnapshotCursor(columns, new Object[][] {projected}));
+        }
+
+        private int indexOf(String column) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equalsIgnoreCase(column)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("column '" + column + "' does not exist");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * <p>
+ *     Remembers the database version that a set of migration assets produced. As long as the
+ *     migration assets are the same as they were when the database was last opened, the database
+ *     version can be known without parsing the migration assets.
+ * </p>
+ * <p>
+ *     The migration assets are identified by their names only, which is sufficient because
+ *     forsuredb never changes a migration asset after generating it--it generates a new one.
+ * </p>
+ */
+/*package*/ class SchemaFingerprint {
+
+    static final String PREFS_NAME = "forsuredb_schema_fingerprint";
+    private static final char[] hexArray = "0123456789abcdef".toCharArray();
+
+    private final SharedPreferences prefs;
+    private final String versionKey;
+    private final String assetsKey;
+    private final String assetsHash;
+
+    SchemaFingerprint(@NonNull Context context, @NonNull String dbName, @NonNull List<String> migrationAssetNames) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        versionKey = dbName + ".version";
+        assetsKey = dbName + ".migration_assets";
+        assetsHash = hashOf(migrationAssetNames);
+    }
+
+    /**
+     * @return the database version stored along with the current migration assets or 0 if the
+     * migration assets have changed since the version was stored
+     */
+    int storedVersion() {
+        return assetsHash.equals(prefs.getString(assetsKey, null)) ? prefs.getInt(versionKey, 0) : 0;
+    }
+
+    /**
+     * <p>
+     *     Stores the version of the database as produced by the current migration assets
+     * </p>
+     * @param version the version of the database
+     */
+    void store(int version) {
+        if (version == storedVersion()) {
+            return;
+        }
+        prefs.edit()
+                .putString(assetsKey, assetsHash)
+                .putInt(versionKey, version)
+                .apply();
+    }
+
+    static String hashOf(List<String> migrationAssetNames) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String name : migrationAssetNames) {
+                digest.update(name.getBytes("UTF-8"));
+                digest.update((byte) 0);    // <-- separates names so that ["ab", "c"] and ["a", "bc"] differ
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hexChars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xFF;
+            hexChars[i * 2] = hexArray[v >>> 4];
+            hexChars[i * 2 + 1] = hexArray[v & 0x0F];
+        }
+        return new String(hexChars);
+    }
+}
@@ -0,0 +1,129 @@
+package com.fsryan.forsuredb;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * <p>
+ *     A read-only cursor over rows held in memory. The rows are shared, not copied, so they must
+ *     not be modified.
+ * </p>
+ * @see QueryResultCache
+ */
+/*package*/ class SnapshotCursor extends AbstractCursor {
+
+    private final String[] columnNames;
+    private final Object[][] rows;
+
+    SnapshotCursor(String[] columnNames, Object[][] rows) {
+        this.columnNames = columnNames;
+        this.rows = rows;
+    }
+
+    /**
+     * @return the value of the column of the current row of the cursor as the Java type
+     * corresponding to its SQLite storage class
+     */
+    static Object valueOf(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return rows.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public int getType(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return Cursor.FIELD_TYPE_NULL;
+        }
+        if (value instanceof byte[]) {
+            return Cursor.FIELD_TYPE_BLOB;
+        }
+        if (value instanceof Double) {
+            return Cursor.FIELD_TYPE_FLOAT;
+        }
+        if (value instanceof Long) {
+            return Cursor.FIELD_TYPE_INTEGER;
+        }
+        return Cursor.FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = get(column);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return 0L;
+        }
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = get(column);
+        if (value == null) {
+            return 0D;
+        }
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        Object value = get(column);
+        return value == null || value instanceof byte[] ? (byte[]) value : value.toString().getBytes();
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return get(column) == null;
+    }
+
+    private Object get(int column) {
+        if (column < 0 || column >= columnNames.length) {
+            throw new IndexOutOfBoundsException("Requested column: " + column + ", # of columns: " + columnNames.length);
+        }
+        if (mPos < 0 || mPos >= rows.length) {
+            throw new IndexOutOfBoundsException("Requested row: " + mPos + ", # of rows: " + rows.length);
+        }
+        return rows[mPos][column];
+    }
+}
@@ -14,8 +14,12 @@ import java.util.List;
 public abstract class SqlBinder {
 
     public static void bindObjects(@NonNull SQLiteStatement s, @NonNull List<String> cols, @NonNull RecordContainer rc) {
+        bindObjects(s, 1, cols, rc);
+    }
+
+    public static void bindObjects(@NonNull SQLiteStatement s, int startPos, @NonNull List<String> cols, @NonNull RecordContainer rc) {
         for (int pos = 0; pos < cols.size(); pos ++) {
-            bindObject(pos + 1, s, rc.get(cols.get(pos)));
+            bindObject(startPos + pos, s, rc.get(cols.get(pos)));
         }
     }
 
@@ -0,0 +1,312 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.fsryan.forsuredb.api.FSJoin;
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSProjection;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+import com.fsryan.forsuredb.api.sqlgeneration.DBMSIntegrator;
+import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     A bounded, least-recently-used cache of the sql a {@link DBMSIntegrator} generates, keyed by
+ *     the shape of the request: the operation, table, projections, joins, WHERE clause, limits
+ *     and orderings, but not the replacement values. Requests that differ only in their
+ *     replacement values therefore share the generated sql, and only the replacements of the
+ *     {@link FSSelection} are bound per call.
+ * </p>
+ * <p>
+ *     Generated sql is only cached when the replacements the {@link DBMSIntegrator} returned are
+ *     exactly the replacements of the {@link FSSelection}. Otherwise, the sql of that shape is
+ *     generated for every request.
+ * </p>
+ * @see FSDBHelper#sqlGenerationCache()
+ */
+public class SqlGenerationCache {
+
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private static final Object[] NO_REPLACEMENTS = new Object[0];
+    private static final String UNCACHEABLE = "";
+
+    private final LruCache<Key, String> generatedSql;
+    private long hitCount;
+    private long missCount;
+
+    public SqlGenerationCache(int maxSize) {
+        generatedSql = new LruCache<>(maxSize);
+    }
+
+    @NonNull
+    public SqlForPreparedStatement querySql(@NonNull DBMSIntegrator generator,
+                                            @NonNull String table,
+                                            @Nullable FSProjection projection,
+                                            @Nullable FSSelection selection,
+                                            @Nullable List<FSOrdering> orderings) {
+        StringBuilder shape = new StringBuilder("Q");
+        appendShape(shape, table);
+        appendShape(shape, projection);
+        appendShape(shape, selection);
+        appendOrderingsShape(shape, orderings);
+        Key key = new Key(generator, shape.toString());
+
+        String sql = lookUp(key);
+        if (sql != null) {
+            return new SqlForPreparedStatement(sql, replacementsOf(selection));
+        }
+        return store(key, selection, generator.createQuerySql(table, projection, selection, orderings));
+    }
+
+    @NonNull
+    public SqlForPreparedStatement querySql(@NonNull DBMSIntegrator generator,
+                                            @NonNull String table,
+                                            @Nullable List<FSJoin> joins,
+                                            @Nullable List<FSProjection> projections,
+                                            @Nullable FSSelection selection,
+                                            @Nullable List<FSOrdering> orderings) {
+        StringBuilder shape = new StringBuilder("J");
+        appendShape(shape, table);
+        appendJoinsShape(shape, joins);
+        appendProjectionsShape(shape, projections);
+        appendShape(shape, selection);
+        appendOrderingsShape(shape, orderings);
+        Key key = new Key(generator, shape.toString());
+
+        String sql = lookUp(key);
+        if (sql != null) {
+            return new SqlForPreparedStatement(sql, replacementsOf(selection));
+        }
+        return store(key, selection, generator.createQuerySql(table, joins, projections, selection, orderings));
+    }
+
+    @NonNull
+    public SqlForPreparedStatement updateSql(@NonNull DBMSIntegrator generator,
+                                             @NonNull String table,
+                                             @NonNull List<String> columns,
+                                             @Nullable FSSelection selection,
+                                             @Nullable List<FSOrdering> orderings) {
+        StringBuilder shape = new StringBuilder("U");
+        appendShape(shape, table);
+        shape.append(columns.size());
+        for (String column : columns) {
+            appendShape(shape, column);
+        }
+        appendShape(shape, selection);
+        appendOrderingsShape(shape, orderings);
+        Key key = new Key(generator, shape.toString());
+
+        String sql = lookUp(key);
+        if (sql != null) {
+            return new SqlForPreparedStatement(sql, replacementsOf(selection));
+        }
+        return store(key, selection, generator.createUpdateSql(table, columns, selection, orderings));
+    }
+
+    @NonNull
+    public SqlForPreparedStatement deleteSql(@NonNull DBMSIntegrator generator,
+                                             @NonNull String table,
+                                             @Nullable FSSelection selection,
+                                             @Nullable List<FSOrdering> orderings) {
+        StringBuilder shape = new StringBuilder("D");
+        appendShape(shape, table);
+        appendShape(shape, selection);
+        appendOrderingsShape(shape, orderings);
+        Key key = new Key(generator, shape.toString());
+
+        String sql = lookUp(key);
+        if (sql != null) {
+            return new SqlForPreparedStatement(sql, replacementsOf(selection));
+        }
+        return store(key, selection, generator.createDeleteSql(table, selection, orderings));
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the fraction of requests that were served from the cache or 0 if there have been no
+     * requests
+     */
+    public synchronized double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0D : (double) hitCount / requests;
+    }
+
+    public void clear() {
+        generatedSql.evictAll();
+    }
+
+    private synchronized String lookUp(Key key) {
+        String sql = generatedSql.get(key);
+        if (sql == null || sql == UNCACHEABLE) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return sql;
+    }
+
+    private SqlForPreparedStatement store(Key key, FSSelection selection, SqlForPreparedStatement ps) {
+        boolean cacheable = Arrays.equals(replacementsOf(ps.getReplacements()), replacementsOf(selection));
+        generatedSql.put(key, cacheable ? ps.getSql() : UNCACHEABLE);
+        return ps;
+    }
+
+    private static Object[] replacementsOf(@Nullable FSSelection selection) {
+        return selection == null ? NO_REPLACEMENTS : replacementsOf(selection.replacements());
+    }
+
+    private static Object[] replacementsOf(@Nullable Object[] replacements) {
+        return replacements == null ? NO_REPLACEMENTS : replacements;
+    }
+
+    // Strings are length-prefixed so that no two different shapes can produce the same key
+    /*package*/ static void appendShape(@NonNull StringBuilder buf, @Nullable String s) {
+        if (s == null) {
+            buf.append('-');
+        } else {
+            buf.append(s.length()).append(':').append(s);
+        }
+    }
+
+    /*package*/ static void appendShape(@NonNull StringBuilder buf, @Nullable FSProjection projection) {
+        if (projection == null) {
+            buf.append('-');
+            return;
+        }
+        buf.append(projection.isDistinct() ? 'd' : 'p');
+        appendShape(buf, projection.tableName());
+        String[] columns = projection.columns();
+        if (columns == null) {
+            buf.append('-');
+            return;
+        }
+        buf.append(columns.length);
+        for (String column : columns) {
+            appendShape(buf, column);
+        }
+    }
+
+    /*package*/ static void appendShape(@NonNull StringBuilder buf, @Nullable FSSelection selection) {
+        if (selection == null) {
+            buf.append('-');
+            return;
+        }
+        buf.append('s');
+        appendShape(buf, selection.where());
+        Object[] replacements = selection.replacements();
+        buf.append(replacements == null ? 0 : replacements.length);
+        Limits limits = selection.limits();
+        if (limits == null) {
+            buf.append('-');
+        } else {
+            buf.append('l').append(limits.count())
+                    .append(',').append(limits.offset())
+                    .append(',').append(limits.isBottom() ? 'b' : 't');
+        }
+    }
+
+    /*package*/ static void appendProjectionsShape(@NonNull StringBuilder buf, @Nullable List<FSProjection> projections) {
+        if (projections == null) {
+            buf.append('-');
+            return;
+        }
+        buf.append(projections.size());
+        for (FSProjection projection : projections) {
+            appendShape(buf, projection);
+        }
+    }
+
+    /*package*/ static void appendOrderingsShape(@NonNull StringBuilder buf, @Nullable List<FSOrdering> orderings) {
+        if (orderings == null) {
+            buf.append('-');
+            return;
+        }
+        buf.append(orderings.size());
+        for (FSOrdering ordering : orderings) {
+            appendShape(buf, ordering.table);
+            appendShape(buf, ordering.column);
+            buf.append(ordering.direction);
+        }
+    }
+
+    /*package*/ static void appendJoinsShape(@NonNull StringBuilder buf, @Nullable List<FSJoin> joins) {
+        if (joins == null) {
+            buf.append('-');
+            return;
+        }
+        buf.append(joins.size());
+        for (FSJoin join : joins) {
+            buf.append(join.getType());
+            appendShape(buf, join.getParentTable());
+            appendShape(buf, join.getChildTable());
+            Map<String, String> columnMap = join.getChildToParentColumnMap();
+            buf.append(columnMap.size());
+            for (Map.Entry<String, String> entry : columnMap.entrySet()) {
+                appendShape(buf, entry.getKey());
+                appendShape(buf, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     The shape of a request along with the {@link DBMSIntegrator} that generates its sql
+     * </p>
+     */
+    private static final class Key {
+
+        private final DBMSIntegrator generator;
+        private final String shape;
+
+        Key(DBMSIntegrator generator, String shape) {
+            this.generator = generator;
+            this.shape = shape;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return generator == key.generator && shape.equals(key.shape);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(generator) + shape.hashCode();
+        }
+    }
+}
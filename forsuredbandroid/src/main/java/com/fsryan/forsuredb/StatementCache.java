@@ -0,0 +1,201 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ *     A bounded, least-recently-used cache of compiled {@link SQLiteStatement} instances. Since a
+ *     {@link SQLiteStatement} holds its bind arguments, it cannot be shared by two threads at once.
+ *     Therefore, statements are checked out for exclusive use via {@link #checkOut(Key)} or
+ *     {@link #compile(SQLiteDatabase, String)} and must be returned via
+ *     {@link #checkIn(Key, SQLiteStatement)} when the caller is done with them.
+ * </p>
+ * <p>
+ *     Statements are compiled against a specific {@link SQLiteDatabase} instance, so the owner of
+ *     the database must call {@link #clear()} whenever that instance is closed or its schema is
+ *     migrated. Statements that are checked out during a {@link #clear()} get closed when they are
+ *     checked back in.
+ * </p>
+ * @see FSDBHelper#statementCache()
+ */
+public class StatementCache {
+
+    public static final int DEFAULT_MAX_SIZE = 25;
+
+    public enum Operation {
+        INSERT,
+        INSERT_OR_IGNORE,
+        UPDATE,
+        UPSERT,
+        DELETE,
+        EXISTS,
+        COUNT
+    }
+
+    private final LruCache<Key, SQLiteStatement> idleStatements;
+    private final Set<SQLiteStatement> checkedOut = Collections.newSetFromMap(new IdentityHashMap<SQLiteStatement, Boolean>());
+    private long hitCount;
+    private long missCount;
+
+    public StatementCache(int maxSize) {
+        idleStatements = new LruCache<Key, SQLiteStatement>(maxSize) {
+            @Override
+            protected void entryRemoved(boolean evicted, Key key, SQLiteStatement oldValue, SQLiteStatement newValue) {
+                // a null newValue without eviction means the statement was checked out
+                if (evicted || (newValue != null && newValue != oldValue)) {
+                    oldValue.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param key the {@link Key} describing the statement
+     * @return a previously-compiled {@link SQLiteStatement} for the {@link Key}, checked out for
+     * the exclusive use of the caller or null if there was no such statement
+     */
+    @Nullable
+    public synchronized SQLiteStatement checkOut(@NonNull Key key) {
+        SQLiteStatement statement = idleStatements.remove(key);
+        if (statement == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        checkedOut.add(statement);
+        return statement;
+    }
+
+    /**
+     * <p>
+     *     Compiles a new {@link SQLiteStatement} that is checked out for the exclusive use of the
+     *     caller. Call this on a {@link #checkOut(Key)} miss.
+     * </p>
+     * @param db the {@link SQLiteDatabase} to compile the statement against
+     * @param sql the sql to compile
+     * @return the compiled {@link SQLiteStatement}
+     */
+    @NonNull
+    public SQLiteStatement compile(@NonNull SQLiteDatabase db, @NonNull String sql) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        synchronized (this) {
+            checkedOut.add(statement);
+        }
+        return statement;
+    }
+
+    /**
+     * <p>
+     *     Returns a statement to the cache so that it may be reused. If the cache was cleared while
+     *     the statement was checked out, then the statement is closed instead.
+     * </p>
+     * @param key the {@link Key} describing the statement
+     * @param statement the statement that was checked out
+     */
+    public synchronized void checkIn(@NonNull Key key, @NonNull SQLiteStatement statement) {
+        if (!checkedOut.remove(statement)) {
+            statement.close();
+            return;
+        }
+        statement.clearBindings();
+        idleStatements.put(key, statement);
+    }
+
+    /**
+     * <p>
+     *     Closes all idle statements and marks all checked out statements to be closed when they
+     *     are checked in.
+     * </p>
+     */
+    public synchronized void clear() {
+        checkedOut.clear();
+        idleStatements.evictAll();
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    /**
+     * <p>
+     *     Identifies a compiled statement by the table, the operation and the columns it was
+     *     compiled for. Because the WHERE clause of an update or delete is part of the statement,
+     *     the sql must also be included for those operations.
+     * </p>
+     */
+    public static final class Key {
+
+        private final String table;
+        private final Operation operation;
+        private final List<String> columns;
+        private final String sql;
+
+        public Key(@NonNull String table, @NonNull Operation operation, @NonNull List<String> columns, @Nullable String sql) {
+            this.table = table;
+            this.operation = operation;
+            this.columns = columns;
+            this.sql = sql;
+        }
+
+        public static Key insert(@NonNull String table, @NonNull List<String> columns) {
+            return new Key(table, Operation.INSERT, columns, null);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (!table.equals(key.table)) return false;
+            if (operation != key.operation) return false;
+            if (!columns.equals(key.columns)) return false;
+            return sql != null ? sql.equals(key.sql) : key.sql == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = table.hashCode();
+            result = 31 * result + operation.hashCode();
+            result = 31 * result + columns.hashCode();
+            result = 31 * result + (sql != null ? sql.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "Key{table=" + table + ", operation=" + operation + ", columns=" + columns + ", sql=" + sql + '}';
+        }
+    }
+}
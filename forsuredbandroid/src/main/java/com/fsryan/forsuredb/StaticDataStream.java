@@ -0,0 +1,205 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.support.annotation.NonNull;
+import android.util.Xml;
+
+import com.fsryan.forsuredb.api.staticdata.OnRecordRetrievedListener;
+import com.fsryan.forsuredb.api.staticdata.StaticDataRetrieverFactory;
+import com.fsryan.forsuredb.migration.MigrationSet;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Reads a table's static data asset once, front to back, across all of the versions of a
+ *     migration. Each call to {@link #retrieve(int, OnRecordRetrievedListener)} reads on from
+ *     where the previous call stopped through the records of the requested version, handing them
+ *     to the listener in chunks of at most {@link #RECORDS_PER_CHUNK} records. Thus, only one
+ *     chunk of static data is held in memory at any time.
+ * </p>
+ * <p>
+ *     Each chunk is converted to records by the same retriever that reads whole assets, so the
+ *     records are the same either way. Because the asset is only read forward, the
+ *     &lt;records&gt; elements must be in ascending db_version order.
+ * </p>
+ */
+/*package*/ class StaticDataStream implements Closeable {
+
+    static final int RECORDS_PER_CHUNK = BatchInserter.MAX_ROWS;
+
+    private static final int NO_SECTION = -1;
+
+    private final String tableName;
+    private final List<MigrationSet> migrationSets;
+    private final InputStream xmlStream;
+    private final XmlPullParser parser;
+    private int sectionVersion = NO_SECTION;    // <-- the db_version of the records element being read
+    private int lastSectionVersion = NO_SECTION;
+
+    StaticDataStream(@NonNull String tableName, @NonNull List<MigrationSet> migrationSets, @NonNull InputStream xmlStream) throws XmlPullParserException {
+        this.tableName = tableName;
+        this.migrationSets = migrationSets;
+        this.xmlStream = xmlStream;
+        parser = Xml.newPullParser();
+        parser.setInput(xmlStream, null);
+    }
+
+    /**
+     * <p>
+     *     Skips the records of any version before dbVersion and retrieves the records of
+     *     dbVersion. The records of later versions are left for later calls.
+     * </p>
+     * @param dbVersion the version being migrated
+     * @param listener receives each chunk of records as a map of dbVersion to the records
+     */
+    void retrieve(int dbVersion, @NonNull OnRecordRetrievedListener listener) throws IOException, XmlPullParserException {
+        final List<String> records = new ArrayList<>(RECORDS_PER_CHUNK);
+        while (enterSection() && sectionVersion <= dbVersion) {
+            final boolean migrating = sectionVersion == dbVersion;
+            String record;
+            while ((record = nextRecord()) != null) {
+                if (!migrating) {
+                    continue;
+                }
+                records.add(record);
+                if (records.size() == RECORDS_PER_CHUNK) {
+                    retrieveChunk(dbVersion, records, listener);
+                    records.clear();
+                }
+            }
+        }
+        retrieveChunk(dbVersion, records, listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        xmlStream.close();
+    }
+
+    /**
+     * @return true if positioned within a records element, entering the next one if necessary,
+     * or false at the end of the document
+     */
+    private boolean enterSection() throws IOException, XmlPullParserException {
+        if (sectionVersion != NO_SECTION) {
+            return true;
+        }
+        int event;
+        while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (event != XmlPullParser.START_TAG || !"records".equals(parser.getName())) {
+                continue;
+            }
+            final int version = Integer.parseInt(parser.getAttributeValue(null, "db_version"));
+            if (version < lastSectionVersion) {
+                throw new IllegalStateException("Static data of " + tableName + " for db_version " + version + " follows db_version " + lastSectionVersion + "; cannot stream out of order versions");
+            }
+            sectionVersion = lastSectionVersion = version;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the next record element of the current records element, serialized, or null at
+     * the end of the records element
+     */
+    private String nextRecord() throws IOException, XmlPullParserException {
+        int event;
+        while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG && "record".equals(parser.getName())) {
+                return serializeRecord();
+            }
+            if (event == XmlPullParser.END_TAG && "records".equals(parser.getName())) {
+                break;
+            }
+        }
+        sectionVersion = NO_SECTION;
+        return null;
+    }
+
+    private String serializeRecord() {
+        final StringBuilder buf = new StringBuilder("<record");
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            buf.append(' ').append(parser.getAttributeName(i)).append("=\"");
+            appendEscaped(buf, parser.getAttributeValue(i));
+            buf.append('"');
+        }
+        return buf.append("/>").toString();
+    }
+
+    private void retrieveChunk(int dbVersion, List<String> records, OnRecordRetrievedListener listener) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        final StringBuilder buf = new StringBuilder("<static_data><records db_version=\"").append(dbVersion).append("\">");
+        for (String record : records) {
+            buf.append(record);
+        }
+        buf.append("</records></static_data>");
+        retrieve(new ByteArrayInputStream(buf.toString().getBytes("UTF-8")), listener);
+    }
+
+    /**
+     * @param chunk a static data document of a single chunk of records
+     * @param listener receives the records of the chunk
+     */
+    /*package*/ void retrieve(InputStream chunk, OnRecordRetrievedListener listener) {
+        StaticDataRetrieverFactory.createFor(tableName, migrationSets, chunk).retrieve(listener);
+    }
+
+    private static void appendEscaped(StringBuilder buf, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    buf.append("&amp;");
+                    break;
+                case '<':
+                    buf.append("&lt;");
+                    break;
+                case '>':
+                    buf.append("&gt;");
+                    break;
+                case '"':
+                    buf.append("&quot;");
+                    break;
+                case '\n':
+                    buf.append("&#10;");    // <-- otherwise normalized to a space
+                    break;
+                case '\r':
+                    buf.append("&#13;");
+                    break;
+                case '\t':
+                    buf.append("&#9;");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     A write version for every table, against which cached reads are checked. A version is bumped
+ *     by {@link #written(SQLiteDatabase, String)} whenever its table is written. A cached read
+ *     remembers the versions of its tables as of before it ran and is only valid while they are
+ *     unchanged.
+ * </p>
+ * <p>
+ *     Because a write in a transaction is not visible to other connections until the transaction
+ *     commits, the tables written in a transaction are bumped once more when
+ *     {@link #onTransactionEnd(SQLiteDatabase)} sees that the outermost transaction of the thread
+ *     has ended.
+ * </p>
+ * <p>
+ *     A {@link RowWriteListener} is additionally told which records of the table a write may
+ *     have changed, both when the write happens and when its transaction ends.
+ * </p>
+ * @see QueryResultCache
+ * @see RowCache
+ */
+public class TableVersions {
+
+    /**
+     * <p>
+     *     Told which existing records of a table a write may have changed
+     * </p>
+     */
+    public interface RowWriteListener {
+        /**
+         * @param table the table that was written
+         * @param ids the _ids of the records that may have changed or null if any record of the
+         *            table may have changed
+         */
+        void onRowsWritten(@NonNull String table, @Nullable Collection<Long> ids);
+    }
+
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final List<RowWriteListener> rowWriteListeners = new CopyOnWriteArrayList<>();
+    // the _ids written per table--null if any record of the table may have been written
+    private final ThreadLocal<Map<String, Set<Long>>> rowsWrittenInTransaction = new ThreadLocal<Map<String, Set<Long>>>() {
+        @Override
+        protected Map<String, Set<Long>> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    public void addRowWriteListener(@NonNull RowWriteListener listener) {
+        rowWriteListeners.add(listener);
+    }
+
+    /**
+     * <p>
+     *     Call whenever a table is written, after the write, when any record of the table may
+     *     have changed. Writes within a transaction are remembered until
+     *     {@link #onTransactionEnd(SQLiteDatabase)}.
+     * </p>
+     * @param db the database that was written
+     * @param table the table that was written
+     * @see #written(SQLiteDatabase, String, Collection)
+     */
+    public void written(@NonNull SQLiteDatabase db, @NonNull String table) {
+        written(db, table, null);
+    }
+
+    /**
+     * <p>
+     *     Call whenever a table is written, after the write. Writes within a transaction are
+     *     remembered until {@link #onTransactionEnd(SQLiteDatabase)}.
+     * </p>
+     * @param db the database that was written
+     * @param table the table that was written
+     * @param ids the _ids of the existing records that the write may have changed, which is
+     *            empty for inserts that cannot replace an existing record, or null if unknown
+     */
+    public void written(@NonNull SQLiteDatabase db, @NonNull String table, @Nullable Collection<Long> ids) {
+        bump(table);
+        notifyRowsWritten(table, ids);
+        if (!db.inTransaction()) {
+            onTransactionEnd(db);    // <-- catches writes in transactions this library did not manage
+            return;
+        }
+
+        final Map<String, Set<Long>> written = rowsWrittenInTransaction.get();
+        if (ids == null) {
+            written.put(table, null);
+        } else if (!written.containsKey(table)) {
+            written.put(table, new HashSet<>(ids));
+        } else if (written.get(table) != null) {
+            written.get(table).addAll(ids);
+        }
+    }
+
+    /**
+     * <p>
+     *     Call after ending a transaction. Once the outermost transaction of the current thread
+     *     has ended, the tables written within it are bumped once more and the
+     *     {@link RowWriteListener}s are told once more about the records written within it, so
+     *     that any read made before the commit is no longer valid.
+     * </p>
+     * @param db the database of the transaction
+     */
+    public void onTransactionEnd(@NonNull SQLiteDatabase db) {
+        if (db.inTransaction()) {
+            return;
+        }
+        Map<String, Set<Long>> written = rowsWrittenInTransaction.get();
+        if (written.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Set<Long>> entry : written.entrySet()) {
+            bump(entry.getKey());
+            notifyRowsWritten(entry.getKey(), entry.getValue());
+        }
+        written.clear();
+    }
+
+    /**
+     * <p>
+     *     A read by a thread within a transaction may see the uncommitted writes of that
+     *     transaction, and it must see them in preference to anything cached. Such reads must
+     *     neither be cached nor be served from the cache.
+     * </p>
+     * @param db the database being read
+     * @return true if reads of the current thread see only committed data
+     */
+    public boolean readsCommitted(@NonNull SQLiteDatabase db) {
+        return !db.inTransaction() && rowsWrittenInTransaction.get().isEmpty();
+    }
+
+    public long versionOf(@NonNull String table) {
+        return counterOf(table).get();
+    }
+
+    @NonNull
+    public long[] versionsOf(@NonNull String[] tables) {
+        long[] ret = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            ret[i] = versionOf(tables[i]);
+        }
+        return ret;
+    }
+
+    private void notifyRowsWritten(String table, Collection<Long> ids) {
+        if (ids != null && ids.isEmpty()) {
+            return;
+        }
+        for (RowWriteListener listener : rowWriteListeners) {
+            listener.onRowsWritten(table, ids);
+        }
+    }
+
+    private void bump(String table) {
+        counterOf(table).incrementAndGet();
+    }
+
+    private AtomicLong counterOf(String table) {
+        AtomicLong ret = versions.get(table);
+        if (ret == null) {
+            AtomicLong created = new AtomicLong();
+            ret = versions.putIfAbsent(table, created);
+            if (ret == null) {
+                ret = created;
+            }
+        }
+        return ret;
+    }
+}
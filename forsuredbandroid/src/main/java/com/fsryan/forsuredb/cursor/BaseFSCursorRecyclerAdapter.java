@@ -1,10 +1,20 @@
 package com.fsryan.forsuredb.cursor;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 
 import com.fsryan.forsuredb.api.FSGetApi;
 import com.fsryan.forsuredb.api.Retriever;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * <p>
  *     This works best in conjunction with an {@link FSCursorLoader}, keeping a reference to your
@@ -22,12 +32,49 @@ import com.fsryan.forsuredb.api.Retriever;
  *     implemented here, but you do need to implement
  *     {@link #onCreateViewHolder(android.view.ViewGroup, int)}
  * </p>
+ * <p>
+ *     The count of the {@link FSCursor} is snapshotted when it is swapped in, so
+ *     {@link #getItemCount()} does not move the cursor. The ids are snapshotted once per
+ *     {@link FSCursor} as well, so {@link #getItemId(int)} does not move it either. When swapping
+ *     in a new {@link FSCursor} via {@link #submitCursor(FSCursor)}, its ids are snapshotted on a
+ *     background thread, and the differences between the old and new ids are dispatched as
+ *     fine-grained change events rather than {@link #notifyDataSetChanged()}.
+ * </p>
+ * <p>
+ *     When swapping in a new {@link FSCursor} via {@link #swapCursor(FSCursor)} or
+ *     {@link #changeCursor(FSCursor)}, its ids are snapshotted by the first call to
+ *     {@link #getItemId(int)}, which therefore reads the id of every record on the main thread.
+ *     Use {@link #submitCursor(FSCursor)} to avoid this.
+ * </p>
  * @param <VH> An extension of the {@link FSCursorViewHolder} class
  */
 public abstract class BaseFSCursorRecyclerAdapter<VH extends FSCursorViewHolder> extends RecyclerView.Adapter<VH> {
 
+    /**
+     * <p>
+     *     The default result of {@link #contentVersion(FSCursor)}, meaning that whether a record
+     *     changed cannot be determined, so the record is always rebound.
+     * </p>
+     */
+    protected static final long UNKNOWN_CONTENT_VERSION = Long.MIN_VALUE;
+
+    private static final Executor diffExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread t = new Thread(r, "forsuredb-diff");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     private FSCursor c;
     private boolean queryContainsIdField;
+    private int count;
+    private long[] ids;             // <-- null until the first getItemId if swapped in via swapCursor
+    private long[] contentVersions;
+    private int submitGeneration;
+    private FSCursor submittedCursor;
+    private Handler mainHandler;
 
     /**
      * @param queryContainsIdField should be true if the {@link FSGetApi} extension's
@@ -65,19 +112,27 @@ public abstract class BaseFSCursorRecyclerAdapter<VH extends FSCursorViewHolder>
 
     @Override
     public int getItemCount() {
-        return isDataValid() ? c.getCount() : 0;
+        return isDataValid() ? count : 0;
     }
 
     @Override
     public long getItemId(int position) {
-        if (!isDataValid() || !c.moveToPosition(position)) {
+        if (!isDataValid() || position < 0 || position >= count) {
             return 0;
         }
-        return queryContainsIdField ? api().id(c) : position;
+        if (!queryContainsIdField) {
+            return position;
+        }
+        if (ids == null) {
+            ids = snapshotIds(c);
+        }
+        return position < ids.length ? ids[position] : 0;
     }
 
     public void setQueryContainsIdField(boolean queryContainsIdField) {
         this.queryContainsIdField = queryContainsIdField;
+        ids = null;
+        contentVersions = null;
     }
 
     /**
@@ -85,6 +140,20 @@ public abstract class BaseFSCursorRecyclerAdapter<VH extends FSCursorViewHolder>
      */
     protected abstract FSGetApi api();
 
+    /**
+     * <p>
+     *     Override to tell {@link #submitCursor(FSCursor)} whether a record that is in both the
+     *     old and new {@link FSCursor} changed, for example by returning the modification time of
+     *     the record. This is called on a background thread.
+     * </p>
+     * @param cursor the cursor at the position of the record
+     * @return a value that changes whenever the record changes or
+     * {@link #UNKNOWN_CONTENT_VERSION} if unknown
+     */
+    protected long contentVersion(@NonNull FSCursor cursor) {
+        return UNKNOWN_CONTENT_VERSION;
+    }
+
     /**
      * <p>
      *     Swap cursors and close the old cursor.
@@ -100,24 +169,169 @@ public abstract class BaseFSCursorRecyclerAdapter<VH extends FSCursorViewHolder>
 
     /**
      * <p>
-     *     Swap new {@link FSCursor} with existing and return the existing c
+     *     Swap new {@link FSCursor} with existing and return the existing c. The ids of the new
+     *     {@link FSCursor} are snapshotted by the next call to {@link #getItemId(int)}.
      * </p>
      * @param newC the new cursor to swap in
      * @return
      */
     public FSCursor swapCursor(FSCursor newC) {
+        submitGeneration++;     // <-- supersedes any pending submitCursor
+        submittedCursor = null;
         if (newC == c) {
             return null;
         }
 
         final FSCursor oldCursor = c;
-        c = newC;
+        setCursor(newC, null, null);
         notifyDataSetChanged();
 
         return oldCursor;
     }
 
+    /**
+     * <p>
+     *     Like {@link #changeCursor(FSCursor)}, but the ids (and {@link #contentVersion(FSCursor)
+     *     content versions}) of the new {@link FSCursor} are read on a background thread and
+     *     compared to those of the current {@link FSCursor} with {@link DiffUtil}. Once done, the
+     *     new {@link FSCursor} is swapped in on the main thread, the old one is closed and the
+     *     insertions, removals, moves and changes are dispatched to this adapter.
+     * </p>
+     * <p>
+     *     The new {@link FSCursor} must not be used by anything else until it is swapped in. When
+     *     the query does not contain the id field, this is the same as
+     *     {@link #changeCursor(FSCursor)}. When the current {@link FSCursor} was swapped in via
+     *     {@link #swapCursor(FSCursor)} and {@link #getItemId(int)} has not been called since, its
+     *     ids are unknown, so {@link #notifyDataSetChanged()} is dispatched rather than reading
+     *     them on the main thread.
+     * </p>
+     * @param newC the new {@link FSCursor} data
+     */
+    @MainThread
+    public void submitCursor(final FSCursor newC) {
+        if (!queryContainsIdField || newC == c) {
+            changeCursor(newC);
+            return;
+        }
+
+        final int generation = ++submitGeneration;
+        submittedCursor = newC;
+        final long[] oldIds = isDataValid() ? ids : new long[0];
+        final long[] oldVersions = contentVersions;
+        final Handler handler = mainHandler();
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long[] newIds = snapshotIds(newC);
+                final long[] newVersions = snapshotContentVersions(newC);
+                final DiffUtil.DiffResult diff = oldIds == null
+                        ? null
+                        : DiffUtil.calculateDiff(new IdDiffCallback(oldIds, oldVersions, newIds, newVersions));
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != submitGeneration) {
+                            // superseded--unless it has since been swapped in or resubmitted
+                            if (newC != null && newC != c && newC != submittedCursor) {
+                                newC.close();
+                            }
+                            return;
+                        }
+                        submittedCursor = null;
+                        final FSCursor oldCursor = c;
+                        setCursor(newC, newIds, newVersions);
+                        if (diff == null) {
+                            notifyDataSetChanged();
+                        } else {
+                            diff.dispatchUpdatesTo(BaseFSCursorRecyclerAdapter.this);
+                        }
+                        if (oldCursor != null) {
+                            oldCursor.close();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void setCursor(FSCursor newC, long[] newIds, long[] newVersions) {
+        c = newC;
+        count = newC == null || newC.isClosed() ? 0 : newC.getCount();
+        ids = newIds;
+        contentVersions = newVersions;
+    }
+
+    private long[] snapshotIds(FSCursor cursor) {
+        if (cursor == null || cursor.isClosed()) {
+            return new long[0];
+        }
+        final FSGetApi api = api();
+        final long[] ret = new long[cursor.getCount()];
+        for (int i = 0; i < ret.length && cursor.moveToPosition(i); i++) {
+            ret[i] = api.id(cursor);
+        }
+        return ret;
+    }
+
+    private long[] snapshotContentVersions(FSCursor cursor) {
+        if (cursor == null || cursor.isClosed()) {
+            return new long[0];
+        }
+        final long[] ret = new long[cursor.getCount()];
+        for (int i = 0; i < ret.length && cursor.moveToPosition(i); i++) {
+            ret[i] = contentVersion(cursor);
+        }
+        return ret;
+    }
+
+    private Handler mainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
     private boolean isDataValid() {
-        return c != null && !c.isClosed() && c.moveToFirst();
+        return c != null && !c.isClosed() && count > 0;
+    }
+
+    /*package*/ static class IdDiffCallback extends DiffUtil.Callback {
+
+        private final long[] oldIds;
+        private final long[] oldVersions;
+        private final long[] newIds;
+        private final long[] newVersions;
+
+        IdDiffCallback(@NonNull long[] oldIds, @Nullable long[] oldVersions, @NonNull long[] newIds, @Nullable long[] newVersions) {
+            this.oldIds = oldIds;
+            this.oldVersions = oldVersions;
+            this.newIds = newIds;
+            this.newVersions = newVersions;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldIds[oldItemPosition] == newIds[newItemPosition];
+        }
+
+        // the versions of the old cursor are unknown if it was swapped in via swapCursor
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            if (oldVersions == null || newVersions == null || oldItemPosition >= oldVersions.length) {
+                return false;
+            }
+            final long oldVersion = oldVersions[oldItemPosition];
+            return oldVersion != UNKNOWN_CONTENT_VERSION && oldVersion == newVersions[newItemPosition];
+        }
     }
 }
@@ -0,0 +1,72 @@
+/*
+   forsuredbandroid, an android companion to the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.cursor;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     Remembers the index that {@link Cursor#getColumnIndex(String)} resolved for each column
+ *     accessed by name, in the order of first access. The getters of an
+ *     {@link com.fsryan.forsuredb.api.FSGetApi FSGetApi} access the same columns in the same order
+ *     for every row, passing the same string constants, so after the first row, each access is an
+ *     array read guarded by a reference comparison rather than a hash lookup.
+ * </p>
+ */
+/*package*/ class ColumnIndexTable {
+
+    private String[] columns = new String[8];
+    private int[] indices = new int[8];
+    private int size;
+    private int next;       // <-- the slot of the column expected to be accessed next
+
+    /**
+     * @param cursor the cursor this table belongs to
+     * @param column the column to look up
+     * @return the index of the column as resolved by {@link Cursor#getColumnIndex(String)}
+     */
+    /*package*/ int indexOf(@NonNull Cursor cursor, @NonNull String column) {
+        final int expected = next;
+        if (expected < size && columns[expected] == column) {
+            next = (expected + 1) % size;
+            return indices[expected];
+        }
+        for (int i = 0; i < size; i++) {
+            if (column.equals(columns[i])) {
+                next = (i + 1) % size;
+                return indices[i];
+            }
+        }
+        return add(column, cursor.getColumnIndex(column));
+    }
+
+    private int add(String column, int index) {
+        if (size == columns.length) {
+            columns = Arrays.copyOf(columns, size * 2);
+            indices = Arrays.copyOf(indices, size * 2);
+        }
+        columns[size] = column;
+        indices[size] = index;
+        size++;
+        next = 0;
+        return index;
+    }
+}
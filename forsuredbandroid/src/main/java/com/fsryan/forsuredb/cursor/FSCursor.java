@@ -31,33 +31,35 @@ import com.fsryan.forsuredb.api.Retriever;
  */
 public class FSCursor extends CursorWrapper implements Retriever {
 
+    private ColumnIndexTable columnIndexTable;
+
     public FSCursor(Cursor cursor) {
         super(cursor);
     }
 
     @Override
     public String getString(String column) {
-        return getString(getColumnIndex(column));
+        return getString(columnIndexOf(column));
     }
 
     @Override
     public int getInt(String column) {
-        return getInt(getColumnIndex(column));
+        return getInt(columnIndexOf(column));
     }
 
     @Override
     public long getLong(String column) {
-        return getLong(getColumnIndex(column));
+        return getLong(columnIndexOf(column));
     }
 
     @Override
     public double getDouble(String column) {
-        return getDouble(getColumnIndex(column));
+        return getDouble(columnIndexOf(column));
     }
 
     @Override
     public float getFloat(String column) {
-        return getFloat(getColumnIndex(column));
+        return getFloat(columnIndexOf(column));
     }
 
     @Override
@@ -66,6 +68,15 @@ public class FSCursor extends CursorWrapper implements Retriever {
     }
 
     public byte[] getBlob(String column) {
-        return getBlob(getColumnIndex(column));
+        return getBlob(columnIndexOf(column));
+    }
+
+    // FSGetApi methods access columns by name for every row, so the index of each column is
+    // resolved once per cursor
+    private int columnIndexOf(String column) {
+        if (columnIndexTable == null) {
+            columnIndexTable = new ColumnIndexTable();
+        }
+        return columnIndexTable.indexOf(this, column);
     }
 }
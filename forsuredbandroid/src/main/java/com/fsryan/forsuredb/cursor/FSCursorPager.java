@@ -0,0 +1,454 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.queryable.Keyset;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ *     Holds the rows of a large result in memory as fixed-size pages that are loaded on a
+ *     background thread. Each page is copied out of its {@link Cursor} into a {@link MatrixCursor},
+ *     so reading a loaded row never touches SQLite or a CursorWindow on the main thread.
+ * </p>
+ * <p>
+ *     Asking for the row at a position via {@link #cursorAt(int)} also prefetches the pages
+ *     around it and evicts the pages that are far from it. When the page of a position is not
+ *     loaded yet, {@link #cursorAt(int)} returns null, and the {@link Listener} is told when it
+ *     has been loaded.
+ * </p>
+ * <p>
+ *     When the {@link PageLoader} is a {@link KeysetPageLoader}, a page whose preceding page was
+ *     loaded before it is requested is selected by the key of the last row of that page rather
+ *     than by an OFFSET (see {@link Keyset}), so scrolling through the rows costs the same at any
+ *     depth. Other pages, such as those reached by jumping far ahead, fall back to the OFFSET.
+ * </p>
+ * <p>
+ *     All methods other than the constructors must be called on the main thread.
+ * </p>
+ * @see PagedFSCursorRecyclerAdapter
+ */
+public class FSCursorPager {
+
+    private static final String LOG_TAG = FSCursorPager.class.getSimpleName();
+
+    /**
+     * <p>
+     *     Loads the data of a {@link FSCursorPager}. Both methods are called on a background
+     *     thread.
+     * </p>
+     */
+    public interface PageLoader {
+
+        /**
+         * @return the total number of rows
+         */
+        @WorkerThread
+        int count();
+
+        /**
+         * @param offset the position of the first row of the page
+         * @param limit the maximum number of rows of the page
+         * @return a {@link Cursor} over the rows of the page, which the {@link FSCursorPager}
+         * closes after copying the rows
+         */
+        @WorkerThread
+        Cursor loadPage(int offset, int limit);
+    }
+
+    /**
+     * <p>
+     *     A {@link PageLoader} that can also select a page by the key of the last row of the
+     *     preceding page. Every page, including those loaded via {@link #loadPage(int, int)}, must
+     *     be ordered by {@link #orderings()}.
+     * </p>
+     * @see Keyset
+     */
+    public interface KeysetPageLoader extends PageLoader {
+
+        /**
+         * @return the orderings of every page, as returned by
+         * {@link Keyset#orderingsWithTiebreaker(String, List)}
+         */
+        @NonNull
+        List<FSOrdering> orderings();
+
+        /**
+         * @param key the key of the last row of the preceding page
+         * @param limit the maximum number of rows of the page
+         * @return a {@link Cursor} over the rows of the page, selected via
+         * {@link Keyset#after(com.fsryan.forsuredb.api.FSSelection, List, Object[])}, which the
+         * {@link FSCursorPager} closes after copying the rows
+         */
+        @WorkerThread
+        Cursor loadPageAfter(@NonNull Object[] key, int limit);
+    }
+
+    public interface Listener {
+
+        /**
+         * <p>
+         *     Called when the total number of rows has been loaded. Any previously-loaded pages
+         *     have been discarded.
+         * </p>
+         * @param count the total number of rows
+         */
+        @MainThread
+        void onCountLoaded(int count);
+
+        /**
+         * @param offset the position of the first row of the page
+         * @param count the number of rows of the page
+         */
+        @MainThread
+        void onPageLoaded(int offset, int count);
+
+        /**
+         * <p>
+         *     Called when loading the total number of rows failed. The previous count and pages
+         *     are kept. Call {@link FSCursorPager#refresh()} to retry.
+         * </p>
+         * @param cause the failure of {@link PageLoader#count()}
+         */
+        @MainThread
+        void onCountFailed(@NonNull RuntimeException cause);
+    }
+
+    private final PageLoader loader;
+    private final KeysetPageLoader keysetLoader;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final Executor backgroundExecutor;
+    private final Executor callbackExecutor;
+    private final ExecutorService ownedExecutor;
+
+    private final Map<Integer, FSCursor> pages = new HashMap<>();
+    private final Map<Integer, Integer> loadingPages = new HashMap<>();  // <-- page to the generation loading it
+    private final Map<Integer, Object[]> pageEndKeys = new HashMap<>();  // <-- kept after eviction
+    private Listener listener;
+    private int count = -1;
+    private int generation;
+    private boolean closed;
+
+    /**
+     * @param loader the {@link PageLoader} of the data
+     * @param pageSize the number of rows per page
+     * @param prefetchPages the number of pages on either side of the requested page to load in
+     *                      advance. Pages further than one more page away are evicted.
+     */
+    public FSCursorPager(@NonNull PageLoader loader, int pageSize, int prefetchPages) {
+        this(loader, pageSize, prefetchPages, null, new MainThreadExecutor());
+    }
+
+    /**
+     * @param loader the {@link PageLoader} of the data
+     * @param pageSize the number of rows per page
+     * @param prefetchPages the number of pages on either side of the requested page to load in
+     *                      advance. Pages further than one more page away are evicted.
+     * @param backgroundExecutor the {@link Executor} on which pages are loaded or null to use a
+     *                           single background thread owned by this {@link FSCursorPager}
+     * @param callbackExecutor the {@link Executor} of the main thread
+     */
+    public FSCursorPager(@NonNull PageLoader loader,
+                         int pageSize,
+                         int prefetchPages,
+                         @Nullable Executor backgroundExecutor,
+                         @NonNull Executor callbackExecutor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("prefetchPages must not be negative: " + prefetchPages);
+        }
+        this.loader = loader;
+        this.keysetLoader = loader instanceof KeysetPageLoader ? (KeysetPageLoader) loader : null;
+        this.pageSize = pageSize;
+        this.prefetchPages = prefetchPages;
+        this.ownedExecutor = backgroundExecutor == null ? newLoaderExecutor() : null;
+        this.backgroundExecutor = backgroundExecutor == null ? ownedExecutor : backgroundExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @MainThread
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * <p>
+     *     (Re)loads the total number of rows, for example after the data has changed. Loaded pages
+     *     are discarded once the new count has been loaded.
+     * </p>
+     */
+    @MainThread
+    public void refresh() {
+        if (closed) {
+            return;
+        }
+        final int refreshGeneration = ++generation;
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int loadedCount = -1;
+                RuntimeException failure = null;
+                try {
+                    loadedCount = loader.count();
+                } catch (RuntimeException re) {
+                    Log.e(LOG_TAG, "failed to load count", re);
+                    failure = re;
+                }
+                final int result = loadedCount;
+                final RuntimeException cause = failure;
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCountLoaded(refreshGeneration, result, cause);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the total number of rows or -1 if it has not yet been loaded
+     */
+    @MainThread
+    public int count() {
+        return count;
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * <p>
+     *     Gets the row at the position, loading its page and the pages around it if necessary and
+     *     evicting pages that are far from it.
+     * </p>
+     * @param position the position of the row
+     * @return an in-memory {@link FSCursor} moved to the row at the position or null if the page
+     * of the row is not loaded yet
+     */
+    @Nullable
+    @MainThread
+    public FSCursor cursorAt(int position) {
+        if (closed || position < 0 || position >= count) {
+            return null;
+        }
+
+        final int page = position / pageSize;
+        evictPagesFarFrom(page);
+        final int lastPage = (count - 1) / pageSize;
+        for (int p = Math.max(0, page - prefetchPages); p <= Math.min(lastPage, page + prefetchPages); p++) {
+            ensureLoading(p);
+        }
+
+        FSCursor ret = pages.get(page);
+        if (ret == null || !ret.moveToPosition(position - page * pageSize)) {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Discards all pages and stops loading. Pages that are loading are discarded when they
+     *     arrive.
+     * </p>
+     */
+    @MainThread
+    public void close() {
+        closed = true;
+        generation++;
+        clearPages();
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private void onCountLoaded(int countGeneration, int loadedCount, RuntimeException cause) {
+        if (countGeneration != generation) {
+            return;     // <-- superseded by another refresh or closed
+        }
+        if (cause != null) {
+            if (listener != null) {
+                listener.onCountFailed(cause);
+            }
+            return;
+        }
+        clearPages();
+        count = loadedCount;
+        if (listener != null) {
+            listener.onCountLoaded(loadedCount);
+        }
+    }
+
+    private void ensureLoading(final int page) {
+        // a page still loading for a previous generation will be discarded, so it is requested again
+        final Integer loadingGeneration = loadingPages.get(page);
+        if (pages.containsKey(page) || (loadingGeneration != null && loadingGeneration == generation)) {
+            return;
+        }
+
+        final int pageGeneration = generation;
+        loadingPages.put(page, pageGeneration);
+        final Object[] afterKey = keysetLoader == null || page == 0 ? null : pageEndKeys.get(page - 1);
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                MatrixCursor loaded = null;
+                Object[] endKey = null;
+                try {
+                    loaded = copyOf(afterKey == null
+                            ? loader.loadPage(page * pageSize, pageSize)
+                            : keysetLoader.loadPageAfter(afterKey, pageSize));
+                    endKey = endKeyOf(loaded);
+                } catch (RuntimeException re) {
+                    Log.e(LOG_TAG, "failed to load page " + page, re);
+                }
+                final MatrixCursor result = loaded;
+                final Object[] resultEndKey = endKey;
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(pageGeneration, page, result, resultEndKey);
+                    }
+                });
+            }
+        });
+    }
+
+    @WorkerThread
+    @Nullable
+    private Object[] endKeyOf(@Nullable MatrixCursor page) {
+        if (keysetLoader == null || page == null || !page.moveToLast()) {
+            return null;
+        }
+        try {
+            return Keyset.keyOf(page, keysetLoader.orderings());
+        } catch (RuntimeException re) {
+            Log.w(LOG_TAG, "cannot page by key; falling back to offset", re);
+            return null;
+        }
+    }
+
+    private void onPageLoaded(int pageGeneration, int page, MatrixCursor result, Object[] endKey) {
+        final Integer loadingGeneration = loadingPages.get(page);
+        if (loadingGeneration != null && loadingGeneration == pageGeneration) {
+            loadingPages.remove(page);      // <-- unless the page has been requested again since
+        }
+        if (pageGeneration != generation) {
+            if (result != null) {
+                result.close();
+            }
+            return;
+        }
+
+        if (result == null) {
+            return;     // <-- will be retried on the next request for the page
+        }
+        pages.put(page, new FSCursor(result));
+        if (endKey != null) {
+            pageEndKeys.put(page, endKey);
+        }
+        if (listener != null) {
+            listener.onPageLoaded(page * pageSize, result.getCount());
+        }
+    }
+
+    // a page that is being loaded when it becomes far away is still kept when it arrives
+    private void evictPagesFarFrom(int page) {
+        Iterator<Map.Entry<Integer, FSCursor>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, FSCursor> entry = it.next();
+            if (Math.abs(entry.getKey() - page) > prefetchPages + 1) {
+                entry.getValue().close();
+                it.remove();
+            }
+        }
+    }
+
+    private void clearPages() {
+        for (FSCursor c : pages.values()) {
+            c.close();
+        }
+        pages.clear();
+        loadingPages.clear();
+        pageEndKeys.clear();
+    }
+
+    @WorkerThread
+    private static MatrixCursor copyOf(Cursor source) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            final String[] columns = source.getColumnNames();
+            final MatrixCursor ret = new MatrixCursor(columns, source.getCount());
+            final Object[] row = new Object[columns.length];
+            while (source.moveToNext()) {
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = valueOf(source, i);
+                }
+                ret.addRow(row);
+            }
+            return ret;
+        } finally {
+            source.close();
+        }
+    }
+
+    private static Object valueOf(Cursor source, int idx) {
+        switch (source.getType(idx)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return source.getLong(idx);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return source.getDouble(idx);
+            case Cursor.FIELD_TYPE_STRING:
+                return source.getString(idx);
+            case Cursor.FIELD_TYPE_BLOB:
+                return source.getBlob(idx);
+            default:
+                return null;
+        }
+    }
+
+    private static ExecutorService newLoaderExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread t = new Thread(r, "forsuredb-pager");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private static class MainThreadExecutor implements Executor {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            handler.post(command);
+        }
+    }
+}
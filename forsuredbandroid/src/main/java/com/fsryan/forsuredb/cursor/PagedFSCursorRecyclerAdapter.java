@@ -0,0 +1,137 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+
+import com.fsryan.forsuredb.api.FSGetApi;
+
+/**
+ * <p>
+ *     An alternative to {@link BaseFSCursorRecyclerAdapter} for large results. Rather than binding
+ *     against one {@link FSCursor}, whose CursorWindow gets refilled on the main thread when
+ *     scrolling past a window boundary, this binds against the in-memory pages of a
+ *     {@link FSCursorPager}, which loads them on a background thread. SQLite is never touched on
+ *     the main thread.
+ * </p>
+ * <p>
+ *     When a row is bound before its page has loaded,
+ *     {@link #onBindPlaceholder(FSCursorViewHolder, int)} is called instead of
+ *     {@link FSCursorViewHolder#populateView(FSCursor)}, and the row is rebound once its page has
+ *     loaded.
+ * </p>
+ * @param <VH> An extension of the {@link FSCursorViewHolder} class
+ */
+public abstract class PagedFSCursorRecyclerAdapter<VH extends FSCursorViewHolder> extends RecyclerView.Adapter<VH> implements FSCursorPager.Listener {
+
+    private final boolean queryContainsIdField;
+    private FSCursorPager pager;
+
+    /**
+     * @param queryContainsIdField should be true if the {@link FSGetApi} extension's
+     *                             {@link FSGetApi#id(com.fsryan.forsuredb.api.Retriever)} returned
+     *                             by your implementation of the {@link #api()} method will be able
+     *                             to get the id of the record.
+     */
+    public PagedFSCursorRecyclerAdapter(boolean queryContainsIdField) {
+        this.queryContainsIdField = queryContainsIdField;
+    }
+
+    @Override
+    public void onBindViewHolder(VH viewHolder, int position) {
+        FSCursor c = pager == null ? null : pager.cursorAt(position);
+        if (c == null) {
+            onBindPlaceholder(viewHolder, position);
+        } else {
+            viewHolder.populateView(c);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager == null ? 0 : Math.max(0, pager.count());
+    }
+
+    /**
+     * <p>
+     *     The id is only known once the page of the position has loaded, so stable ids should
+     *     not be used with this adapter.
+     * </p>
+     */
+    @Override
+    public long getItemId(int position) {
+        FSCursor c = pager == null ? null : pager.cursorAt(position);
+        if (c == null || !queryContainsIdField) {
+            return position;
+        }
+        return api().id(c);
+    }
+
+    /**
+     * <p>
+     *     Swap the {@link FSCursorPager}, closing the old one and loading the count of the new one.
+     * </p>
+     * @param newPager the new {@link FSCursorPager} or null to clear the data
+     */
+    public void changePager(@Nullable FSCursorPager newPager) {
+        if (newPager == pager) {
+            return;
+        }
+        if (pager != null) {
+            pager.setListener(null);
+            pager.close();
+        }
+        pager = newPager;
+        notifyDataSetChanged();
+        if (newPager != null) {
+            newPager.setListener(this);
+            newPager.refresh();
+        }
+    }
+
+    /**
+     * <p>
+     *     Reloads the data of the current {@link FSCursorPager}, for example when notified that
+     *     the underlying data has changed.
+     * </p>
+     */
+    public void refresh() {
+        if (pager != null) {
+            pager.refresh();
+        }
+    }
+
+    @Override
+    public void onCountLoaded(int count) {
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onPageLoaded(int offset, int count) {
+        notifyItemRangeChanged(offset, count);
+    }
+
+    /**
+     * <p>
+     *     Does nothing by default, leaving the previous data in place. Override to show the error
+     *     and offer a retry via {@link #refresh()}.
+     * </p>
+     */
+    @Override
+    public void onCountFailed(@NonNull RuntimeException cause) {}
+
+    /**
+     * <p>
+     *     Called instead of {@link FSCursorViewHolder#populateView(FSCursor)} when the page of
+     *     the position has not loaded yet. Does nothing by default.
+     * </p>
+     * @param viewHolder the view holder to bind
+     * @param position the position of the row
+     */
+    protected void onBindPlaceholder(@NonNull VH viewHolder, int position) {}
+
+    /**
+     * @return The api that should be used to determine the id of the {@link FSCursor} current position
+     */
+    protected abstract FSGetApi api();
+}
@@ -7,6 +7,7 @@ import android.database.sqlite.SQLiteQuery;
 import android.os.Build;
 import android.os.CancellationSignal;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.fsryan.forsuredb.SqlBinder;
 import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
@@ -32,14 +33,14 @@ class CursorDriverHack implements SQLiteCursorDriver {
         this.editTable= editTable;
     }
 
-    FSCursor query(@NonNull SqlForPreparedStatement ps) {
+    FSCursor query(@NonNull SqlForPreparedStatement ps, @Nullable CancellationSignal cancellationSignal) {
         if (!isAvailable()) {
             throw new IllegalStateException("Cannot handle request--queryFactory null");
         }
         SQLiteQuery query = null;
         db.acquireReference();
         try {
-            query = queryFactory.newInstance(db, ps.getSql(), null);
+            query = queryFactory.newInstance(db, ps.getSql(), cancellationSignal);
             SqlBinder.bindObjects(query, ps.getReplacements());
             return cursorFactory.newCursor(db, this, editTable, query);
         } catch (RuntimeException re) {
@@ -56,7 +57,7 @@ class CursorDriverHack implements SQLiteCursorDriver {
 
     @Override
     public Cursor query(SQLiteDatabase.CursorFactory factory, String[] bindArgs) {
-        throw new UnsupportedOperationException("CursorDriverHack was not intended to be used as though it were a normal CursorDriver. Call query(SqlForPreparedStatement) instead");
+        throw new UnsupportedOperationException("CursorDriverHack was not intended to be used as though it were a normal CursorDriver. Call query(SqlForPreparedStatement, CancellationSignal) instead");
     }
 
     @Override
@@ -0,0 +1,281 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+import com.fsryan.forsuredb.api.OrderBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Keyset (seek) pagination: rather than skipping the rows of the previous pages with an
+ *     OFFSET, which SQLite must still scan and discard, the next page is selected as the rows that
+ *     come after the ordering key of the last row of the previous page. With an index on the
+ *     ordering columns, the cost of fetching a page does not depend upon how deep it is.
+ * </p>
+ * <p>
+ *     The ordering key must identify a row, so {@link #orderingsWithTiebreaker(String, List)}
+ *     appends the _id column of the table to the orderings unless it is already there. Every page,
+ *     including the first, must be queried with these orderings, and the key of the last row is
+ *     read with {@link #keyOf(Cursor, List)}. The ordering columns must not be null.
+ * </p>
+ * <p>
+ *     For the seek to be used, the table needs an index whose leading columns are the ordering
+ *     columns in the order (and, for mixed directions, the directions) of the orderings.
+ * </p>
+ */
+public final class Keyset {
+
+    private static final String ID_COLUMN = "_id";
+
+    // row value comparisons were introduced in SQLite 3.15.0
+    private static final int ROW_VALUE_MIN_MAJOR = 3;
+    private static final int ROW_VALUE_MIN_MINOR = 15;
+
+    private Keyset() {}
+
+    /**
+     * @param table the table being paged
+     * @param orderings the orderings of the query, which may be null or empty
+     * @return the orderings followed by the _id column of the table, ascending, unless the
+     * orderings already include the _id column of the table
+     */
+    @NonNull
+    public static List<FSOrdering> orderingsWithTiebreaker(@NonNull String table, @Nullable List<FSOrdering> orderings) {
+        List<FSOrdering> ret = new ArrayList<>(orderings == null ? 1 : orderings.size() + 1);
+        if (orderings != null) {
+            for (FSOrdering ordering : orderings) {
+                if (table.equals(ordering.table) && ID_COLUMN.equals(ordering.column)) {
+                    return orderings;
+                }
+                ret.add(ordering);
+            }
+        }
+        ret.add(new FSOrdering(table, ID_COLUMN, OrderBy.ORDER_ASC));
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Reads the ordering key of the current row of the cursor. The columns of the orderings
+     *     must be part of the projection of the cursor.
+     * </p>
+     * @param cursor the cursor, positioned on the last row of a page
+     * @param orderings the orderings returned by {@link #orderingsWithTiebreaker(String, List)}
+     * @return the key to pass to {@link #after(FSSelection, List, Object[])} to select the next
+     * page
+     */
+    @NonNull
+    public static Object[] keyOf(@NonNull Cursor cursor, @NonNull List<FSOrdering> orderings) {
+        Object[] ret = new Object[orderings.size()];
+        for (int i = 0; i < ret.length; i++) {
+            int idx = cursor.getColumnIndexOrThrow(orderings.get(i).column);
+            switch (cursor.getType(idx)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    ret[i] = cursor.getLong(idx);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    ret[i] = cursor.getDouble(idx);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    ret[i] = cursor.getString(idx);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    ret[i] = cursor.getBlob(idx);
+                    break;
+                default:
+                    throw new IllegalStateException("Cannot page by null column: " + orderings.get(i).column);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param selection the selection of the query or null to select all rows
+     * @param orderings the orderings returned by {@link #orderingsWithTiebreaker(String, List)}
+     * @param key the key of the last row of the previous page or null to select the first page
+     * @return a selection of the rows matching the selection that come after the key. Any offset
+     * of the limits of the selection is dropped, as the key takes its place.
+     */
+    @Nullable
+    public static FSSelection after(@Nullable final FSSelection selection, @NonNull List<FSOrdering> orderings, @Nullable Object[] key) {
+        if (key == null) {
+            return selection;
+        }
+        return after(selection, orderings, key, SqliteVersion.isAtLeast(FSDBHelper.inst().sqliteVersion(), ROW_VALUE_MIN_MAJOR, ROW_VALUE_MIN_MINOR));
+    }
+
+    /**
+     * @param rowValuesSupported whether the version of SQLite supports row value comparisons
+     * @see #after(FSSelection, List, Object[])
+     */
+    @Nullable
+    /*package*/ static FSSelection after(@Nullable final FSSelection selection, @NonNull List<FSOrdering> orderings, @Nullable Object[] key, boolean rowValuesSupported) {
+        if (key == null) {
+            return selection;
+        }
+        if (key.length != orderings.size()) {
+            throw new IllegalArgumentException("key has " + key.length + " values, but there are " + orderings.size() + " orderings");
+        }
+
+        final boolean rowValue = rowValuesSupported && canCompareAsRowValue(orderings);
+        final String predicate = predicate(orderings, rowValue);
+        final Object[] predicateReplacements = replacements(key, rowValue);
+        final String where = selection == null || selection.where() == null || selection.where().isEmpty()
+                ? predicate
+                : "(" + selection.where() + ") AND (" + predicate + ")";
+        final Object[] selectionReplacements = selection == null || selection.replacements() == null
+                ? new Object[0]
+                : selection.replacements();
+        final Object[] replacements = new Object[selectionReplacements.length + predicateReplacements.length];
+        System.arraycopy(selectionReplacements, 0, replacements, 0, selectionReplacements.length);
+        System.arraycopy(predicateReplacements, 0, replacements, selectionReplacements.length, predicateReplacements.length);
+        final Limits limits = withoutOffset(selection == null ? null : selection.limits());
+
+        return new FSSelection() {
+            @Override
+            public String where() {
+                return where;
+            }
+
+            @Override
+            public Object[] replacements() {
+                return replacements;
+            }
+
+            @Override
+            public Limits limits() {
+                return limits;
+            }
+        };
+    }
+
+    /**
+     * <p>
+     *     The row value comparison (c1, c2, ...) &gt; (?, ?, ...), where &lt; is used if all columns
+     *     are descending. If the comparison cannot be used, because the directions are mixed or
+     *     SQLite is older than 3.15.0, the expanded form is used:
+     *     c1 &gt;= ? AND ((c1 &gt; ?) OR (c1 = ? AND c2 &gt; ?) OR ...), where &lt;= and &lt; are
+     *     used for descending columns.
+     * </p>
+     * <p>
+     *     The leading c1 &gt;= ? is redundant, but it is a range on the leading column that SQLite
+     *     can seek to in an index. Without it, SQLite either scans the index from its start,
+     *     filtering out the rows of all previous pages, or evaluates the OR terms separately and
+     *     sorts their union, so the cost of a page would grow with its depth.
+     * </p>
+     * @param orderings the orderings returned by {@link #orderingsWithTiebreaker(String, List)}
+     * @param rowValue whether to use the row value comparison, which requires that all orderings
+     *                 have the same direction
+     */
+    @NonNull
+    /*package*/ static String predicate(@NonNull List<FSOrdering> orderings, boolean rowValue) {
+        if (rowValue) {
+            StringBuilder columns = new StringBuilder("(");
+            StringBuilder placeholders = new StringBuilder("(");
+            for (int i = 0; i < orderings.size(); i++) {
+                columns.append(i == 0 ? "" : ", ").append(columnOf(orderings.get(i)));
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            return columns.append(isDescending(orderings.get(0)) ? ") < " : ") > ")
+                    .append(placeholders)
+                    .append(')')
+                    .toString();
+        }
+
+        StringBuilder buf = new StringBuilder();
+        if (orderings.size() > 1) {
+            FSOrdering leading = orderings.get(0);
+            buf.append(columnOf(leading)).append(isDescending(leading) ? " <= ?" : " >= ?").append(" AND (");
+        }
+        for (int i = 0; i < orderings.size(); i++) {
+            buf.append(i == 0 ? "(" : " OR (");
+            for (int j = 0; j < i; j++) {
+                buf.append(columnOf(orderings.get(j))).append(" = ? AND ");
+            }
+            FSOrdering ordering = orderings.get(i);
+            buf.append(columnOf(ordering))
+                    .append(isDescending(ordering) ? " < ?" : " > ?")
+                    .append(')');
+        }
+        return orderings.size() > 1 ? buf.append(')').toString() : buf.toString();
+    }
+
+    /**
+     * @return the replacements of {@link #predicate(List, boolean)} for the key
+     */
+    @NonNull
+    /*package*/ static Object[] replacements(@NonNull Object[] key, boolean rowValue) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == null) {
+                throw new IllegalArgumentException("Cannot page after null key value at position " + i);
+            }
+        }
+        if (rowValue) {
+            return key.clone();
+        }
+
+        final int leadingBound = key.length > 1 ? 1 : 0;
+        Object[] ret = new Object[leadingBound + key.length * (key.length + 1) / 2];
+        int pos = 0;
+        if (leadingBound > 0) {
+            ret[pos++] = key[0];
+        }
+        for (int i = 0; i < key.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                ret[pos++] = key[j];
+            }
+        }
+        return ret;
+    }
+
+    private static boolean canCompareAsRowValue(List<FSOrdering> orderings) {
+        if (orderings.size() < 2) {
+            return false;
+        }
+        final boolean descending = isDescending(orderings.get(0));
+        for (FSOrdering ordering : orderings) {
+            if (isDescending(ordering) != descending) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDescending(FSOrdering ordering) {
+        return ordering.direction == OrderBy.ORDER_DESC;
+    }
+
+    private static String columnOf(FSOrdering ordering) {
+        return ordering.table == null || ordering.table.isEmpty() ? ordering.column : ordering.table + "." + ordering.column;
+    }
+
+    private static Limits withoutOffset(@Nullable final Limits limits) {
+        if (limits == null || limits.offset() <= 0) {
+            return limits;
+        }
+        return new Limits() {
+            @Override
+            public int count() {
+                return limits.count();
+            }
+
+            @Override
+            public int offset() {
+                return 0;
+            }
+
+            @Override
+            public boolean isBottom() {
+                return limits.isBottom();
+            }
+        };
+    }
+}
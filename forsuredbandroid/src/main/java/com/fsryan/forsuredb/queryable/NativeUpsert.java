@@ -0,0 +1,127 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fsryan.forsuredb.FSDBConfig;
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ *     Support for performing an upsert as a single INSERT ... ON CONFLICT ... DO UPDATE
+ *     statement, which SQLite supports as of version 3.24.0.
+ * </p>
+ */
+class NativeUpsert {
+
+    private static final int MIN_MAJOR = 3;
+    private static final int MIN_MINOR = 24;
+
+    /**
+     * <p>
+     *     Determines whether the upsert can be performed natively. This requires that
+     *     {@link FSDBConfig.UpsertStrategy#NATIVE_WHEN_SUPPORTED} be configured, that the SQLite
+     *     version support it, that the selection not be limited and that the columns contain a
+     *     unique key of the table.
+     * </p>
+     * @param tableName the table to upsert into
+     * @param columns the columns of the values to upsert
+     * @param selection the selection of the upsert
+     * @return the columns of the ON CONFLICT target or null if the upsert cannot be performed
+     * natively
+     */
+    @Nullable
+    static List<String> conflictTargetFor(@NonNull String tableName, @NonNull Collection<String> columns, @Nullable FSSelection selection) {
+        FSDBHelper helper = FSDBHelper.inst();
+        if (helper.config().upsertStrategy() != FSDBConfig.UpsertStrategy.NATIVE_WHEN_SUPPORTED) {
+            return null;
+        }
+        if (selection != null && isLimited(selection.limits())) {
+            return null;
+        }
+        if (!isSupported(helper.sqliteVersion())) {
+            return null;
+        }
+        return conflictTarget(helper.uniqueKeysOf(tableName), columns);
+    }
+
+    static boolean isSupported(@Nullable String sqliteVersion) {
+        return SqliteVersion.isAtLeast(sqliteVersion, MIN_MAJOR, MIN_MINOR);
+    }
+
+    /**
+     * @param uniqueKeys the unique keys of a table in order of preference
+     * @param columns the columns of the values to upsert
+     * @return the first unique key fully contained within columns or null if there is none
+     */
+    @Nullable
+    static List<String> conflictTarget(@NonNull List<List<String>> uniqueKeys, @NonNull Collection<String> columns) {
+        for (List<String> uniqueKey : uniqueKeys) {
+            if (columns.containsAll(uniqueKey)) {
+                return uniqueKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     *     Creates the upsert sql. The values of the columns must be bound first, followed by the
+     *     replacements of the where clause. Only the columns that are not part of the conflict
+     *     target are updated on conflict.
+     * </p>
+     * @param tableName the table to upsert into
+     * @param columns the columns of the values to upsert
+     * @param conflictTarget the columns of the unique key that determines whether a record
+     *                       matches
+     * @param where the where clause that a matching record must also satisfy in order to be
+     *              updated or null if any matching record should be updated
+     * @return the upsert sql
+     */
+    @NonNull
+    static String sql(@NonNull String tableName, @NonNull List<String> columns, @NonNull List<String> conflictTarget, @Nullable String where) {
+        StringBuilder buf = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        appendJoined(buf, columns);
+        buf.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            buf.append(i == 0 ? "?" : ", ?");
+        }
+        buf.append(") ON CONFLICT(");
+        appendJoined(buf, conflictTarget);
+        buf.append(") DO UPDATE SET ");
+
+        boolean first = true;
+        for (String column : columns) {
+            if (conflictTarget.contains(column)) {
+                continue;
+            }
+            buf.append(first ? "" : ", ").append(column).append(" = excluded.").append(column);
+            first = false;
+        }
+        if (first) {
+            // only the key was supplied, so setting the key to itself makes a match count as affected
+            String column = conflictTarget.get(0);
+            buf.append(column).append(" = excluded.").append(column);
+        }
+
+        if (where != null && !where.isEmpty()) {
+            buf.append(" WHERE ").append(where);
+        }
+        return buf.append(';').toString();
+    }
+
+    private static boolean isLimited(@Nullable Limits limits) {
+        return limits != null && (limits.count() > 0 || limits.offset() > 0);
+    }
+
+    private static void appendJoined(StringBuilder buf, List<String> columns) {
+        for (int i = 0; i < columns.size(); i++) {
+            buf.append(i == 0 ? "" : ", ").append(columns.get(i));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.os.CancellationSignal;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * <p>
+ *     The {@link CancellationSignal} of the queries run on the current thread. The
+ *     {@link com.fsryan.forsuredb.api.Resolver} does not take a {@link CancellationSignal}, so
+ *     rather than passing one through it, set it with {@link #begin(CancellationSignal)} before
+ *     calling the {@link com.fsryan.forsuredb.api.Resolver} and clear it with {@link #end()}
+ *     afterward. Queries run in between abort inside SQLite with an
+ *     {@link android.os.OperationCanceledException} once the signal is canceled.
+ * </p>
+ * @see com.fsryan.forsuredb.cursor.FSCursorLoader
+ */
+public final class QueryCancellation {
+
+    private static final ThreadLocal<CancellationSignal> signals = new ThreadLocal<>();
+
+    private QueryCancellation() {}
+
+    /**
+     * @param signal the {@link CancellationSignal} of the queries run on the current thread until
+     *               {@link #end()} is called
+     */
+    public static void begin(@NonNull CancellationSignal signal) {
+        signals.set(signal);
+    }
+
+    public static void end() {
+        signals.remove();
+    }
+
+    /**
+     * @return the {@link CancellationSignal} of the queries run on the current thread or null if
+     * there is none
+     */
+    @Nullable
+    public static CancellationSignal current() {
+        return signals.get();
+    }
+}
@@ -0,0 +1,97 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import com.fsryan.forsuredb.FSDBHelper;
+import com.fsryan.forsuredb.StatementCache;
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.sqlgeneration.DBMSIntegrator;
+import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
+
+import java.util.Collections;
+
+import static com.fsryan.forsuredb.SqlBinder.bindObjects;
+
+/**
+ * <p>
+ *     Answers whether any records match a selection and how many records match a selection
+ *     with a single-value statement via {@link SQLiteStatement#simpleQueryForLong()} so that
+ *     no cursor or CursorWindow is allocated. The query generated for the selection is wrapped
+ *     as a subquery, so limits, offsets and orderings of the selection are respected.
+ * </p>
+ */
+class QueryProbe {
+
+    /**
+     * @param sqlGenerator the {@link DBMSIntegrator} that generates the query of the selection
+     * @param table the table to query
+     * @param selection the selection or null to probe the whole table
+     * @return true if at least one record of the table matches the selection
+     */
+    static boolean exists(@NonNull DBMSIntegrator sqlGenerator, @NonNull String table, FSSelection selection) {
+        SqlForPreparedStatement ps = querySql(sqlGenerator, table, selection);
+        return simpleQueryForLong(table, StatementCache.Operation.EXISTS, existsSql(ps.getSql()), ps.getReplacements()) != 0L;
+    }
+
+    /**
+     * @param sqlGenerator the {@link DBMSIntegrator} that generates the query of the selection
+     * @param table the table to query
+     * @param selection the selection or null to count the whole table
+     * @return the number of records of the table matching the selection
+     */
+    static long count(@NonNull DBMSIntegrator sqlGenerator, @NonNull String table, FSSelection selection) {
+        SqlForPreparedStatement ps = querySql(sqlGenerator, table, selection);
+        return simpleQueryForLong(table, StatementCache.Operation.COUNT, countSql(ps.getSql()), ps.getReplacements());
+    }
+
+    @NonNull
+    static String existsSql(@NonNull String querySql) {
+        return "SELECT EXISTS(" + asSubquery(querySql) + ");";
+    }
+
+    @NonNull
+    static String countSql(@NonNull String querySql) {
+        return "SELECT COUNT(*) FROM (" + asSubquery(querySql) + ");";
+    }
+
+    @NonNull
+    static String limitedSql(@NonNull String querySql, int limit) {
+        return "SELECT * FROM (" + asSubquery(querySql) + ") LIMIT " + limit + ";";
+    }
+
+    private static SqlForPreparedStatement querySql(DBMSIntegrator sqlGenerator, String table, FSSelection selection) {
+        return FSDBHelper.inst().sqlGenerationCache().querySql(
+                sqlGenerator,
+                table,
+                ProjectionHelper.toFSProjection(table, false, null),
+                selection,
+                Collections.<FSOrdering>emptyList()
+        );
+    }
+
+    private static long simpleQueryForLong(String table, StatementCache.Operation operation, String sql, Object[] replacements) {
+        final StatementCache cache = FSDBHelper.inst().statementCache();
+        final StatementCache.Key key = new StatementCache.Key(table, operation, Collections.<String>emptyList(), sql);
+        SQLiteStatement statement = cache.checkOut(key);
+        if (statement == null) {
+            statement = cache.compile(FSDBHelper.inst().getReadableDatabase(), sql);
+        }
+        try {
+            bindObjects(statement, replacements);
+            return statement.simpleQueryForLong();
+        } finally {
+            cache.checkIn(key, statement);
+        }
+    }
+
+    // a trailing semicolon is not allowed within a subquery
+    private static String asSubquery(String querySql) {
+        String ret = querySql.trim();
+        while (ret.endsWith(";")) {
+            ret = ret.substring(0, ret.length() - 1).trim();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,35 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.support.annotation.Nullable;
+
+/**
+ * <p>
+ *     Compares the version returned by {@link com.fsryan.forsuredb.FSDBHelper#sqliteVersion()}
+ *     against the version that introduced a feature
+ * </p>
+ */
+final class SqliteVersion {
+
+    private SqliteVersion() {}
+
+    /**
+     * @param sqliteVersion the version of SQLite, for example 3.22.0, or null if unknown
+     * @param minMajor the major version that introduced the feature
+     * @param minMinor the minor version that introduced the feature
+     * @return true if sqliteVersion is known and at least minMajor.minMinor
+     */
+    static boolean isAtLeast(@Nullable String sqliteVersion, int minMajor, int minMinor) {
+        if (sqliteVersion == null) {
+            return false;
+        }
+
+        String[] parts = sqliteVersion.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > minMajor || (major == minMajor && minor >= minMinor);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.os.CancellationSignal;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.fsryan.forsuredb.RowCache;
+import com.fsryan.forsuredb.SqlBinder;
+import com.fsryan.forsuredb.api.sqlgeneration.SqlForPreparedStatement;
+import com.fsryan.forsuredb.cursor.FSCursor;
+import com.fsryan.forsuredb.cursor.FSCursorFactory;
+
+/**
+ * <p>
+ *     A {@link SQLiteDatabase.CursorFactory} that binds the replacements of a query with their
+ *     actual types before creating the cursor. Passing this to
+ *     {@link SQLiteDatabase#rawQueryWithFactory(SQLiteDatabase.CursorFactory, String, String[], String)}
+ *     with null selectionArgs is a supported way of binding typed arguments, whereas
+ *     {@link SQLiteDatabase#rawQuery(String, String[])} binds every argument as a string. A string
+ *     argument does not match a blob column, and its type affinity can prevent SQLite from using
+ *     an index on a numeric column.
+ * </p>
+ */
+class TypedBindingCursorFactory implements SQLiteDatabase.CursorFactory {
+
+    private static final FSCursorFactory cursorFactory = new FSCursorFactory();
+
+    private final Object[] replacements;
+
+    TypedBindingCursorFactory(@Nullable Object[] replacements) {
+        this.replacements = replacements;
+    }
+
+    /**
+     * <p>
+     *     Runs the query, binding the replacements with their actual types. On API levels that
+     *     still allow it, this uses the {@link CursorDriverHack}.
+     * </p>
+     * @param db the {@link SQLiteDatabase} to query
+     * @param editTable the name of the table being queried
+     * @param ps the query
+     * @param cancellationSignal the {@link CancellationSignal} of the query or null if it cannot
+     *                           be canceled
+     * @return the {@link FSCursor} of the results of the query
+     */
+    @NonNull
+    static FSCursor query(@NonNull SQLiteDatabase db,
+                          @NonNull String editTable,
+                          @NonNull SqlForPreparedStatement ps,
+                          @Nullable CancellationSignal cancellationSignal) {
+        return CursorDriverHack.isAvailable()
+                ? new CursorDriverHack(db, editTable).query(ps, cancellationSignal)
+                : (FSCursor) db.rawQueryWithFactory(new TypedBindingCursorFactory(ps.getReplacements()), ps.getSql(), null, editTable, cancellationSignal);
+    }
+
+    /**
+     * @param db the {@link SQLiteDatabase} to query
+     * @param editTable the name of the table being queried
+     * @param cancellationSignal the {@link CancellationSignal} of the lookup or null
+     * @return a {@link RowCache.Loader} that reads rows via
+     * {@link #query(SQLiteDatabase, String, SqlForPreparedStatement, CancellationSignal)}
+     */
+    @NonNull
+    static RowCache.Loader rowLoader(@NonNull final SQLiteDatabase db,
+                                     @NonNull final String editTable,
+                                     @Nullable final CancellationSignal cancellationSignal) {
+        return new RowCache.Loader() {
+            @Override
+            public Cursor load(@NonNull String sql, @NonNull Object[] replacements) {
+                return query(db, editTable, new SqlForPreparedStatement(sql, replacements), cancellationSignal);
+            }
+        };
+    }
+
+    @Override
+    public FSCursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+        // the driver has already bound the (null) selectionArgs, so these bindings are the final ones
+        SqlBinder.bindObjects(query, replacements);
+        return cursorFactory.newCursor(db, masterQuery, editTable, query);
+    }
+}
@@ -0,0 +1,44 @@
+package com.fsryan.forsuredb;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchInserterTest {
+
+    @Test
+    public void shouldLimitRowsPerStatementByVariableNumber() {
+        assertEquals(99, BatchInserter.rowsPerStatement(10));
+        assertEquals(333, BatchInserter.rowsPerStatement(3));
+        assertEquals(1, BatchInserter.rowsPerStatement(BatchInserter.MAX_VARIABLE_NUMBER));
+    }
+
+    @Test
+    public void shouldLimitRowsPerStatementByMaxRows() {
+        assertEquals(BatchInserter.MAX_ROWS, BatchInserter.rowsPerStatement(1));
+        assertEquals(BatchInserter.MAX_ROWS, BatchInserter.rowsPerStatement(0));
+    }
+
+    @Test
+    public void shouldAllowAtLeastOneRowPerStatement() {
+        assertEquals(1, BatchInserter.rowsPerStatement(BatchInserter.MAX_VARIABLE_NUMBER + 1));
+    }
+
+    @Test
+    public void shouldCreateSingleRowInsertionSql() {
+        assertEquals(
+                "INSERT INTO user (app_rating, login_count) VALUES (?, ?);",
+                BatchInserter.insertionSql("user", Arrays.asList("app_rating", "login_count"), 1)
+        );
+    }
+
+    @Test
+    public void shouldCreateMultiRowInsertionSql() {
+        assertEquals(
+                "INSERT INTO user (app_rating, login_count) VALUES (?, ?), (?, ?), (?, ?);",
+                BatchInserter.insertionSql("user", Arrays.asList("app_rating", "login_count"), 3)
+        );
+    }
+}
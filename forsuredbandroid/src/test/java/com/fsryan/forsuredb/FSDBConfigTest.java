@@ -0,0 +1,82 @@
+package com.fsryan.forsuredb;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FSDBConfigTest {
+
+    @Test
+    public void shouldLeaveConnectionSettingsAtDefaultsByDefault() {
+        FSDBConfig config = FSDBConfig.DEFAULT;
+        assertFalse(config.writeAheadLogging());
+        assertNull(config.synchronous());
+        assertNull(config.cacheSizeKiB());
+        assertNull(config.mmapSizeBytes());
+        assertNull(config.tempStore());
+        assertNull(config.maxSqlCacheSize());
+    }
+
+    @Test
+    public void shouldApplyReadHeavyUiProfile() {
+        FSDBConfig config = FSDBConfig.builder(FSDBConfig.Profile.READ_HEAVY_UI).build();
+        assertTrue(config.writeAheadLogging());
+        assertEquals(FSDBConfig.Synchronous.NORMAL, config.synchronous());
+        assertEquals(Integer.valueOf(100), config.maxSqlCacheSize());
+        assertNull(config.cacheSizeKiB());  // <-- per-connection pragmas would not reach the reading connections
+        assertNull(config.mmapSizeBytes());
+        assertNull(config.tempStore());
+    }
+
+    @Test
+    public void shouldApplyBulkIngestProfile() {
+        FSDBConfig config = FSDBConfig.builder(FSDBConfig.Profile.BULK_INGEST).build();
+        assertTrue(config.writeAheadLogging());
+        assertEquals(FSDBConfig.Synchronous.NORMAL, config.synchronous());
+        assertEquals(Integer.valueOf(16 * 1024), config.cacheSizeKiB());
+        assertEquals(FSDBConfig.TempStore.MEMORY, config.tempStore());
+        assertEquals(Integer.valueOf(100), config.maxSqlCacheSize());
+        assertNull(config.mmapSizeBytes());
+    }
+
+    @Test
+    public void shouldAllowOverridingProfileSettings() {
+        FSDBConfig config = FSDBConfig.builder(FSDBConfig.Profile.BULK_INGEST)
+                .synchronous(FSDBConfig.Synchronous.OFF)
+                .build();
+        assertEquals(FSDBConfig.Synchronous.OFF, config.synchronous());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowMaxSqlCacheSizeAbove100() {
+        FSDBConfig.builder().maxSqlCacheSize(101);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNonPositiveCacheSize() {
+        FSDBConfig.builder().cacheSizeKiB(0);
+    }
+
+    @Test
+    public void shouldDisableQueryResultCacheByDefault() {
+        assertEquals(0, FSDBConfig.DEFAULT.queryResultCacheSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNegativeQueryResultCacheSize() {
+        FSDBConfig.builder().queryResultCache(-1, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNonPositiveQueryResultCacheMaxRows() {
+        FSDBConfig.builder().queryResultCache(10, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNegativeRowCacheSize() {
+        FSDBConfig.builder().rowCache(-1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.fsryan.forsuredb;
+
+import com.fsryan.forsuredb.api.FSProjection;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RowCacheTest {
+
+    @Test
+    public void shouldFindIdOfUnqualifiedIdSelection() {
+        assertEquals(Long.valueOf(5L), RowCache.idOf("user", selection("_id = ?", 5L)));
+    }
+
+    @Test
+    public void shouldFindIdOfQualifiedIdSelection() {
+        assertEquals(Long.valueOf(5L), RowCache.idOf("user", selection("(user._id=?)", 5)));
+    }
+
+    @Test
+    public void shouldNotFindIdOfIdSelectionOfOtherTable() {
+        assertNull(RowCache.idOf("user", selection("profile._id = ?", 5L)));
+    }
+
+    @Test
+    public void shouldNotFindIdOfCompoundSelection() {
+        assertNull(RowCache.idOf("user", selection("_id = ? AND deleted = ?", 5L, 0L)));
+    }
+
+    @Test
+    public void shouldNotFindIdOfNonNumericReplacement() {
+        assertNull(RowCache.idOf("user", selection("_id = ?", "5")));
+    }
+
+    @Test
+    public void shouldNotFindIdOfSelectionWithOffset() {
+        FSSelection selection = selection("_id = ?", 5L);
+        Limits limits = mock(Limits.class);
+        when(limits.offset()).thenReturn(1);
+        when(selection.limits()).thenReturn(limits);
+        assertNull(RowCache.idOf("user", selection));
+    }
+
+    @Test
+    public void shouldUnqualifyColumnsOfProjection() {
+        assertArrayEquals(new String[] {"_id", "name"}, RowCache.columnsOf("user", projection("user._id", "name")));
+    }
+
+    @Test
+    public void shouldProjectAllColumnsWhenProjectionHasNoColumns() {
+        assertArrayEquals(new String[0], RowCache.columnsOf("user", projection()));
+    }
+
+    @Test
+    public void shouldNotProjectExpressions() {
+        assertNull(RowCache.columnsOf("user", projection("_id", "COUNT(*)")));
+        assertNull(RowCache.columnsOf("user", projection("name AS user_name")));
+        assertNull(RowCache.columnsOf("user", projection("profile.name")));
+    }
+
+    private static FSSelection selection(String where, Object... replacements) {
+        FSSelection ret = mock(FSSelection.class);
+        when(ret.where()).thenReturn(where);
+        when(ret.replacements()).thenReturn(replacements);
+        return ret;
+    }
+
+    private static FSProjection projection(String... columns) {
+        FSProjection ret = mock(FSProjection.class);
+        when(ret.tableName()).thenReturn("user");
+        when(ret.columns()).thenReturn(columns);
+        return ret;
+    }
+}
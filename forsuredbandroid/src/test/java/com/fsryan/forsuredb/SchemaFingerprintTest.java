@@ -0,0 +1,36 @@
+package com.fsryan.forsuredb;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SchemaFingerprintTest {
+
+    @Test
+    public void shouldHashSameAssetNamesEqually() {
+        assertEquals(
+                SchemaFingerprint.hashOf(Arrays.asList("1.migration.json", "2.migration.json")),
+                SchemaFingerprint.hashOf(Arrays.asList("1.migration.json", "2.migration.json"))
+        );
+    }
+
+    @Test
+    public void shouldHashDifferentlyWhenAssetAdded() {
+        assertNotEquals(
+                SchemaFingerprint.hashOf(Collections.singletonList("1.migration.json")),
+                SchemaFingerprint.hashOf(Arrays.asList("1.migration.json", "2.migration.json"))
+        );
+    }
+
+    @Test
+    public void shouldHashDifferentlyWhenNamesSplitDifferently() {
+        assertNotEquals(
+                SchemaFingerprint.hashOf(Arrays.asList("ab", "c")),
+                SchemaFingerprint.hashOf(Arrays.asList("a", "bc"))
+        );
+    }
+}
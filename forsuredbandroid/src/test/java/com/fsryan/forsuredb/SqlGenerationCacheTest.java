@@ -0,0 +1,79 @@
+package com.fsryan.forsuredb;
+
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSSelection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SqlGenerationCacheTest {
+
+    @Test
+    public void shouldHaveSameShapeWhenOnlyReplacementValuesDiffer() {
+        assertEquals(
+                selectionShape("user._id = ?", new Object[] {1L}),
+                selectionShape("user._id = ?", new Object[] {2L})
+        );
+    }
+
+    @Test
+    public void shouldHaveDifferentShapeWhenWhereDiffers() {
+        assertNotEquals(
+                selectionShape("user._id = ?", new Object[] {1L}),
+                selectionShape("user._id > ?", new Object[] {1L})
+        );
+    }
+
+    @Test
+    public void shouldHaveDifferentShapeWhenNumberOfReplacementsDiffers() {
+        assertNotEquals(
+                selectionShape("user._id IN (?)", new Object[] {1L}),
+                selectionShape("user._id IN (?)", new Object[] {1L, 2L})
+        );
+    }
+
+    @Test
+    public void shouldNotConfuseAdjacentStrings() {
+        StringBuilder buf1 = new StringBuilder();
+        SqlGenerationCache.appendShape(buf1, "ab");
+        SqlGenerationCache.appendShape(buf1, "c");
+        StringBuilder buf2 = new StringBuilder();
+        SqlGenerationCache.appendShape(buf2, "a");
+        SqlGenerationCache.appendShape(buf2, "bc");
+        assertNotEquals(buf1.toString(), buf2.toString());
+    }
+
+    @Test
+    public void shouldHaveDifferentShapeWhenOrderingDirectionDiffers() {
+        StringBuilder ascending = new StringBuilder();
+        SqlGenerationCache.appendOrderingsShape(ascending, Collections.singletonList(new FSOrdering("user", "_id", 1)));
+        StringBuilder descending = new StringBuilder();
+        SqlGenerationCache.appendOrderingsShape(descending, Collections.singletonList(new FSOrdering("user", "_id", -1)));
+        assertNotEquals(ascending.toString(), descending.toString());
+    }
+
+    @Test
+    public void shouldDistinguishNullFromEmptyOrderings() {
+        StringBuilder nullOrderings = new StringBuilder();
+        SqlGenerationCache.appendOrderingsShape(nullOrderings, null);
+        StringBuilder emptyOrderings = new StringBuilder();
+        SqlGenerationCache.appendOrderingsShape(emptyOrderings, Arrays.<FSOrdering>asList());
+        assertNotEquals(nullOrderings.toString(), emptyOrderings.toString());
+    }
+
+    private static String selectionShape(String where, Object[] replacements) {
+        FSSelection selection = mock(FSSelection.class);
+        when(selection.where()).thenReturn(where);
+        when(selection.replacements()).thenReturn(replacements);
+        StringBuilder buf = new StringBuilder();
+        SqlGenerationCache.appendShape(buf, selection);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.fsryan.forsuredb;
+
+import com.fsryan.forsuredb.api.RecordContainer;
+import com.fsryan.forsuredb.api.staticdata.OnRecordRetrievedListener;
+import com.fsryan.forsuredb.migration.MigrationSet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StaticDataStreamTest {
+
+    private static final OnRecordRetrievedListener IGNORING = new OnRecordRetrievedListener() {
+        @Override
+        public void onRecord(Map<Integer, List<RecordContainer>> versionRecordMap) {}
+    };
+
+    @Test
+    public void shouldRetrieveOnlyRecordsOfRequestedVersion() throws Exception {
+        ChunkRecordingStream streamUnderTest = new ChunkRecordingStream(staticData(
+                "<records db_version=\"1\"><record name=\"one\"/></records>",
+                "<records db_version=\"2\"><record name=\"two\"/></records>",
+                "<records db_version=\"3\"><record name=\"three\"/></records>"
+        ));
+
+        streamUnderTest.retrieve(2, IGNORING);
+        assertEquals(Collections.singletonList(chunk(2, "<record name=\"two\"/>")), streamUnderTest.chunks);
+
+        streamUnderTest.retrieve(3, IGNORING);
+        assertEquals(chunk(3, "<record name=\"three\"/>"), streamUnderTest.chunks.get(1));
+    }
+
+    @Test
+    public void shouldRetrieveNothingForVersionWithoutRecords() throws Exception {
+        ChunkRecordingStream streamUnderTest = new ChunkRecordingStream(staticData(
+                "<records db_version=\"3\"><record name=\"three\"/></records>"
+        ));
+
+        streamUnderTest.retrieve(2, IGNORING);
+        assertTrue(streamUnderTest.chunks.isEmpty());
+
+        streamUnderTest.retrieve(3, IGNORING);
+        assertEquals(Collections.singletonList(chunk(3, "<record name=\"three\"/>")), streamUnderTest.chunks);
+    }
+
+    @Test
+    public void shouldSplitRecordsIntoChunks() throws Exception {
+        StringBuilder records = new StringBuilder("<records db_version=\"1\">");
+        for (int i = 0; i <= StaticDataStream.RECORDS_PER_CHUNK; i++) {
+            records.append("<record id=\"").append(i).append("\"/>");
+        }
+        ChunkRecordingStream streamUnderTest = new ChunkRecordingStream(staticData(records.append("</records>").toString()));
+
+        streamUnderTest.retrieve(1, IGNORING);
+
+        assertEquals(2, streamUnderTest.chunks.size());
+        assertEquals(chunk(1, "<record id=\"" + StaticDataStream.RECORDS_PER_CHUNK + "\"/>"), streamUnderTest.chunks.get(1));
+    }
+
+    @Test
+    public void shouldEscapeAttributeValues() throws Exception {
+        ChunkRecordingStream streamUnderTest = new ChunkRecordingStream(staticData(
+                "<records db_version=\"1\"><record name=\"&quot;a&quot; &amp; &lt;b&gt;&#10;\"/></records>"
+        ));
+
+        streamUnderTest.retrieve(1, IGNORING);
+
+        assertEquals(chunk(1, "<record name=\"&quot;a&quot; &amp; &lt;b&gt;&#10;\"/>"), streamUnderTest.chunks.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectVersionsOutOfOrder() throws Exception {
+        ChunkRecordingStream streamUnderTest = new ChunkRecordingStream(staticData(
+                "<records db_version=\"2\"><record name=\"two\"/></records>",
+                "<records db_version=\"1\"><record name=\"one\"/></records>"
+        ));
+
+        streamUnderTest.retrieve(2, IGNORING);
+    }
+
+    private static String staticData(String... records) {
+        StringBuilder buf = new StringBuilder("<static_data>");
+        for (String r : records) {
+            buf.append(r);
+        }
+        return buf.append("</static_data>").toString();
+    }
+
+    private static String chunk(int dbVersion, String records) {
+        return staticData("<records db_version=\"" + dbVersion + "\">" + records + "</records>");
+    }
+
+    private static class ChunkRecordingStream extends StaticDataStream {
+
+        final List<String> chunks = new ArrayList<>();
+
+        ChunkRecordingStream(String xml) throws Exception {
+            super("profile_info", Collections.<MigrationSet>emptyList(), new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        }
+
+        @Override
+        void retrieve(InputStream chunk, OnRecordRetrievedListener listener) {
+            Scanner scanner = new Scanner(chunk, "UTF-8").useDelimiter("\\A");
+            chunks.add(scanner.hasNext() ? scanner.next() : "");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.database.MatrixCursor;
+import android.view.ViewGroup;
+
+import com.fsryan.forsuredb.api.FSGetApi;
+import com.fsryan.forsuredb.api.Retriever;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BaseFSCursorRecyclerAdapterTest {
+
+    private static final long UNKNOWN = BaseFSCursorRecyclerAdapter.UNKNOWN_CONTENT_VERSION;
+
+    @Test
+    public void shouldMatchItemsById() {
+        BaseFSCursorRecyclerAdapter.IdDiffCallback callback = new BaseFSCursorRecyclerAdapter.IdDiffCallback(
+                new long[] {1L, 2L, 3L},
+                null,
+                new long[] {3L, 1L},
+                null
+        );
+
+        assertEquals(3, callback.getOldListSize());
+        assertEquals(2, callback.getNewListSize());
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertFalse(callback.areItemsTheSame(1, 0));
+    }
+
+    @Test
+    public void shouldTreatContentsAsChangedWhenVersionsUnknown() {
+        BaseFSCursorRecyclerAdapter.IdDiffCallback callback = new BaseFSCursorRecyclerAdapter.IdDiffCallback(
+                new long[] {1L, 2L},
+                new long[] {UNKNOWN, UNKNOWN},
+                new long[] {1L, 2L},
+                new long[] {UNKNOWN, UNKNOWN}
+        );
+        assertFalse(callback.areContentsTheSame(0, 0));
+
+        callback = new BaseFSCursorRecyclerAdapter.IdDiffCallback(new long[] {1L}, null, new long[] {1L}, new long[] {5L});
+        assertFalse(callback.areContentsTheSame(0, 0));
+    }
+
+    @Test
+    public void shouldCompareContentsByVersion() {
+        BaseFSCursorRecyclerAdapter.IdDiffCallback callback = new BaseFSCursorRecyclerAdapter.IdDiffCallback(
+                new long[] {1L, 2L},
+                new long[] {10L, 20L},
+                new long[] {1L, 2L},
+                new long[] {10L, 21L}
+        );
+        assertTrue(callback.areContentsTheSame(0, 0));
+        assertFalse(callback.areContentsTheSame(1, 1));
+    }
+
+    @Test
+    public void shouldSnapshotIdsOncePerSwappedCursor() {
+        final FSGetApi api = mock(FSGetApi.class);
+        when(api.id(any(Retriever.class))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return ((FSCursor) invocation.getArguments()[0]).getLong("_id");
+            }
+        });
+        BaseFSCursorRecyclerAdapter<FSCursorViewHolder> adapter = new BaseFSCursorRecyclerAdapter<FSCursorViewHolder>(true) {
+            @Override
+            protected FSGetApi api() {
+                return api;
+            }
+
+            @Override
+            public FSCursorViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                return null;
+            }
+        };
+
+        adapter.changeCursor(cursorOfIds(7L, 8L, 9L));
+        assertEquals(9L, adapter.getItemId(2));
+        assertEquals(7L, adapter.getItemId(0));
+        assertEquals(8L, adapter.getItemId(1));
+        verify(api, times(3)).id(any(Retriever.class));
+
+        adapter.changeCursor(cursorOfIds(10L));
+        assertEquals(10L, adapter.getItemId(0));
+        assertEquals(10L, adapter.getItemId(0));
+        verify(api, times(4)).id(any(Retriever.class));
+    }
+
+    private static FSCursor cursorOfIds(long... ids) {
+        MatrixCursor ret = new MatrixCursor(new String[] {"_id"});
+        for (long id : ids) {
+            ret.addRow(new Object[] {id});
+        }
+        return new FSCursor(ret);
+    }
+}
@@ -0,0 +1,80 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.database.Cursor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ColumnIndexTableTest {
+
+    @Test
+    public void shouldResolveEachColumnOnce() {
+        ColumnIndexTable table = new ColumnIndexTable();
+        Cursor cursor = cursorWithColumns("_id", "login_count");
+
+        for (int row = 0; row < 3; row++) {
+            assertEquals(0, table.indexOf(cursor, "_id"));
+            assertEquals(1, table.indexOf(cursor, "login_count"));
+        }
+
+        verify(cursor, times(1)).getColumnIndex("_id");
+        verify(cursor, times(1)).getColumnIndex("login_count");
+    }
+
+    @Test
+    public void shouldResolveColumnsAccessedOutOfOrder() {
+        ColumnIndexTable table = new ColumnIndexTable();
+        Cursor cursor = cursorWithColumns("_id", "name", "email");
+
+        assertEquals(0, table.indexOf(cursor, "_id"));
+        assertEquals(1, table.indexOf(cursor, "name"));
+        assertEquals(2, table.indexOf(cursor, "email"));
+        assertEquals(2, table.indexOf(cursor, "email"));
+        assertEquals(0, table.indexOf(cursor, "_id"));
+        assertEquals(1, table.indexOf(cursor, new String("name")));  // <-- equal, but not the same constant
+
+        verify(cursor, times(1)).getColumnIndex("name");
+    }
+
+    @Test
+    public void shouldResolveMoreColumnsThanInitialCapacity() {
+        String[] columns = new String[20];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = "column_" + i;
+        }
+        ColumnIndexTable table = new ColumnIndexTable();
+        Cursor cursor = cursorWithColumns(columns);
+
+        for (int row = 0; row < 2; row++) {
+            for (int i = 0; i < columns.length; i++) {
+                assertEquals(i, table.indexOf(cursor, columns[i]));
+            }
+        }
+    }
+
+    @Test
+    public void shouldRememberMissingColumns() {
+        ColumnIndexTable table = new ColumnIndexTable();
+        Cursor cursor = cursorWithColumns("_id", "email");
+
+        assertEquals(-1, table.indexOf(cursor, "missing"));
+        assertEquals(-1, table.indexOf(cursor, "missing"));
+
+        verify(cursor, times(1)).getColumnIndex("missing");
+    }
+
+    private static Cursor cursorWithColumns(String... columns) {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.getColumnIndex(anyString())).thenReturn(-1);
+        for (int i = 0; i < columns.length; i++) {
+            when(cursor.getColumnIndex(columns[i])).thenReturn(i);
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,108 @@
+package com.fsryan.forsuredb.queryable;
+
+import com.fsryan.forsuredb.api.FSOrdering;
+import com.fsryan.forsuredb.api.FSSelection;
+import com.fsryan.forsuredb.api.Limits;
+import com.fsryan.forsuredb.api.OrderBy;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KeysetTest {
+
+    @Test
+    public void shouldAppendIdTiebreaker() {
+        List<FSOrdering> actual = Keyset.orderingsWithTiebreaker("user", Collections.singletonList(ordering("login_count", OrderBy.ORDER_DESC)));
+        assertEquals(2, actual.size());
+        assertEquals("login_count", actual.get(0).column);
+        assertEquals("_id", actual.get(1).column);
+        assertEquals(OrderBy.ORDER_ASC, actual.get(1).direction);
+    }
+
+    @Test
+    public void shouldNotAppendTiebreakerWhenAlreadyOrderedById() {
+        List<FSOrdering> orderings = Arrays.asList(ordering("_id", OrderBy.ORDER_DESC), ordering("login_count", OrderBy.ORDER_ASC));
+        assertSame(orderings, Keyset.orderingsWithTiebreaker("user", orderings));
+    }
+
+    @Test
+    public void shouldExpandRowValueComparisonRespectingDirection() {
+        List<FSOrdering> orderings = Arrays.asList(ordering("login_count", OrderBy.ORDER_DESC), ordering("_id", OrderBy.ORDER_ASC));
+        assertEquals(
+                "user.login_count <= ? AND ((user.login_count < ?) OR (user.login_count = ? AND user._id > ?))",
+                Keyset.predicate(orderings, false)
+        );
+        assertArrayEquals(new Object[] {5L, 5L, 5L, 12L}, Keyset.replacements(new Object[] {5L, 12L}, false));
+    }
+
+    @Test
+    public void shouldCompareRowValuesWhenDirectionsMatchAndSupported() {
+        List<FSOrdering> orderings = Arrays.asList(ordering("login_count", OrderBy.ORDER_DESC), ordering("_id", OrderBy.ORDER_DESC));
+
+        FSSelection actual = Keyset.after(null, orderings, new Object[] {5L, 12L}, true);
+
+        assertEquals("(user.login_count, user._id) < (?, ?)", actual.where());
+        assertArrayEquals(new Object[] {5L, 12L}, actual.replacements());
+    }
+
+    @Test
+    public void shouldExpandComparisonWhenDirectionsAreMixed() {
+        List<FSOrdering> orderings = Arrays.asList(ordering("login_count", OrderBy.ORDER_DESC), ordering("_id", OrderBy.ORDER_ASC));
+
+        FSSelection actual = Keyset.after(null, orderings, new Object[] {5L, 12L}, true);
+
+        assertEquals(Keyset.predicate(orderings, false), actual.where());
+        assertArrayEquals(new Object[] {5L, 5L, 5L, 12L}, actual.replacements());
+    }
+
+    @Test
+    public void shouldExpandComparisonWhenRowValuesAreNotSupported() {
+        List<FSOrdering> orderings = Arrays.asList(ordering("login_count", OrderBy.ORDER_ASC), ordering("_id", OrderBy.ORDER_ASC));
+
+        FSSelection actual = Keyset.after(null, orderings, new Object[] {5L, 12L}, false);
+
+        assertEquals("user.login_count >= ? AND ((user.login_count > ?) OR (user.login_count = ? AND user._id > ?))", actual.where());
+    }
+
+    @Test
+    public void shouldCombineSelectionWithPredicateAndDropOffset() {
+        Limits limits = mock(Limits.class);
+        when(limits.count()).thenReturn(20);
+        when(limits.offset()).thenReturn(40);
+        FSSelection selection = mock(FSSelection.class);
+        when(selection.where()).thenReturn("user.app_rating > ?");
+        when(selection.replacements()).thenReturn(new Object[] {2.5D});
+        when(selection.limits()).thenReturn(limits);
+
+        FSSelection actual = Keyset.after(selection, Collections.singletonList(ordering("_id", OrderBy.ORDER_ASC)), new Object[] {12L}, true);
+
+        assertEquals("(user.app_rating > ?) AND ((user._id > ?))", actual.where());
+        assertArrayEquals(new Object[] {2.5D, 12L}, actual.replacements());
+        assertEquals(20, actual.limits().count());
+        assertEquals(0, actual.limits().offset());
+    }
+
+    @Test
+    public void shouldReturnSelectionForFirstPage() {
+        FSSelection selection = mock(FSSelection.class);
+        assertSame(selection, Keyset.after(selection, Collections.singletonList(ordering("_id", OrderBy.ORDER_ASC)), null, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowKeyOfWrongLength() {
+        Keyset.after(null, Collections.singletonList(ordering("_id", OrderBy.ORDER_ASC)), new Object[] {1L, 2L}, true);
+    }
+
+    private static FSOrdering ordering(String column, int direction) {
+        return new FSOrdering("user", column, direction);
+    }
+}
@@ -0,0 +1,80 @@
+package com.fsryan.forsuredb.queryable;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NativeUpsertTest {
+
+    @Test
+    public void shouldSupportVersionsAtOrAfter3_24() {
+        assertTrue(NativeUpsert.isSupported("3.24.0"));
+        assertTrue(NativeUpsert.isSupported("3.28.0"));
+        assertTrue(NativeUpsert.isSupported("4.0"));
+    }
+
+    @Test
+    public void shouldNotSupportVersionsBefore3_24() {
+        assertFalse(NativeUpsert.isSupported("3.22.0"));
+        assertFalse(NativeUpsert.isSupported("3.9.2"));
+        assertFalse(NativeUpsert.isSupported("2.99"));
+    }
+
+    @Test
+    public void shouldNotSupportUnparseableVersion() {
+        assertFalse(NativeUpsert.isSupported(null));
+        assertFalse(NativeUpsert.isSupported("unknown"));
+    }
+
+    @Test
+    public void shouldChooseFirstUniqueKeyContainedInColumns() {
+        List<List<String>> uniqueKeys = Arrays.asList(
+                Collections.singletonList("_id"),
+                Arrays.asList("email_address", "uuid")
+        );
+        assertEquals(Arrays.asList("email_address", "uuid"), NativeUpsert.conflictTarget(uniqueKeys, Arrays.asList("uuid", "email_address", "name")));
+        assertEquals(Collections.singletonList("_id"), NativeUpsert.conflictTarget(uniqueKeys, Arrays.asList("_id", "uuid", "email_address")));
+    }
+
+    @Test
+    public void shouldHaveNoConflictTargetWhenColumnsContainNoUniqueKey() {
+        List<List<String>> uniqueKeys = Arrays.asList(
+                Collections.singletonList("_id"),
+                Arrays.asList("email_address", "uuid")
+        );
+        assertNull(NativeUpsert.conflictTarget(uniqueKeys, Arrays.asList("uuid", "name")));
+    }
+
+    @Test
+    public void shouldCreateSqlUpdatingNonKeyColumns() {
+        String expected = "INSERT INTO profile_info (email_address, name, uuid) VALUES (?, ?, ?)"
+                + " ON CONFLICT(email_address, uuid) DO UPDATE SET name = excluded.name WHERE profile_info.name != ?;";
+        assertEquals(expected, NativeUpsert.sql(
+                "profile_info",
+                Arrays.asList("email_address", "name", "uuid"),
+                Arrays.asList("email_address", "uuid"),
+                "profile_info.name != ?"
+        ));
+    }
+
+    @Test
+    public void shouldCreateSqlWithoutWhereWhenWhereIsEmpty() {
+        String expected = "INSERT INTO user (_id, login_count) VALUES (?, ?)"
+                + " ON CONFLICT(_id) DO UPDATE SET login_count = excluded.login_count;";
+        assertEquals(expected, NativeUpsert.sql("user", Arrays.asList("_id", "login_count"), Collections.singletonList("_id"), ""));
+    }
+
+    @Test
+    public void shouldSetKeyToItselfWhenOnlyKeyColumnsSupplied() {
+        String expected = "INSERT INTO user (_id) VALUES (?)"
+                + " ON CONFLICT(_id) DO UPDATE SET _id = excluded._id;";
+        assertEquals(expected, NativeUpsert.sql("user", Collections.singletonList("_id"), Collections.singletonList("_id"), null));
+    }
+}
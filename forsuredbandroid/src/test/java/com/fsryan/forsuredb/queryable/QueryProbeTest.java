@@ -0,0 +1,29 @@
+package com.fsryan.forsuredb.queryable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryProbeTest {
+
+    @Test
+    public void shouldWrapQueryInExists() {
+        assertEquals(
+                "SELECT EXISTS(SELECT * FROM user WHERE user._id = ?);",
+                QueryProbe.existsSql("SELECT * FROM user WHERE user._id = ?;")
+        );
+    }
+
+    @Test
+    public void shouldWrapQueryInCountRespectingLimits() {
+        assertEquals(
+                "SELECT COUNT(*) FROM (SELECT * FROM user LIMIT 10 OFFSET 5);",
+                QueryProbe.countSql("SELECT * FROM user LIMIT 10 OFFSET 5;")
+        );
+    }
+
+    @Test
+    public void shouldStripAllTrailingSemicolonsAndWhitespace() {
+        assertEquals("SELECT COUNT(*) FROM (SELECT * FROM user);", QueryProbe.countSql("SELECT * FROM user ; ;\n"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.fsryan.forsuredb.cursor;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ChangeDebouncerTest {
+
+    private Uri userUri;
+    private Uri profileUri;
+    private ChangeDebouncer debouncerUnderTest;
+
+    @Before
+    public void setUp() {
+        userUri = mock(Uri.class);
+        profileUri = mock(Uri.class);
+        debouncerUnderTest = new ChangeDebouncer(100L, 250L);
+    }
+
+    @Test
+    public void shouldDelayDeliveryByDebounceWindow() {
+        assertEquals(100L, debouncerUnderTest.onChange(userUri, null, false, 1000L));
+        assertEquals(100L, debouncerUnderTest.onChange(userUri, null, false, 1050L));
+    }
+
+    @Test
+    public void shouldNotDelayDeliveryBeyondMaxDelay() {
+        debouncerUnderTest.onChange(userUri, null, false, 1000L);
+        assertEquals(50L, debouncerUnderTest.onChange(profileUri, null, false, 1200L));
+        assertEquals(0L, debouncerUnderTest.onChange(userUri, null, false, 1300L));
+    }
+
+    @Test
+    public void shouldMergeNotificationsIntoOneSetOfTables() {
+        debouncerUnderTest.onChange(userUri, null, true, 1000L);
+        debouncerUnderTest.onChange(profileUri, null, false, 1010L);
+        debouncerUnderTest.onChange(userUri, null, true, 1020L);
+
+        assertFalse(debouncerUnderTest.pendingAreSelfChanges());
+        assertEquals(Arrays.asList(userUri, profileUri), new ArrayList<>(debouncerUnderTest.drain().keySet()));
+        assertFalse(debouncerUnderTest.hasPending());
+    }
+
+    @Test
+    public void shouldMergeIdsOfTable() {
+        debouncerUnderTest.onChange(userUri, Collections.singleton(1L), false, 1000L);
+        debouncerUnderTest.onChange(userUri, new HashSet<>(Arrays.asList(2L, 1L)), false, 1010L);
+        debouncerUnderTest.onChange(profileUri, Collections.singleton(3L), false, 1020L);
+
+        Map<Uri, Set<Long>> drained = debouncerUnderTest.drain();
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), drained.get(userUri));
+        assertEquals(Collections.singleton(3L), drained.get(profileUri));
+    }
+
+    @Test
+    public void shouldDropIdsOfTableWhenAnyNotificationDidNotKnowThem() {
+        debouncerUnderTest.onChange(userUri, Collections.singleton(1L), false, 1000L);
+        debouncerUnderTest.onChange(userUri, null, false, 1010L);
+        debouncerUnderTest.onChange(userUri, Collections.singleton(2L), false, 1020L);
+
+        Map<Uri, Set<Long>> drained = debouncerUnderTest.drain();
+        assertTrue(drained.containsKey(userUri));
+        assertNull(drained.get(userUri));
+    }
+
+    @Test
+    public void shouldRestartMaxDelayAfterDrain() {
+        debouncerUnderTest.onChange(userUri, null, true, 1000L);
+        debouncerUnderTest.drain();
+
+        assertEquals(100L, debouncerUnderTest.onChange(userUri, null, true, 2000L));
+        assertTrue(debouncerUnderTest.pendingAreSelfChanges());
+    }
+}
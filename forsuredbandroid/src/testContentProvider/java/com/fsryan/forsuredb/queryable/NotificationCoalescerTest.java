@@ -0,0 +1,169 @@
+package com.fsryan.forsuredb.queryable;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class NotificationCoalescerTest {
+
+    private List<Uri> delivered;
+    private Map<Uri, Set<Long>> deliveredIds;
+    private Uri tableUri;
+    private Uri recordUri1;
+    private Uri recordUri2;
+
+    @Before
+    public void setUp() {
+        delivered = Collections.synchronizedList(new ArrayList<Uri>());
+        deliveredIds = Collections.synchronizedMap(new HashMap<Uri, Set<Long>>());
+        tableUri = mock(Uri.class);
+        recordUri1 = mock(Uri.class);
+        recordUri2 = mock(Uri.class);
+    }
+
+    @Test
+    public void shouldDeliverImmediatelyOutsideOfScopeWithoutWindow() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+
+        coalescer.notifyChange(recordUri1, tableUri);
+
+        assertEquals(Collections.singletonList(recordUri1), delivered);
+        assertEquals(0L, coalescer.suppressedCount());
+    }
+
+    @Test
+    public void shouldDeliverOncePerTableWhenOutermostScopeSucceeds() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+
+        coalescer.beginScope();
+        coalescer.notifyChange(recordUri1, tableUri);
+        coalescer.beginScope();
+        coalescer.notifyChange(recordUri2, tableUri);
+        coalescer.endScope(true);
+        assertTrue(delivered.isEmpty());
+        coalescer.endScope(true);
+
+        assertEquals(Collections.singletonList(tableUri), delivered);
+        assertEquals(2L, coalescer.requestedCount());
+        assertEquals(1L, coalescer.suppressedCount());
+    }
+
+    @Test
+    public void shouldDropNotificationsWhenNestedScopeFails() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+
+        coalescer.beginScope();
+        coalescer.notifyChange(recordUri1, tableUri);
+        coalescer.beginScope();
+        coalescer.endScope(false);
+        coalescer.endScope(true);
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(1L, coalescer.suppressedCount());
+    }
+
+    @Test
+    public void shouldDeliverOncePerTableAfterWindow() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(latch), 50L);
+
+        coalescer.notifyChange(recordUri1, tableUri);
+        coalescer.notifyChange(recordUri2, tableUri);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(tableUri), delivered);
+        assertEquals(1L, coalescer.suppressedCount());
+    }
+
+    @Test
+    public void shouldDeliverIdsImmediatelyOutsideOfScopeWithoutWindow() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+
+        coalescer.notifyRecordsChange(tableUri, Arrays.asList(1L, 2L));
+
+        assertEquals(Collections.singletonList(tableUri), delivered);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), deliveredIds.get(tableUri));
+    }
+
+    @Test
+    public void shouldMergeIdsOfTableWhenScopeSucceeds() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+
+        coalescer.beginScope();
+        coalescer.notifyRecordsChange(tableUri, Collections.singletonList(1L));
+        coalescer.notifyRecordsChange(tableUri, Arrays.asList(2L, 1L));
+        coalescer.endScope(true);
+
+        assertEquals(Collections.singletonList(tableUri), delivered);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), deliveredIds.get(tableUri));
+        assertEquals(1L, coalescer.suppressedCount());
+    }
+
+    @Test
+    public void shouldDropIdsWhenCoalescedWithNotificationOfWholeTable() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+
+        coalescer.beginScope();
+        coalescer.notifyRecordsChange(tableUri, Collections.singletonList(1L));
+        coalescer.notifyChange(tableUri, tableUri);
+        coalescer.notifyRecordsChange(tableUri, Collections.singletonList(2L));
+        coalescer.endScope(true);
+
+        assertEquals(Collections.singletonList(tableUri), delivered);
+        assertFalse(deliveredIds.containsKey(tableUri));
+    }
+
+    @Test
+    public void shouldDropIdsWhenThereAreTooMany() {
+        NotificationCoalescer coalescer = new NotificationCoalescer(recordingNotifier(null), 0L);
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= NotificationCoalescer.MAX_NOTIFIED_IDS + 1; id++) {
+            ids.add(id);
+        }
+
+        coalescer.notifyRecordsChange(tableUri, ids);
+
+        assertEquals(Collections.singletonList(tableUri), delivered);
+        assertFalse(deliveredIds.containsKey(tableUri));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotAllowEndingScopeThatWasNotBegun() {
+        new NotificationCoalescer(recordingNotifier(null), 0L).endScope(true);
+    }
+
+    private NotificationCoalescer.Notifier recordingNotifier(final CountDownLatch latch) {
+        return new NotificationCoalescer.Notifier() {
+            @Override
+            public void notifyChange(Uri uri) {
+                delivered.add(uri);
+                if (latch != null) {
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void notifyRecordsChange(Uri tableUri, Set<Long> ids) {
+                deliveredIds.put(tableUri, ids);
+                notifyChange(tableUri);
+            }
+        };
+    }
+}